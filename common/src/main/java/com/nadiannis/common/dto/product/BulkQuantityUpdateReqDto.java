@@ -0,0 +1,22 @@
+package com.nadiannis.common.dto.product;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkQuantityUpdateReqDto {
+
+    @Valid
+    @NotEmpty(message = "products is required")
+    private List<ProductQuantityUpdateReqDto> products;
+
+}
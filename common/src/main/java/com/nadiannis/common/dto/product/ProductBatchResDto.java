@@ -0,0 +1,22 @@
+package com.nadiannis.common.dto.product;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBatchResDto {
+
+    private List<ProductResDto> products;
+
+    @JsonProperty(value = "missing_ids")
+    private List<Long> missingIds;
+
+}
@@ -25,6 +25,10 @@ public class ProductResDto {
     @JsonProperty(value = "stock_quantity")
     private Integer stockQuantity;
 
+    // Stock minus the quantities held by active reservations
+    @JsonProperty(value = "available_quantity")
+    private Integer availableQuantity;
+
     private String description;
 
     @JsonProperty(value = "image_url")
@@ -0,0 +1,25 @@
+package com.nadiannis.common.dto.reservation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationItemReqDto {
+
+    @NotNull(message = "product_id is required")
+    @JsonProperty(value = "product_id")
+    private Long productId;
+
+    @NotNull(message = "quantity is required")
+    @Min(value = 1, message = "quantity should be at least 1")
+    private Integer quantity;
+
+}
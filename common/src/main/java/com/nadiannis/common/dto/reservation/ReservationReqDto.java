@@ -0,0 +1,30 @@
+package com.nadiannis.common.dto.reservation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationReqDto {
+
+    @NotNull(message = "order_id is required")
+    @JsonProperty(value = "order_id")
+    private Long orderId;
+
+    @Valid
+    @NotEmpty(message = "products is required")
+    @Size(max = 1000, message = "products should not contain more than 1000 items")
+    private List<ReservationItemReqDto> products;
+
+}
@@ -0,0 +1,32 @@
+package com.nadiannis.common.dto.reservation;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationResDto {
+
+    private Long id;
+
+    @JsonProperty(value = "order_id")
+    private Long orderId;
+
+    @JsonProperty(value = "product_id")
+    private Long productId;
+
+    private Integer quantity;
+
+    private String status;
+
+    @JsonProperty(value = "expires_at")
+    private LocalDateTime expiresAt;
+
+}
@@ -0,0 +1,20 @@
+package com.nadiannis.common.dto.transactiondetail;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionDetailRefundReqDto {
+
+    @NotNull(message = "customer_id is required")
+    @JsonProperty(value = "customer_id")
+    private Long customerId;
+
+}
@@ -0,0 +1,22 @@
+package com.nadiannis.common.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+@Getter
+public class InvalidStatusTransitionException extends RuntimeException {
+
+    private String resourceName;
+    private String fromStatus;
+    private String toStatus;
+
+    public InvalidStatusTransitionException(String resourceName, String fromStatus, String toStatus) {
+        super(String.format("%s status cannot change from %s to %s", resourceName, fromStatus, toStatus));
+        this.resourceName = resourceName;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.nadiannis.common.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Producer settings shared by every service: sends are batched, compressed and idempotent, and a full buffer or an
+// unreachable broker fails the send within max.block.ms. Anything a service sets under spring.kafka.producer wins.
+@AutoConfiguration
+@ConditionalOnClass(DefaultKafkaProducerFactory.class)
+public class KafkaProducerAutoConfiguration {
+
+    public static final Map<String, Object> PRODUCER_DEFAULTS = Map.of(
+            ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024,
+            ProducerConfig.LINGER_MS_CONFIG, 5,
+            ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+            ProducerConfig.ACKS_CONFIG, "all",
+            ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+            // The most idempotence allows while still keeping the messages of a partition in order
+            ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5,
+            ProducerConfig.MAX_BLOCK_MS_CONFIG, 10000
+    );
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerDefaultsCustomizer() {
+        return producerFactory -> producerFactory.updateConfigs(withProducerDefaults(producerFactory.getConfigurationProperties()));
+    }
+
+    public static Map<String, Object> withProducerDefaults(Map<String, Object> configs) {
+        Map<String, Object> producerConfigs = new HashMap<>(PRODUCER_DEFAULTS);
+        producerConfigs.putAll(configs);
+        return producerConfigs;
+    }
+
+}
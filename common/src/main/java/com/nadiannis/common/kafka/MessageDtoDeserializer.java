@@ -0,0 +1,21 @@
+package com.nadiannis.common.kafka;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.utils.MessageEncoding;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+// Decodes straight from the record bytes in the encoding named by its header, without an intermediate String
+public class MessageDtoDeserializer implements Deserializer<MessageDto> {
+
+    @Override
+    public MessageDto deserialize(String topic, byte[] data) {
+        return data == null ? null : MessageDtoSerde.decode(data, MessageEncoding.JSON);
+    }
+
+    @Override
+    public MessageDto deserialize(String topic, Headers headers, byte[] data) {
+        return data == null ? null : MessageDtoSerde.decode(data, MessageDtoSerde.readEncoding(headers));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.nadiannis.common.kafka;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.utils.MessageEncoding;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Readers and writers are built once and shared, as they are immutable and thread-safe. Records without an
+// encoding header are JSON, which is what every producer wrote before the header existed.
+public class MessageDtoSerde {
+
+    public static final String ENCODING_HEADER = "message_encoding";
+
+    private static final ObjectReader JSON_READER = configure(JsonMapper.builder()).readerFor(MessageDto.class);
+
+    private static final ObjectWriter JSON_WRITER = configure(JsonMapper.builder()).writerFor(MessageDto.class);
+
+    private static final ObjectReader SMILE_READER = configure(SmileMapper.builder()).readerFor(MessageDto.class);
+
+    private static final ObjectWriter SMILE_WRITER = configure(SmileMapper.builder()).writerFor(MessageDto.class);
+
+    private static final byte[] SMILE_HEADER_VALUE = MessageEncoding.SMILE.toString().getBytes(StandardCharsets.UTF_8);
+
+    public static byte[] encode(MessageDto messageDto, MessageEncoding encoding) {
+        try {
+            return writer(encoding).writeValueAsBytes(messageDto);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to encode message as " + encoding, e);
+        }
+    }
+
+    public static MessageDto decode(byte[] data, MessageEncoding encoding) {
+        try {
+            return reader(encoding).readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to decode message as " + encoding, e);
+        }
+    }
+
+    // JSON records are left without the header, so consumers that predate it can still read them
+    public static void writeEncoding(Headers headers, MessageEncoding encoding) {
+        headers.remove(ENCODING_HEADER);
+        if (encoding == MessageEncoding.SMILE) {
+            headers.add(ENCODING_HEADER, SMILE_HEADER_VALUE);
+        }
+    }
+
+    public static MessageEncoding readEncoding(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(ENCODING_HEADER);
+        if (header == null) {
+            return MessageEncoding.JSON;
+        }
+        return MessageEncoding.valueOf(new String(header.value(), StandardCharsets.UTF_8).toUpperCase());
+    }
+
+    private static ObjectReader reader(MessageEncoding encoding) {
+        return encoding == MessageEncoding.SMILE ? SMILE_READER : JSON_READER;
+    }
+
+    private static ObjectWriter writer(MessageEncoding encoding) {
+        return encoding == MessageEncoding.SMILE ? SMILE_WRITER : JSON_WRITER;
+    }
+
+    // Dates are written as ISO strings like the services' own ObjectMapper, and fields a newer producer adds are ignored
+    private static ObjectMapper configure(MapperBuilder<?, ?> builder) {
+        return builder
+                .findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+    }
+
+}
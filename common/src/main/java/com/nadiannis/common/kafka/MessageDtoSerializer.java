@@ -0,0 +1,46 @@
+package com.nadiannis.common.kafka;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.utils.MessageEncoding;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+// Encodes as JSON unless the producer is configured with message.encoding=smile
+public class MessageDtoSerializer implements Serializer<MessageDto> {
+
+    public static final String ENCODING_CONFIG = "message.encoding";
+
+    private MessageEncoding encoding = MessageEncoding.JSON;
+
+    public MessageDtoSerializer() {
+    }
+
+    public MessageDtoSerializer(MessageEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configuredEncoding = configs.get(ENCODING_CONFIG);
+        if (configuredEncoding != null) {
+            encoding = MessageEncoding.valueOf(configuredEncoding.toString().toUpperCase());
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, MessageDto messageDto) {
+        return messageDto == null ? null : MessageDtoSerde.encode(messageDto, MessageEncoding.JSON);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, MessageDto messageDto) {
+        if (messageDto == null) {
+            return null;
+        }
+        MessageDtoSerde.writeEncoding(headers, encoding);
+        return MessageDtoSerde.encode(messageDto, encoding);
+    }
+
+}
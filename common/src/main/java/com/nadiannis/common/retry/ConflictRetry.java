@@ -0,0 +1,64 @@
+package com.nadiannis.common.retry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs an optimistic read-modify-write again when a concurrent write changed the version of its row, with exponential
+// backoff bounded in attempts and delay. The retried Mono is subscribed anew, so it has to read the entity again
+// rather than save the stale copy. Registered as a MeterBinder, it exports conflicts, retries and the conflicts that
+// ran out of retries under optimistic-lock.*, tagged with the entity.
+public class ConflictRetry implements MeterBinder {
+
+    private final String entity;
+
+    private final Retry retry;
+
+    private final LongAdder conflicts = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    public ConflictRetry(String entity, int maxRetries, Duration minBackoff, Duration maxBackoff) {
+        this.entity = entity;
+        this.retry = Retry.backoff(maxRetries, minBackoff)
+                .maxBackoff(maxBackoff)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .doBeforeRetry(signal -> retries.increment())
+                // The conflict itself reaches the caller, not a wrapper around it
+                .onRetryExhaustedThrow((spec, signal) -> {
+                    exhausted.increment();
+                    return signal.failure();
+                });
+    }
+
+    public <T> Mono<T> retry(Mono<T> mono) {
+        return mono
+                .doOnError(OptimisticLockingFailureException.class, error -> conflicts.increment())
+                .retryWhen(retry);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("optimistic-lock.conflicts", conflicts, LongAdder::sum)
+                .tag("entity", entity)
+                .description("Saves rejected because the row changed since it was read")
+                .register(registry);
+        FunctionCounter.builder("optimistic-lock.retries", retries, LongAdder::sum)
+                .tag("entity", entity)
+                .description("Read-modify-writes run again after a conflict")
+                .register(registry);
+        FunctionCounter.builder("optimistic-lock.exhausted", exhausted, LongAdder::sum)
+                .tag("entity", entity)
+                .description("Conflicts still failing once the retries ran out")
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.nadiannis.common.utils;
+
+public enum MessageEncoding {
+    JSON,
+    SMILE
+}
@@ -0,0 +1,8 @@
+package com.nadiannis.common.utils;
+
+public enum ReservationStatus {
+    RESERVED,
+    CONFIRMED,
+    RELEASED,
+    EXPIRED
+}
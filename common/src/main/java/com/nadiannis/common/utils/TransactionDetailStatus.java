@@ -2,5 +2,6 @@ package com.nadiannis.common.utils;
 
 public enum TransactionDetailStatus {
     APPROVED,
-    REJECTED
+    REJECTED,
+    REFUNDED
 }
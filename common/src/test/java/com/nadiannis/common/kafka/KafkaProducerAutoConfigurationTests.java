@@ -0,0 +1,43 @@
+package com.nadiannis.common.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+public class KafkaProducerAutoConfigurationTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(KafkaAutoConfiguration.class, KafkaProducerAutoConfiguration.class));
+
+    @Test
+    public void KafkaProducerAutoConfiguration_ProducerFactory_ApplySharedDefaults() {
+        contextRunner.run(context -> {
+            DefaultKafkaProducerFactory<?, ?> producerFactory = context.getBean(DefaultKafkaProducerFactory.class);
+
+            Assertions.assertThat(producerFactory.getConfigurationProperties())
+                    .containsEntry(ProducerConfig.LINGER_MS_CONFIG, 5)
+                    .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4")
+                    .containsEntry(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true)
+                    .containsEntry(ProducerConfig.ACKS_CONFIG, "all");
+        });
+    }
+
+    @Test
+    public void KafkaProducerAutoConfiguration_ProducerFactory_KeepSettingsConfiguredByService() {
+        contextRunner
+                .withPropertyValues("spring.kafka.producer.compression-type=zstd", "spring.kafka.producer.properties.linger.ms=20")
+                .run(context -> {
+                    DefaultKafkaProducerFactory<?, ?> producerFactory = context.getBean(DefaultKafkaProducerFactory.class);
+
+                    Assertions.assertThat(producerFactory.getConfigurationProperties())
+                            .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd")
+                            .containsEntry(ProducerConfig.LINGER_MS_CONFIG, "20")
+                            .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024);
+                });
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.nadiannis.common.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.utils.MessageEncoding;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Compares the former String + ObjectMapper.readValue decoding against the shared serde, per message, for CPU
+// time and bytes allocated on the decoding thread
+public class MessageDtoSerdeBenchmarkTests {
+
+    private static final int ORDER_ITEMS = 10;
+    private static final int WARMUP_MESSAGES = 50000;
+    private static final int MEASURED_MESSAGES = 200000;
+
+    private final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private long sink;
+
+    @Test
+    public void MessageDtoDeserializer_Deserialize_AllocateLessThanStringAndObjectMapper() throws Exception {
+        MessageDto messageDto = createOrderMessage();
+        byte[] jsonData = MessageDtoSerde.encode(messageDto, MessageEncoding.JSON);
+        Headers smileHeaders = new RecordHeaders();
+        byte[] smileData = new MessageDtoSerializer(MessageEncoding.SMILE).serialize("order", smileHeaders, messageDto);
+
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        StringDeserializer stringDeserializer = new StringDeserializer();
+        MessageDtoDeserializer deserializer = new MessageDtoDeserializer();
+
+        Measurement baseline = measure(data -> {
+            try {
+                return objectMapper.readValue(stringDeserializer.deserialize("order", data), MessageDto.class);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, jsonData);
+        Measurement json = measure(data -> deserializer.deserialize("order", new RecordHeaders(), data), jsonData);
+        Measurement smile = measure(data -> deserializer.deserialize("order", smileHeaders, data), smileData);
+
+        System.out.printf("String + ObjectMapper: %d bytes on the wire, %.0f ns and %d bytes allocated per message%n", jsonData.length, baseline.nanos, baseline.allocatedBytes);
+        System.out.printf("serde, JSON:           %d bytes on the wire, %.0f ns and %d bytes allocated per message%n", jsonData.length, json.nanos, json.allocatedBytes);
+        System.out.printf("serde, Smile:          %d bytes on the wire, %.0f ns and %d bytes allocated per message%n", smileData.length, smile.nanos, smile.allocatedBytes);
+
+        Assertions.assertThat(json.allocatedBytes).isLessThan(baseline.allocatedBytes);
+        Assertions.assertThat(smileData.length).isLessThan(jsonData.length);
+        Assertions.assertThat(sink).isNotZero();
+    }
+
+    private Measurement measure(Function<byte[], MessageDto> decode, byte[] data) {
+        for (int i = 0; i < WARMUP_MESSAGES; i++) {
+            sink += decode.apply(data).getPayload().getOrderItems().size();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long cpuBefore = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_MESSAGES; i++) {
+            sink += decode.apply(data).getPayload().getOrderItems().size();
+        }
+        long cpuNanos = threadMXBean.getCurrentThreadCpuTime() - cpuBefore;
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Measurement((double) cpuNanos / MEASURED_MESSAGES, allocatedBytes / MEASURED_MESSAGES);
+    }
+
+    private MessageDto createOrderMessage() {
+        return MessageDto.builder()
+                .status("ORDER_CREATED")
+                .payload(OrderResDto.builder()
+                        .id(7L)
+                        .paymentMethod("BANK_TRANSFER")
+                        .billingAddress("Jl. Sudirman No. 1, Bekasi")
+                        .shippingAddress("Jl. Thamrin No. 2, Jakarta")
+                        .orderStatus("CREATED")
+                        .totalAmount(1000000.0)
+                        .customerId(1L)
+                        .orderDate(LocalDateTime.now())
+                        .orderItems(IntStream.range(0, ORDER_ITEMS)
+                                .mapToObj(i -> OrderItemResDto.builder().id((long) i).orderId(7L).productId((long) i + 1).price(100000.0).quantity(1).build())
+                                .collect(Collectors.toList()))
+                        .build())
+                .build();
+    }
+
+    private record Measurement(double nanos, long allocatedBytes) {
+    }
+
+}
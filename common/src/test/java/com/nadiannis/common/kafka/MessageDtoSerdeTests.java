@@ -0,0 +1,100 @@
+package com.nadiannis.common.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.utils.MessageEncoding;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public class MessageDtoSerdeTests {
+
+    private MessageDto messageDto;
+
+    @BeforeEach
+    void setUp() {
+        messageDto = MessageDto.builder()
+                .status("ORDER_CREATED")
+                .payload(OrderResDto.builder()
+                        .id(7L)
+                        .paymentMethod("BANK_TRANSFER")
+                        .billingAddress("Bekasi")
+                        .shippingAddress("Jakarta")
+                        .orderStatus("CREATED")
+                        .totalAmount(300000.0)
+                        .customerId(1L)
+                        .orderDate(LocalDateTime.of(2024, 7, 1, 10, 30))
+                        .orderItems(List.of(OrderItemResDto.builder().id(1L).orderId(7L).productId(3L).price(100000.0).quantity(3).build()))
+                        .build())
+                .build();
+    }
+
+    // byte[] serialize(topic, headers, messageDto)
+    @Test
+    public void MessageDtoSerializer_Serialize_WriteJsonWithoutEncodingHeaderByDefault() {
+        MessageDtoSerializer serializer = new MessageDtoSerializer();
+        serializer.configure(Map.of(), false);
+        Headers headers = new RecordHeaders();
+
+        byte[] data = serializer.serialize("order", headers, messageDto);
+
+        Assertions.assertThat(headers.lastHeader(MessageDtoSerde.ENCODING_HEADER)).isNull();
+        Assertions.assertThat(new String(data, StandardCharsets.UTF_8))
+                .contains("\"order_items\"")
+                .contains("\"order_date\":\"2024-07-01T10:30:00\"");
+    }
+
+    @Test
+    public void MessageDtoSerializer_Serialize_WriteSmileWithEncodingHeaderWhenConfigured() {
+        MessageDtoSerializer serializer = new MessageDtoSerializer();
+        serializer.configure(Map.of(MessageDtoSerializer.ENCODING_CONFIG, "smile"), false);
+        Headers headers = new RecordHeaders();
+
+        byte[] data = serializer.serialize("order", headers, messageDto);
+
+        Assertions.assertThat(MessageDtoSerde.readEncoding(headers)).isEqualTo(MessageEncoding.SMILE);
+        Assertions.assertThat(data.length).isLessThan(MessageDtoSerde.encode(messageDto, MessageEncoding.JSON).length);
+    }
+
+    // MessageDto deserialize(topic, headers, data)
+    @Test
+    public void MessageDtoDeserializer_Deserialize_ReadBackWhatEitherEncodingWrote() {
+        MessageDtoDeserializer deserializer = new MessageDtoDeserializer();
+
+        for (MessageEncoding encoding : MessageEncoding.values()) {
+            Headers headers = new RecordHeaders();
+            byte[] data = new MessageDtoSerializer(encoding).serialize("order", headers, messageDto);
+
+            Assertions.assertThat(deserializer.deserialize("order", headers, data)).isEqualTo(messageDto);
+        }
+    }
+
+    @Test
+    public void MessageDtoDeserializer_Deserialize_ReadJsonWrittenByAnotherObjectMapper() throws Exception {
+        // The JSON serializer the producers used before wrote dates as arrays
+        byte[] data = new ObjectMapper().findAndRegisterModules().writeValueAsBytes(messageDto);
+
+        MessageDto deserializedMessageDto = new MessageDtoDeserializer().deserialize("order", new RecordHeaders(), data);
+
+        Assertions.assertThat(deserializedMessageDto).isEqualTo(messageDto);
+    }
+
+    @Test
+    public void MessageDtoDeserializer_Deserialize_ThrowSerializationExceptionForMalformedData() {
+        byte[] data = "not a message".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertThatThrownBy(() -> new MessageDtoDeserializer().deserialize("order", new RecordHeaders(), data))
+                .isInstanceOf(SerializationException.class);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.nadiannis.common.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConflictRetryTests {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ConflictRetry conflictRetry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        conflictRetry = new ConflictRetry("product", 3, Duration.ofMillis(1), Duration.ofMillis(5));
+        conflictRetry.bindTo(meterRegistry);
+    }
+
+    // Mono<T> retry(Mono<T> mono)
+    @Test
+    public void ConflictRetry_Retry_SubscribeAgainUntilNoConflict() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> save = Mono.defer(() -> attempts.incrementAndGet() < 3
+                ? Mono.error(new OptimisticLockingFailureException("version changed"))
+                : Mono.just("saved"));
+
+        StepVerifier.create(conflictRetry.retry(save))
+                .expectNext("saved")
+                .verifyComplete();
+
+        Assertions.assertThat(attempts.get()).isEqualTo(3);
+        Assertions.assertThat(count("optimistic-lock.conflicts")).isEqualTo(2);
+        Assertions.assertThat(count("optimistic-lock.retries")).isEqualTo(2);
+        Assertions.assertThat(count("optimistic-lock.exhausted")).isEqualTo(0);
+    }
+
+    @Test
+    public void ConflictRetry_Retry_ThrowConflictOnceRetriesRunOut() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> save = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new OptimisticLockingFailureException("version changed"));
+        });
+
+        StepVerifier.create(conflictRetry.retry(save))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+
+        Assertions.assertThat(attempts.get()).isEqualTo(4);
+        Assertions.assertThat(count("optimistic-lock.conflicts")).isEqualTo(4);
+        Assertions.assertThat(count("optimistic-lock.retries")).isEqualTo(3);
+        Assertions.assertThat(count("optimistic-lock.exhausted")).isEqualTo(1);
+    }
+
+    @Test
+    public void ConflictRetry_Retry_NotRetryOtherErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> save = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalStateException("connection closed"));
+        });
+
+        StepVerifier.create(conflictRetry.retry(save))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        Assertions.assertThat(attempts.get()).isEqualTo(1);
+        Assertions.assertThat(count("optimistic-lock.conflicts")).isEqualTo(0);
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("entity", "product").functionCounter().count();
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.nadiannis.orchestrator_service.config;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.kafka.MessageDtoDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class KafkaReceiverConfig {
+
+    @Bean
+    public KafkaReceiver<String, MessageDto> orchestratorTopicReceiver(KafkaProperties kafkaProperties, @Value("${orchestrator.saga.max-in-flight:256}") int maxInFlightSagas) {
+        // Sagas finish out of order, so offsets are committed only up to the oldest saga still running.
+        // Committing every max-in-flight acknowledgements keeps the deferred offsets from pausing the consumer.
+        // The receiver is typed, so its deserializers are set here rather than taken from the properties
+        ReceiverOptions<String, MessageDto> receiverOptions = ReceiverOptions.<String, MessageDto>create(kafkaProperties.buildConsumerProperties(null))
+                .withKeyDeserializer(new StringDeserializer())
+                .withValueDeserializer(new ErrorHandlingDeserializer<>(new MessageDtoDeserializer()))
+                .maxDeferredCommits(maxInFlightSagas * 4)
+                .commitBatchSize(maxInFlightSagas)
+                .commitInterval(Duration.ofSeconds(1))
+                .closeTimeout(Duration.ofSeconds(5))
+                .subscription(List.of("orchestrator"));
+
+        return KafkaReceiver.create(receiverOptions);
+    }
+
+}
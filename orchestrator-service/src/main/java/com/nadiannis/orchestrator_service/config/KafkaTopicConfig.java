@@ -1,6 +1,7 @@
 package com.nadiannis.orchestrator_service.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -8,14 +9,23 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaTopicConfig {
 
+    @Value("${kafka.topic.orchestrator.partitions:6}")
+    private int orchestratorTopicPartitions;
+
+    @Value("${kafka.topic.order.partitions:6}")
+    private int orderTopicPartitions;
+
+    @Value("${kafka.topic.replicas:1}")
+    private int topicReplicas;
+
     @Bean
     public NewTopic OrchestratorTopic() {
-        return TopicBuilder.name("orchestrator").build();
+        return TopicBuilder.name("orchestrator").partitions(orchestratorTopicPartitions).replicas(topicReplicas).build();
     }
 
     @Bean
     public NewTopic OrderTopic() {
-        return TopicBuilder.name("order").build();
+        return TopicBuilder.name("order").partitions(orderTopicPartitions).replicas(topicReplicas).build();
     }
 
 }
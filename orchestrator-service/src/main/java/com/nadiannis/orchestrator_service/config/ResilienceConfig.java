@@ -0,0 +1,97 @@
+package com.nadiannis.orchestrator_service.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+@Configuration
+public class ResilienceConfig {
+
+    // Retry configuration for calls that are not idempotent, so only requests that never reached the service are repeated
+    public static final String CONNECT_FAILURES_RETRY_CONFIG = "connect-failures";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(
+            @Value("${orchestrator.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${orchestrator.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${orchestrator.circuit-breaker.wait-duration-in-open-state:10s}") Duration waitDurationInOpenState,
+            @Value("${orchestrator.circuit-breaker.permitted-calls-in-half-open-state:5}") int permittedCallsInHalfOpenState
+    ) {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(slidingWindowSize)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .recordException(ResilienceConfig::isTransientFailure)
+                .build());
+    }
+
+    // Exponential backoff with jitter, so sagas retrying after the same blip do not hit the service in lockstep
+    @Bean
+    public RetryRegistry retryRegistry(
+            @Value("${orchestrator.retry.max-attempts:3}") int maxAttempts,
+            @Value("${orchestrator.retry.initial-interval:100ms}") Duration initialInterval,
+            @Value("${orchestrator.retry.multiplier:2}") double multiplier,
+            @Value("${orchestrator.retry.randomization-factor:0.5}") double randomizationFactor,
+            @Value("${orchestrator.retry.max-interval:2s}") Duration maxInterval
+    ) {
+        RetryConfig transientFailures = RetryConfig.custom()
+                .maxAttempts(maxAttempts)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(initialInterval, multiplier, randomizationFactor, maxInterval))
+                .retryOnException(ResilienceConfig::isTransientFailure)
+                .build();
+        RetryConfig connectFailures = RetryConfig.from(transientFailures)
+                .retryOnException(ResilienceConfig::isConnectFailure)
+                .build();
+
+        RetryRegistry registry = RetryRegistry.of(transientFailures);
+        registry.addConfiguration(CONNECT_FAILURES_RETRY_CONFIG, connectFailures);
+        return registry;
+    }
+
+    // Exports the state (closed, open, half-open), call outcomes and rejected calls of every circuit breaker
+    @Bean
+    public MeterBinder circuitBreakerMetrics(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry);
+    }
+
+    // Exports calls that succeeded or failed with and without retry
+    @Bean
+    public MeterBinder retryMetrics(RetryRegistry retryRegistry) {
+        return TaggedRetryMetrics.ofRetryRegistry(retryRegistry);
+    }
+
+    // Failures that say nothing about the request itself; a 4xx answer is a business rejection and is neither
+    // retried nor held against the service
+    public static boolean isTransientFailure(Throwable error) {
+        if (error instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError();
+        }
+        return error instanceof WebClientRequestException || error instanceof TimeoutException;
+    }
+
+    public static boolean isConnectFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.nadiannis.orchestrator_service.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.retry.RetryOperator;
+import io.github.resilience4j.retry.Retry;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+// Runs every attempt through the circuit breaker of the downstream service and retries the exchange as a whole.
+// A 5xx answer is turned into an error here, so it counts as a failed call for both.
+public class ResilientExchangeFilter implements ExchangeFilterFunction {
+
+    private CircuitBreaker circuitBreaker;
+
+    private Retry retry;
+
+    public ResilientExchangeFilter(CircuitBreaker circuitBreaker, Retry retry) {
+        this.circuitBreaker = circuitBreaker;
+        this.retry = retry;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> next.exchange(request))
+                .flatMap(response -> response.statusCode().is5xxServerError()
+                        ? response.createException().flatMap(Mono::<ClientResponse>error)
+                        : Mono.just(response))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(RetryOperator.of(retry));
+    }
+
+}
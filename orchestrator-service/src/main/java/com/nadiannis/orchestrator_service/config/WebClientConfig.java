@@ -1,9 +1,18 @@
 package com.nadiannis.orchestrator_service.config;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
@@ -14,14 +23,115 @@ public class WebClientConfig {
     @Value("${service.payment.base-url}")
     private String paymentServiceBaseUrl;
 
+    @Value("${service.product.connect-timeout:1s}")
+    private Duration productServiceConnectTimeout;
+
+    @Value("${service.product.response-timeout:3s}")
+    private Duration productServiceResponseTimeout;
+
+    @Value("${service.payment.connect-timeout:1s}")
+    private Duration paymentServiceConnectTimeout;
+
+    @Value("${service.payment.response-timeout:3s}")
+    private Duration paymentServiceResponseTimeout;
+
+    @Value("${orchestrator.http-client.max-connections:256}")
+    private int maxConnections;
+
+    @Value("${orchestrator.http-client.pending-acquire-max-count:1024}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${orchestrator.http-client.pending-acquire-timeout:5s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${orchestrator.http-client.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${orchestrator.http-client.max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${orchestrator.http-client.h2c:false}")
+    private boolean h2c;
+
+    @Value("${orchestrator.http-client.compress:true}")
+    private boolean compress;
+
+    // One pool per downstream service, so a saturated product service cannot starve the payment calls
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider productConnectionProvider() {
+        return connectionProvider("product-service", maxConnections, pendingAcquireMaxCount, pendingAcquireTimeout, maxIdleTime, maxLifeTime);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider paymentConnectionProvider() {
+        return connectionProvider("payment-service", maxConnections, pendingAcquireMaxCount, pendingAcquireTimeout, maxIdleTime, maxLifeTime);
+    }
+
+    // The product service is only called to reserve, confirm and release the stock of an order, each idempotent per
+    // order, so any transient failure is retried
     @Bean
-    public WebClient webClientProduct() {
-        return WebClient.builder().baseUrl(productServiceBaseUrl).build();
+    public WebClient webClientProduct(ConnectionProvider productConnectionProvider, CircuitBreakerRegistry circuitBreakerRegistry, RetryRegistry retryRegistry) {
+        return WebClient.builder()
+                .baseUrl(productServiceBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(
+                        httpClient(productConnectionProvider, productServiceConnectTimeout, productServiceResponseTimeout, h2c, compress)
+                ))
+                .filter(new ResilientExchangeFilter(
+                        circuitBreakerRegistry.circuitBreaker("product-service"),
+                        retryRegistry.retry("product-service")
+                ))
+                .build();
     }
 
+    // The payment service settles one transaction per order, so any transient failure is retried
     @Bean
-    public WebClient webClientPayment() {
-        return WebClient.builder().baseUrl(paymentServiceBaseUrl).build();
+    public WebClient webClientPayment(ConnectionProvider paymentConnectionProvider, CircuitBreakerRegistry circuitBreakerRegistry, RetryRegistry retryRegistry) {
+        return WebClient.builder()
+                .baseUrl(paymentServiceBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(
+                        httpClient(paymentConnectionProvider, paymentServiceConnectTimeout, paymentServiceResponseTimeout, h2c, compress)
+                ))
+                .filter(new ResilientExchangeFilter(
+                        circuitBreakerRegistry.circuitBreaker("payment-service"),
+                        retryRegistry.retry("payment-service")
+                ))
+                .build();
+    }
+
+    // Sized for max-in-flight sagas instead of the Reactor Netty default of twice the processor count. Acquires
+    // queue up to the pending limit and then fail fast, and the pool publishes its total, active, idle and pending
+    // connections and the pending acquire time as reactor.netty.connection.provider metrics.
+    public static ConnectionProvider connectionProvider(
+            String name,
+            int maxConnections,
+            int pendingAcquireMaxCount,
+            Duration pendingAcquireTimeout,
+            Duration maxIdleTime,
+            Duration maxLifeTime
+    ) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                // Idle connections are also swept in the background, so a quiet pool shrinks without waiting for an acquire
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+    }
+
+    public static HttpClient httpClient(ConnectionProvider connectionProvider, Duration connectTimeout, Duration responseTimeout, boolean h2c, boolean compress) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout)
+                .compress(compress);
+        if (h2c) {
+            // Upgrades to HTTP/2 cleartext where the service supports it and falls back to HTTP/1.1 otherwise. The
+            // first request on a connection carries the upgrade with its body, so the service must accept that size.
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        return httpClient;
     }
 
 }
@@ -0,0 +1,29 @@
+package com.nadiannis.orchestrator_service.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table(name = "saga_states")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaState {
+
+    @Id
+    private Long orderId;
+
+    private String step;
+
+    // The ORDER_CREATED payload as JSON, so a recovered saga can resume without the Kafka record
+    private String payload;
+
+    private LocalDateTime updatedAt;
+
+}
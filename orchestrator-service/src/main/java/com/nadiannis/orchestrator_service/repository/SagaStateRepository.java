@@ -0,0 +1,31 @@
+package com.nadiannis.orchestrator_service.repository;
+
+import com.nadiannis.orchestrator_service.entity.SagaState;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SagaStateRepository extends R2dbcRepository<SagaState, Long> {
+
+    // Upsert, so a redelivered ORDER_CREATED restarts its saga row instead of failing on the primary key
+    @Modifying
+    @Query("MERGE INTO saga_states (order_id, step, payload, updated_at) KEY (order_id) VALUES (:orderId, :step, :payload, :updatedAt)")
+    Mono<Integer> start(Long orderId, String step, String payload, LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("UPDATE saga_states SET step = :step, updated_at = :updatedAt WHERE order_id = :orderId")
+    Mono<Integer> updateStep(Long orderId, String step, LocalDateTime updatedAt);
+
+    // Keyset page over the (step, order_id) index, so recovery never scans the finished sagas. Sagas that recorded
+    // a step since updatedBefore are left to the run that is still processing them.
+    @Query("SELECT * FROM saga_states WHERE step IN (:steps) AND updated_at < :updatedBefore AND order_id > :afterOrderId ORDER BY order_id LIMIT :limit")
+    Flux<SagaState> findInFlight(List<String> steps, LocalDateTime updatedBefore, Long afterOrderId, int limit);
+
+}
@@ -0,0 +1,131 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Objects;
+
+// Consumes the orchestrator topic with at most max-in-flight sagas running. The receiver stops polling while
+// that many are in flight, and a record is acknowledged once its saga reached a terminal step or failed. Sagas a
+// previous run left in flight are recovered before the first record is polled, and failed sagas afterwards by the
+// scheduled recovery.
+@Service
+@ConditionalOnProperty(name = "saga.mode", havingValue = "orchestrated", matchIfMissing = true)
+public class OrchestratorConsumerService implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(OrchestratorConsumerService.class);
+
+    private KafkaReceiver<String, MessageDto> receiver;
+
+    private OrchestratorService orchestratorService;
+
+    private SagaRecoveryService sagaRecoveryService;
+
+    private int maxInFlightSagas;
+
+    private Duration restartMinBackoff;
+
+    private Duration restartMaxBackoff;
+
+    private Disposable consumer;
+
+    private Disposable recovery;
+
+    @Autowired
+    public OrchestratorConsumerService(
+            KafkaReceiver<String, MessageDto> receiver,
+            OrchestratorService orchestratorService,
+            SagaRecoveryService sagaRecoveryService,
+            @Value("${orchestrator.saga.max-in-flight:256}") int maxInFlightSagas,
+            @Value("${orchestrator.consumer.restart-min-backoff:1s}") Duration restartMinBackoff,
+            @Value("${orchestrator.consumer.restart-max-backoff:1m}") Duration restartMaxBackoff
+    ) {
+        this.receiver = receiver;
+        this.orchestratorService = orchestratorService;
+        this.sagaRecoveryService = sagaRecoveryService;
+        this.maxInFlightSagas = maxInFlightSagas;
+        this.restartMinBackoff = restartMinBackoff;
+        this.restartMaxBackoff = restartMaxBackoff;
+    }
+
+    // Records are spread over max-in-flight lanes by key, so sagas of different orders run concurrently while
+    // the records of one order are processed one after another, in partition order
+    public Flux<ReceiverRecord<String, MessageDto>> consume() {
+        return receiver.receive()
+                .groupBy(record -> Math.floorMod(Objects.hashCode(record.key()), maxInFlightSagas))
+                .flatMap(lane -> lane.concatMap(record -> process(record.value())
+                        .onErrorResume(error -> {
+                            logger.error("Failed to process orchestrator message at offset {}", record.offset(), error);
+                            return Mono.empty();
+                        })
+                        .then(Mono.fromRunnable(() -> record.receiverOffset().acknowledge()))
+                        .thenReturn(record)), maxInFlightSagas);
+    }
+
+    // A failed receiver, such as a broker that stayed unreachable or a failed commit, subscribes again with backoff
+    // from the last committed offsets. Records that were not acknowledged yet are redelivered.
+    public Flux<ReceiverRecord<String, MessageDto>> consumeWithRestart() {
+        return Flux.defer(() -> consume())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, restartMinBackoff)
+                        .maxBackoff(restartMaxBackoff)
+                        .doBeforeRetry(signal -> logger.error("Orchestrator consumer failed, restarting (attempt {})", signal.totalRetries() + 1, signal.failure())));
+    }
+
+    private Mono<Void> process(MessageDto messageDto) {
+        // A record the deserializer could not read arrives without a value, and redelivering it would not help
+        if (messageDto == null) {
+            return Mono.error(new IllegalArgumentException("message could not be deserialized"));
+        }
+        if (messageDto.getStatus().equals("ORDER_CREATED")) {
+            return orchestratorService.processOrderCreated(messageDto);
+        }
+        return Mono.empty();
+    }
+
+    @Override
+    public void start() {
+        // Recovering first keeps a redelivered record and its recovered saga from running the same step side by side
+        Mono<Long> startupRecovery = sagaRecoveryService.recover()
+                .onErrorResume(error -> {
+                    logger.error("Saga recovery failed", error);
+                    return Mono.empty();
+                })
+                .cache();
+        consumer = startupRecovery
+                .thenMany(consumeWithRestart())
+                .doOnError(error -> logger.error("Orchestrator consumer stopped", error))
+                .subscribe();
+        recovery = startupRecovery
+                .thenMany(sagaRecoveryService.recoverPeriodically())
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if (consumer != null) {
+            consumer.dispose();
+        }
+        if (recovery != null) {
+            recovery.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return consumer != null && !consumer.isDisposed();
+    }
+
+}
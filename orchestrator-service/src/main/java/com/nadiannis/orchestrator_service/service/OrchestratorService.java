@@ -1,25 +1,27 @@
 package com.nadiannis.orchestrator_service.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nadiannis.common.dto.*;
-import com.nadiannis.common.dto.order.OrderItemResDto;
-import com.nadiannis.common.dto.product.ProductResDto;
-import com.nadiannis.common.dto.product.QuantityUpdateReqDto;
+import com.nadiannis.common.dto.reservation.ReservationItemReqDto;
+import com.nadiannis.common.dto.reservation.ReservationReqDto;
+import com.nadiannis.common.dto.reservation.ReservationResDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailRefundReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
-import com.nadiannis.common.utils.QuantityUpdateAction;
 import com.nadiannis.common.utils.TransactionDetailStatus;
+import com.nadiannis.orchestrator_service.repository.SagaStateRepository;
+import com.nadiannis.orchestrator_service.utils.SagaStep;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Flux;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class OrchestratorService {
@@ -30,91 +32,113 @@ public class OrchestratorService {
 
     private KafkaTemplate<String, Object> kafkaTemplate;
 
+    private SagaStateRepository sagaStateRepository;
+
     private ObjectMapper objectMapper;
 
     @Autowired
-    public OrchestratorService(WebClient webClientProduct, WebClient webClientPayment, KafkaTemplate<String, Object> kafkaTemplate, ObjectMapper objectMapper) {
+    public OrchestratorService(
+            WebClient webClientProduct,
+            WebClient webClientPayment,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            SagaStateRepository sagaStateRepository,
+            ObjectMapper objectMapper
+    ) {
         this.webClientProduct = webClientProduct;
         this.webClientPayment = webClientPayment;
         this.kafkaTemplate = kafkaTemplate;
+        this.sagaStateRepository = sagaStateRepository;
         this.objectMapper = objectMapper;
     }
 
-    @KafkaListener(topics = "orchestrator", groupId = "phincommerce")
-    public void consumeOrchestratorTopic(String message) throws JsonProcessingException {
-        MessageDto messageDto = objectMapper.readValue(message, MessageDto.class);
-
-        if (messageDto.getStatus().equals("ORDER_CREATED")) {
-            System.out.println("ORDER_CREATED (deduct the product): " + messageDto);
-
-            Flux.fromIterable(messageDto.getPayload().getOrderItems())
-                    .flatMap(orderItem -> checkProductAvailability(orderItem))
-                    .collectList()
-                    .flatMap(results -> {
-                        if (results.contains(false)) {
-                            System.out.println("PRODUCT_DEDUCT_FAILED (update the order status)");
-                            sendOrderMessage(messageDto, "PRODUCT_DEDUCT_FAILED");
-                            return Mono.empty();
-                        } else {
-                            return deductProducts(messageDto);
-                        }
-                    })
-                    .subscribe();
+    public Mono<Void> processOrderCreated(MessageDto messageDto) {
+        System.out.println("ORDER_CREATED (reserve the product): " + messageDto);
+
+        // A redelivered message picks its saga up at the recorded step, so finished steps are not run twice
+        return sagaStateRepository.findById(messageDto.getPayload().getId())
+                .map(sagaState -> SagaStep.valueOf(sagaState.getStep()))
+                .switchIfEmpty(Mono.defer(() -> startSaga(messageDto).thenReturn(SagaStep.STARTED)))
+                .flatMap(step -> resume(messageDto, step));
+    }
+
+    // Every step is recorded before the next remote call, so a saga cut off by a crash resumes from its last step
+    public Mono<Void> resume(MessageDto messageDto, SagaStep step) {
+        switch (step) {
+            case STARTED:
+                // The reservation checks and holds the stock in one call, an insufficient product fails the whole order
+                return reserveProducts(messageDto);
+            case PRODUCTS_DEDUCTED:
+                // The payment service settles one transaction per order, so repeating the request is safe
+                return processPayment(messageDto);
+            case PAYMENT_REJECTED:
+                return compensatePayment(messageDto);
+            case PAYMENT_REFUNDING:
+                return refundPayment(messageDto);
+            default:
+                return Mono.empty();
         }
     }
 
-    private Mono<Boolean> checkProductAvailability(OrderItemResDto orderItemResDto) {
-        return webClientProduct.get()
-                .uri("/api/v1/products/{id}", orderItemResDto.getProductId())
-                .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<SuccessResponse<ProductResDto>>() {})
-                .map(response -> {
-                    ProductResDto product = response.getData();
-                    return product.getStockQuantity() >= orderItemResDto.getQuantity();
-                })
-                .onErrorResume(error -> Mono.just(false));
+    private Mono<Void> startSaga(MessageDto messageDto) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(messageDto.getPayload()))
+                .flatMap(payload -> sagaStateRepository.start(messageDto.getPayload().getId(), SagaStep.STARTED.toString(), payload, LocalDateTime.now()))
+                .then();
+    }
+
+    private Mono<Void> recordStep(MessageDto messageDto, SagaStep step) {
+        return sagaStateRepository.updateStep(messageDto.getPayload().getId(), step.toString(), LocalDateTime.now()).then();
     }
 
-    private Mono<Void> deductProducts(MessageDto messageDto) {
-        return Flux.fromIterable(messageDto.getPayload().getOrderItems())
-                .flatMap(orderItem -> deductProductQuantity(orderItem))
-                .collectList()
-                .flatMap(deductResults -> {
-                    if (deductResults.contains(false)) {
+    private Mono<Void> reserveProducts(MessageDto messageDto) {
+        List<ReservationItemReqDto> products = messageDto.getPayload().getOrderItems().stream()
+                .map(orderItem -> new ReservationItemReqDto(orderItem.getProductId(), orderItem.getQuantity()))
+                .collect(Collectors.toList());
+
+        // All items of an order are reserved in one all-or-nothing call to the product service, which answers a
+        // replayed order with its existing reservations
+        return webClientProduct.post()
+                .uri("/api/v1/reservations")
+                .bodyValue(new ReservationReqDto(messageDto.getPayload().getId(), products))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<SuccessResponse<List<ReservationResDto>>>() {})
+                .map(reservationResDtos -> true)
+                // Only a rejection by the product service fails the order. Timeouts, 5xx answers and an open circuit
+                // fail the step instead, which stays recorded for recovery.
+                .onErrorResume(WebClientResponseException.class, error -> error.getStatusCode().is4xxClientError()
+                        ? Mono.just(false)
+                        : Mono.error(error))
+                .flatMap(reserved -> {
+                    if (!reserved) {
                         System.out.println("PRODUCT_DEDUCT_FAILED (update the order status)");
-                        sendOrderMessage(messageDto, "PRODUCT_DEDUCT_FAILED");
-                        return Mono.empty();
+                        return sendOrderMessage(messageDto, "PRODUCT_DEDUCT_FAILED").then(recordStep(messageDto, SagaStep.FAILED));
                     } else {
                         System.out.println("PRODUCT_DEDUCTED (process to payment)");
-                        return processPayment(messageDto);
+                        return recordStep(messageDto, SagaStep.PRODUCTS_DEDUCTED).then(processPayment(messageDto));
                     }
                 });
     }
 
-    private Mono<Boolean> deductProductQuantity(OrderItemResDto orderItemResDto) {
-        return webClientProduct.patch()
-                .uri("/api/v1/products/{id}/quantities", orderItemResDto.getProductId())
-                .bodyValue(new QuantityUpdateReqDto(QuantityUpdateAction.DEDUCT.toString(), orderItemResDto.getQuantity()))
+    // Turns the reservations into a deduction of the stock. Confirming again is a no-op, so recovery can repeat it.
+    // A rejection, such as a reservation that expired while its stock was sold meanwhile, answers false. Other
+    // failures keep the step recorded for recovery.
+    private Mono<Boolean> confirmReservations(MessageDto messageDto) {
+        return webClientProduct.post()
+                .uri("/api/v1/reservations/{orderId}/confirm", messageDto.getPayload().getId())
                 .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<SuccessResponse<ProductResDto>>() {})
-                .map(productResDto -> true)
-                .onErrorResume(error -> Mono.just(false));
+                .toBodilessEntity()
+                .map(response -> true)
+                .onErrorResume(WebClientResponseException.class, error -> error.getStatusCode().is4xxClientError()
+                        ? Mono.just(false)
+                        : Mono.error(error));
     }
 
-    private Mono<Void> addProducts(List<OrderItemResDto> orderItemResDtoList) {
-        return Flux.fromIterable(orderItemResDtoList)
-                .flatMap(orderItem -> addProductQuantity(orderItem))
-                .then();
-    }
-
-    private Mono<Boolean> addProductQuantity(OrderItemResDto orderItemResDto) {
-        return webClientProduct.patch()
-                .uri("/api/v1/products/{id}/quantities", orderItemResDto.getProductId())
-                .bodyValue(new QuantityUpdateReqDto(QuantityUpdateAction.ADD.toString(), orderItemResDto.getQuantity()))
+    // Gives the reserved stock back. Releasing again, or after the reservations expired, is a no-op.
+    private Mono<Void> releaseReservations(MessageDto messageDto) {
+        return webClientProduct.post()
+                .uri("/api/v1/reservations/{orderId}/release", messageDto.getPayload().getId())
                 .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<SuccessResponse<ProductResDto>>() {})
-                .map(productResDto -> true)
-                .onErrorResume(error -> Mono.just(false));
+                .toBodilessEntity()
+                .then();
     }
 
     private Mono<Void> processPayment(MessageDto messageDto) {
@@ -132,23 +156,51 @@ public class OrchestratorService {
                 .flatMap(resDto -> {
                     if (resDto.getData().getStatus().equals(TransactionDetailStatus.APPROVED.toString())) {
                         System.out.println("PAYMENT_APPROVED (update the order status): " + resDto.getData());
-                        sendOrderMessage(messageDto, "PAYMENT_APPROVED");
-                        return Mono.empty();
+                        return confirmReservations(messageDto).flatMap(confirmed -> {
+                            if (!confirmed) {
+                                System.out.println("PRODUCT_CONFIRM_FAILED (refund the payment): " + resDto.getData());
+                                return recordStep(messageDto, SagaStep.PAYMENT_REFUNDING).then(refundPayment(messageDto));
+                            }
+                            return sendOrderMessage(messageDto, "PAYMENT_APPROVED").then(recordStep(messageDto, SagaStep.COMPLETED));
+                        });
                     } else if (resDto.getData().getStatus().equals(TransactionDetailStatus.REJECTED.toString())) {
-                        System.out.println("PAYMENT_REJECTED (add the product): " + resDto.getData());
-                        return addProducts(messageDto.getPayload().getOrderItems())
-                                .then(Mono.fromRunnable(() -> {
-                                    System.out.println("PAYMENT_REJECTED (update the order status): " + resDto.getData());
-                                    sendOrderMessage(messageDto, "PAYMENT_REJECTED");
-                                }));
+                        System.out.println("PAYMENT_REJECTED (release the product): " + resDto.getData());
+                        return recordStep(messageDto, SagaStep.PAYMENT_REJECTED).then(compensatePayment(messageDto));
                     }
                     return Mono.empty();
                 });
     }
 
-    private void sendOrderMessage(MessageDto messageDto, String status) {
+    private Mono<Void> compensatePayment(MessageDto messageDto) {
+        return releaseReservations(messageDto)
+                .then(Mono.defer(() -> {
+                    System.out.println("PAYMENT_REJECTED (update the order status): " + messageDto.getPayload().getId());
+                    return sendOrderMessage(messageDto, "PAYMENT_REJECTED").then(recordStep(messageDto, SagaStep.FAILED));
+                }));
+    }
+
+    // The customer was charged for stock the order no longer holds, so the debit is credited back before the order
+    // fails. The payment service refunds a transaction once, so recovery can repeat this step.
+    private Mono<Void> refundPayment(MessageDto messageDto) {
+        return releaseReservations(messageDto)
+                .then(webClientPayment.post()
+                        .uri("/api/v1/transactions/orders/{orderId}/refund", messageDto.getPayload().getId())
+                        .bodyValue(new TransactionDetailRefundReqDto(messageDto.getPayload().getCustomerId()))
+                        .retrieve()
+                        .toBodilessEntity())
+                .then(Mono.defer(() -> {
+                    System.out.println("PAYMENT_REFUNDED (update the order status): " + messageDto.getPayload().getId());
+                    return sendOrderMessage(messageDto, "PAYMENT_REJECTED").then(recordStep(messageDto, SagaStep.FAILED));
+                }));
+    }
+
+    // Completes once the broker acknowledged the message, so a slow broker holds the saga (and with it the
+    // consumer's in-flight limit) instead of piling messages up in the producer. The terminal step is recorded
+    // only after the acknowledgement, so a failed send is retried by recovery.
+    private Mono<Void> sendOrderMessage(MessageDto messageDto, String status) {
         messageDto.setStatus(status);
-        kafkaTemplate.send("order", messageDto);
+        // Keyed by order id, so every message of an order lands on the same partition and stays in order
+        return Mono.fromFuture(() -> kafkaTemplate.send("order", Long.toString(messageDto.getPayload().getId()), messageDto)).then();
     }
 
 }
@@ -0,0 +1,125 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.orchestrator_service.entity.SagaState;
+import com.nadiannis.orchestrator_service.repository.SagaStateRepository;
+import com.nadiannis.orchestrator_service.utils.SagaStep;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Resumes or compensates the sagas left in a non-terminal step, all of them once at start, and afterwards on a
+// schedule those that recorded no step for stale-after. The consumer acknowledges a record whose saga failed, so
+// only recovery brings such a saga to a terminal step.
+@Service
+public class SagaRecoveryService {
+
+    private static final List<String> IN_FLIGHT_STEPS = List.of(
+            SagaStep.STARTED.toString(),
+            SagaStep.PRODUCTS_DEDUCTED.toString(),
+            SagaStep.PAYMENT_REJECTED.toString(),
+            SagaStep.PAYMENT_REFUNDING.toString()
+    );
+
+    private final Logger logger = LoggerFactory.getLogger(SagaRecoveryService.class);
+
+    private SagaStateRepository sagaStateRepository;
+
+    private OrchestratorService orchestratorService;
+
+    private ObjectMapper objectMapper;
+
+    private int batchSize;
+
+    private int parallelism;
+
+    private Duration staleAfter;
+
+    private Duration interval;
+
+    @Autowired
+    public SagaRecoveryService(
+            SagaStateRepository sagaStateRepository,
+            OrchestratorService orchestratorService,
+            ObjectMapper objectMapper,
+            @Value("${orchestrator.saga.recovery-batch-size:100}") int batchSize,
+            @Value("${orchestrator.saga.recovery-parallelism:16}") int parallelism,
+            @Value("${orchestrator.saga.recovery-stale-after:1m}") Duration staleAfter,
+            @Value("${orchestrator.saga.recovery-interval:30s}") Duration interval
+    ) {
+        this.sagaStateRepository = sagaStateRepository;
+        this.orchestratorService = orchestratorService;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.staleAfter = staleAfter;
+        this.interval = interval;
+    }
+
+    // Nothing is processing yet at start, so every in-flight saga is recovered regardless of its age
+    public Mono<Long> recover() {
+        return recover(LocalDateTime.now());
+    }
+
+    // A saga still being processed records a step well within stale-after, so the scheduled recovery does not run
+    // the same step beside it
+    public Mono<Long> recoverStale() {
+        return recover(LocalDateTime.now().minus(staleAfter));
+    }
+
+    // One recovery at a time, a tick that arrives while the previous one still runs is dropped
+    public Flux<Long> recoverPeriodically() {
+        return Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> recoverStale().onErrorResume(error -> {
+                    logger.error("Saga recovery failed", error);
+                    return Mono.empty();
+                }));
+    }
+
+    // Pages through the in-flight sagas by order id, one batch at a time, with at most parallelism sagas resuming.
+    // A saga that fails again keeps its step and is picked up by the next recovery.
+    private Mono<Long> recover(LocalDateTime updatedBefore) {
+        return findInFlight(updatedBefore, 0L)
+                .expand(sagaStates -> sagaStates.size() < batchSize
+                        ? Mono.empty()
+                        : findInFlight(updatedBefore, sagaStates.get(sagaStates.size() - 1).getOrderId()))
+                .concatMap(sagaStates -> Flux.fromIterable(sagaStates)
+                        .flatMap(sagaState -> resume(sagaState)
+                                .thenReturn(1L)
+                                .onErrorResume(error -> {
+                                    logger.error("Failed to recover saga of order {}", sagaState.getOrderId(), error);
+                                    return Mono.just(0L);
+                                }), parallelism)
+                        .reduce(0L, Long::sum))
+                .reduce(0L, Long::sum)
+                .doOnNext(recovered -> {
+                    if (recovered > 0) {
+                        logger.info("Recovered {} in-flight sagas", recovered);
+                    }
+                });
+    }
+
+    private Mono<List<SagaState>> findInFlight(LocalDateTime updatedBefore, Long afterOrderId) {
+        return sagaStateRepository.findInFlight(IN_FLIGHT_STEPS, updatedBefore, afterOrderId, batchSize).collectList();
+    }
+
+    private Mono<Void> resume(SagaState sagaState) {
+        return Mono.fromCallable(() -> objectMapper.readValue(sagaState.getPayload(), OrderResDto.class))
+                .flatMap(orderResDto -> orchestratorService.resume(
+                        MessageDto.builder().status("ORDER_CREATED").payload(orderResDto).build(),
+                        SagaStep.valueOf(sagaState.getStep())
+                ));
+    }
+
+}
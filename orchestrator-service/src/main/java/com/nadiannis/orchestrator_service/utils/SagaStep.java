@@ -0,0 +1,10 @@
+package com.nadiannis.orchestrator_service.utils;
+
+public enum SagaStep {
+    STARTED,
+    PRODUCTS_DEDUCTED,
+    PAYMENT_REJECTED,
+    PAYMENT_REFUNDING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS saga_states (
+    order_id BIGINT PRIMARY KEY,
+    step VARCHAR(50) NOT NULL,
+    payload TEXT NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+
+-- Recovery only reads the sagas left in a non-terminal step
+CREATE INDEX IF NOT EXISTS saga_states_step_order_id_idx ON saga_states (step, order_id);
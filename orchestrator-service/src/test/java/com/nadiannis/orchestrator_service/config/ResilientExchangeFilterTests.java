@@ -0,0 +1,177 @@
+package com.nadiannis.orchestrator_service.config;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class ResilientExchangeFilterTests {
+
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private RetryRegistry retryRegistry;
+    private AtomicInteger requests;
+
+    @BeforeEach
+    void setUp() {
+        ResilienceConfig resilienceConfig = new ResilienceConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreakerRegistry = resilienceConfig.circuitBreakerRegistry(50, 4, Duration.ofMinutes(1), 1);
+        retryRegistry = resilienceConfig.retryRegistry(3, Duration.ofMillis(10), 2, 0.5, Duration.ofMillis(100));
+        resilienceConfig.circuitBreakerMetrics(circuitBreakerRegistry).bindTo(meterRegistry);
+        resilienceConfig.retryMetrics(retryRegistry).bindTo(meterRegistry);
+        requests = new AtomicInteger();
+    }
+
+    // Mono<ClientResponse> filter(request, next)
+    @Test
+    public void ResilientExchangeFilter_Filter_RetryTransientFailureUntilSuccess() {
+        List<HttpStatus> statuses = List.of(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.BAD_GATEWAY, HttpStatus.CREATED);
+        WebClient webClient = createWebClient("payment-service", false, request -> Mono.just(jsonResponse(statuses.get(requests.getAndIncrement()))));
+
+        StepVerifier.create(post(webClient))
+                .expectNext("{}")
+                .verifyComplete();
+
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+        Assertions.assertThat(meterRegistry.get("resilience4j.retry.calls").tag("name", "payment-service").tag("kind", "successful_with_retry").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void ResilientExchangeFilter_Filter_NotRetryClientError() {
+        WebClient webClient = createWebClient("payment-service", false, request -> {
+            requests.incrementAndGet();
+            return Mono.just(jsonResponse(HttpStatus.BAD_REQUEST));
+        });
+
+        StepVerifier.create(post(webClient))
+                .expectError(WebClientResponseException.BadRequest.class)
+                .verify();
+
+        Assertions.assertThat(requests.get()).isEqualTo(1);
+        Assertions.assertThat(circuitBreakerRegistry.circuitBreaker("payment-service").getMetrics().getNumberOfFailedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void ResilientExchangeFilter_Filter_RetryOnlyConnectFailuresForNonIdempotentCalls() {
+        WebClient unavailableWebClient = createWebClient("product-service", true, request -> {
+            requests.incrementAndGet();
+            return Mono.just(jsonResponse(HttpStatus.SERVICE_UNAVAILABLE));
+        });
+
+        StepVerifier.create(post(unavailableWebClient))
+                .expectError(WebClientResponseException.ServiceUnavailable.class)
+                .verify();
+        Assertions.assertThat(requests.getAndSet(0)).isEqualTo(1);
+
+        WebClient unreachableWebClient = createWebClient("product-service", true, request -> Mono.<ClientResponse>error(
+                new WebClientRequestException(new ConnectException("Connection refused"), request.method(), request.url(), request.headers())
+        ).doOnSubscribe(subscription -> requests.incrementAndGet()));
+
+        StepVerifier.create(post(unreachableWebClient))
+                .expectError(WebClientRequestException.class)
+                .verify();
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void ResilientExchangeFilter_Filter_FailFastWhileCircuitIsOpen() {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("payment-service");
+        WebClient webClient = createWebClient("payment-service", false, request -> {
+            requests.incrementAndGet();
+            return Mono.just(jsonResponse(HttpStatus.SERVICE_UNAVAILABLE));
+        });
+
+        // The fourth failed attempt fills the sliding window and opens the circuit during the second call,
+        // whose next attempt is rejected and not retried
+        post(webClient).onErrorResume(error -> Mono.empty()).block();
+        post(webClient).onErrorResume(error -> Mono.empty()).block();
+        int requestsBeforeOpen = requests.get();
+        Assertions.assertThat(requestsBeforeOpen).isEqualTo(4);
+
+        StepVerifier.create(post(webClient))
+                .expectError(CallNotPermittedException.class)
+                .verify();
+
+        Assertions.assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(requests.get()).isEqualTo(requestsBeforeOpen);
+        Assertions.assertThat(meterRegistry.get("resilience4j.circuitbreaker.state").tag("name", "payment-service").tag("state", "open").gauge().value()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("resilience4j.circuitbreaker.not.permitted.calls").tag("name", "payment-service").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void ResilientExchangeFilter_Filter_RetryResponseTimeout() {
+        AtomicInteger serverRequests = new AtomicInteger();
+        DisposableServer server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    serverRequests.incrementAndGet();
+                    return Mono.delay(Duration.ofSeconds(1)).then(response.sendString(Mono.just("{}")).then());
+                })
+                .bindNow();
+        try {
+            WebClient webClient = WebClient.builder()
+                    .baseUrl("http://localhost:" + server.port())
+                    .clientConnector(new ReactorClientHttpConnector(WebClientConfig.httpClient(ConnectionProvider.newConnection(), Duration.ofSeconds(1), Duration.ofMillis(100), false, false)))
+                    .filter(new ResilientExchangeFilter(circuitBreakerRegistry.circuitBreaker("payment-service"), retryRegistry.retry("payment-service")))
+                    .build();
+
+            StepVerifier.create(post(webClient))
+                    .expectError(WebClientRequestException.class)
+                    .verify(Duration.ofSeconds(5));
+
+            Assertions.assertThat(serverRequests.get()).isEqualTo(3);
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    private WebClient createWebClient(String service, boolean connectFailuresOnly, Function<ClientRequest, Mono<ClientResponse>> handler) {
+        return WebClient.builder()
+                .baseUrl("http://" + service)
+                .exchangeFunction(request -> handler.apply(request))
+                .filter(new ResilientExchangeFilter(
+                        circuitBreakerRegistry.circuitBreaker(service),
+                        connectFailuresOnly
+                                ? retryRegistry.retry(service, ResilienceConfig.CONNECT_FAILURES_RETRY_CONFIG)
+                                : retryRegistry.retry(service)
+                ))
+                .build();
+    }
+
+    private Mono<String> post(WebClient webClient) {
+        return webClient.post().uri("/api/v1/transactions").bodyValue("{}").retrieve().bodyToMono(String.class);
+    }
+
+    private ClientResponse jsonResponse(HttpStatus status) {
+        return ClientResponse.create(status)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body("{}")
+                .build();
+    }
+
+}
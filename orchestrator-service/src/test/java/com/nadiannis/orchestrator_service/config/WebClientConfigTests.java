@@ -0,0 +1,173 @@
+package com.nadiannis.orchestrator_service.config;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Runs the orchestrator HTTP client against a stub service that answers after a fixed latency
+public class WebClientConfigTests {
+
+    private static final Duration STUB_LATENCY = Duration.ofMillis(10);
+    private static final int REQUESTS = 4000;
+    private static final int MAX_IN_FLIGHT_SAGAS = 256;
+    private static final String BODY = "{\"status\":\"success\",\"data\":\"" + "x".repeat(2048) + "\"}";
+
+    private SimpleMeterRegistry meterRegistry;
+    private DisposableServer server;
+    private List<String> http2StreamIds;
+    private List<String> acceptEncodings;
+
+    @BeforeEach
+    void setUp() {
+        // Reactor Netty publishes pool metrics to the global registry, which Spring Boot backs with its own registry
+        meterRegistry = new SimpleMeterRegistry();
+        Metrics.addRegistry(meterRegistry);
+        http2StreamIds = new CopyOnWriteArrayList<>();
+        acceptEncodings = new CopyOnWriteArrayList<>();
+        server = HttpServer.create()
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                // An upgrade request that carries a body is only accepted up to this size
+                .httpRequestDecoder(spec -> spec.h2cMaxContentLength(8192))
+                .compress(true)
+                .handle((request, response) -> {
+                    // HTTP/2 streams reach the handler converted to HTTP/1.1 requests tagged with their stream id
+                    http2StreamIds.add(String.valueOf(request.requestHeaders().get("x-http2-stream-id")));
+                    acceptEncodings.add(String.valueOf(request.requestHeaders().get(HttpHeaderNames.ACCEPT_ENCODING)));
+                    return Mono.delay(STUB_LATENCY)
+                            .then(response.header(HttpHeaderNames.CONTENT_TYPE, "application/json").sendString(Mono.just(BODY)).then());
+                })
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    // ConnectionProvider connectionProvider(name, maxConnections, pendingAcquireMaxCount, pendingAcquireTimeout, maxIdleTime, maxLifeTime)
+    // Prints the throughput of both pools for a -Pbenchmark run, and asserts only that the tuned pool is instrumented
+    @Test
+    @Tag("benchmark")
+    public void WebClientConfig_ConnectionProvider_ServeMoreSagasThanDefaultPool() {
+        // The Reactor Netty default sizing, with an unbounded queue so that no request fails and only throughput differs
+        ConnectionProvider defaultConnectionProvider = ConnectionProvider.builder("default-pool")
+                .maxConnections(ConnectionProvider.DEFAULT_POOL_MAX_CONNECTIONS)
+                .pendingAcquireMaxCount(REQUESTS)
+                .metrics(true)
+                .build();
+        ConnectionProvider tunedConnectionProvider = WebClientConfig.connectionProvider(
+                "tuned-pool", MAX_IN_FLIGHT_SAGAS, 1024, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5)
+        );
+
+        try {
+            double defaultThroughput = runRequests(createWebClient(defaultConnectionProvider, false, false));
+            double tunedThroughput = runRequests(createWebClient(tunedConnectionProvider, false, false));
+            double defaultPendingAcquireMillis = meanPendingAcquireMillis("default-pool");
+            double tunedPendingAcquireMillis = meanPendingAcquireMillis("tuned-pool");
+
+            System.out.printf("default pool (%d connections): %.0f requests/s, mean pending acquire %.2f ms%n",
+                    ConnectionProvider.DEFAULT_POOL_MAX_CONNECTIONS, defaultThroughput, defaultPendingAcquireMillis);
+            System.out.printf("tuned pool (%d connections): %.0f requests/s, mean pending acquire %.2f ms%n",
+                    MAX_IN_FLIGHT_SAGAS, tunedThroughput, tunedPendingAcquireMillis);
+
+            Assertions.assertThat(meterRegistry.find("reactor.netty.connection.provider.total.connections").tag("name", "tuned-pool").gauge()).isNotNull();
+            Assertions.assertThat(meterRegistry.find("reactor.netty.connection.provider.active.connections").tag("name", "tuned-pool").gauge()).isNotNull();
+            Assertions.assertThat(meterRegistry.find("reactor.netty.connection.provider.pending.connections").tag("name", "tuned-pool").gauge()).isNotNull();
+        } finally {
+            defaultConnectionProvider.disposeLater().block();
+            tunedConnectionProvider.disposeLater().block();
+        }
+    }
+
+    @Test
+    public void WebClientConfig_ConnectionProvider_FailFastWhenPendingAcquireLimitIsReached() {
+        ConnectionProvider connectionProvider = WebClientConfig.connectionProvider(
+                "saturated-pool", 1, 1, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5)
+        );
+        WebClient webClient = createWebClient(connectionProvider, false, false);
+
+        try {
+            Mono<List<String>> responsesMono = Flux.range(0, 3)
+                    .flatMap(i -> webClient.get().uri("/").retrieve().bodyToMono(String.class))
+                    .collectList();
+
+            StepVerifier.create(responsesMono)
+                    .expectErrorSatisfies(error -> Assertions.assertThat(error).rootCause().hasMessage("Pending acquire queue has reached its maximum size of 1"))
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            connectionProvider.disposeLater().block();
+        }
+    }
+
+    // HttpClient httpClient(connectionProvider, connectTimeout, responseTimeout, h2c, compress)
+    @Test
+    public void WebClientConfig_HttpClient_UpgradeToH2cAndAcceptCompressedResponses() {
+        ConnectionProvider connectionProvider = WebClientConfig.connectionProvider(
+                "h2c-pool", 8, 16, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5)
+        );
+        WebClient webClient = createWebClient(connectionProvider, true, true);
+
+        try {
+            // The first request carries the upgrade, the next one reuses the upgraded connection
+            Mono<List<String>> responsesMono = Flux.range(0, 2)
+                    .concatMap(i -> webClient.post().uri("/").bodyValue("{}").retrieve().bodyToMono(String.class))
+                    .collectList();
+
+            StepVerifier.create(responsesMono)
+                    .expectNext(List.of(BODY, BODY))
+                    .verifyComplete();
+
+            Assertions.assertThat(http2StreamIds).containsExactly("1", "3");
+            Assertions.assertThat(acceptEncodings.get(0)).contains("gzip");
+        } finally {
+            connectionProvider.disposeLater().block();
+        }
+    }
+
+    private WebClient createWebClient(ConnectionProvider connectionProvider, boolean h2c, boolean compress) {
+        return WebClient.builder()
+                .baseUrl("http://localhost:" + server.port())
+                .clientConnector(new ReactorClientHttpConnector(
+                        WebClientConfig.httpClient(connectionProvider, Duration.ofSeconds(1), Duration.ofSeconds(10), h2c, compress)
+                ))
+                .build();
+    }
+
+    // Sends the requests with as many in flight as the orchestrator runs sagas, and returns requests per second
+    private double runRequests(WebClient webClient) {
+        long start = System.nanoTime();
+        Flux.range(0, REQUESTS)
+                .flatMap(i -> webClient.get().uri("/").retrieve().bodyToMono(String.class), MAX_IN_FLIGHT_SAGAS)
+                .blockLast(Duration.ofMinutes(1));
+        return REQUESTS / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private double meanPendingAcquireMillis(String name) {
+        Timer timer = meterRegistry.find("reactor.netty.connection.provider.pending.connections.time").tag("name", name).tag("status", "SUCCESS").timer();
+        Assertions.assertThat(timer).isNotNull();
+        return timer.mean(TimeUnit.MILLISECONDS);
+    }
+
+}
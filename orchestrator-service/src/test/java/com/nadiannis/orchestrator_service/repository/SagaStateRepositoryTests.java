@@ -0,0 +1,86 @@
+package com.nadiannis.orchestrator_service.repository;
+
+import com.nadiannis.orchestrator_service.entity.SagaState;
+import com.nadiannis.orchestrator_service.utils.SagaStep;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@DataR2dbcTest
+public class SagaStateRepositoryTests {
+
+    private static final List<String> IN_FLIGHT_STEPS = List.of(SagaStep.STARTED.toString(), SagaStep.PRODUCTS_DEDUCTED.toString());
+
+    @Autowired
+    private SagaStateRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll().block();
+    }
+
+    // Mono<Integer> start(orderId, step, payload, updatedAt)
+    @Test
+    public void SagaStateRepository_Start_ReplaceExistingSaga() {
+        Mono<SagaState> sagaStateMono = repository.start(1L, SagaStep.STARTED.toString(), "{\"id\":1}", LocalDateTime.now())
+                .then(repository.updateStep(1L, SagaStep.PRODUCTS_DEDUCTED.toString(), LocalDateTime.now()))
+                .then(repository.start(1L, SagaStep.STARTED.toString(), "{\"id\":1}", LocalDateTime.now()))
+                .then(repository.findById(1L));
+
+        StepVerifier.create(sagaStateMono)
+                .assertNext(sagaState -> {
+                    Assertions.assertThat(sagaState.getStep()).isEqualTo(SagaStep.STARTED.toString());
+                    Assertions.assertThat(sagaState.getPayload()).isEqualTo("{\"id\":1}");
+                })
+                .verifyComplete();
+    }
+
+    // Mono<Integer> updateStep(orderId, step, updatedAt)
+    @Test
+    public void SagaStateRepository_UpdateStep_ReturnZeroWhenSagaDoesNotExist() {
+        StepVerifier.create(repository.updateStep(1L, SagaStep.COMPLETED.toString(), LocalDateTime.now()))
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    // Flux<SagaState> findInFlight(steps, updatedBefore, afterOrderId, limit)
+    @Test
+    public void SagaStateRepository_FindInFlight_ReturnNextPageOfInFlightSagas() {
+        Flux.range(1, 6)
+                .concatMap(orderId -> repository.start((long) orderId, SagaStep.STARTED.toString(), "{}", LocalDateTime.now()))
+                .then(repository.updateStep(2L, SagaStep.COMPLETED.toString(), LocalDateTime.now()))
+                .then(repository.updateStep(3L, SagaStep.PRODUCTS_DEDUCTED.toString(), LocalDateTime.now()))
+                .then(repository.updateStep(4L, SagaStep.FAILED.toString(), LocalDateTime.now()))
+                .block();
+
+        Mono<List<Long>> orderIdListMono = repository.findInFlight(IN_FLIGHT_STEPS, LocalDateTime.now().plusMinutes(1), 1L, 2)
+                .map(SagaState::getOrderId)
+                .collect(Collectors.toList());
+
+        StepVerifier.create(orderIdListMono)
+                .expectNext(List.of(3L, 5L))
+                .verifyComplete();
+    }
+
+    @Test
+    public void SagaStateRepository_FindInFlight_SkipSagasUpdatedSinceCutoff() {
+        LocalDateTime cutoff = LocalDateTime.now();
+        repository.start(1L, SagaStep.STARTED.toString(), "{}", cutoff.minusMinutes(5))
+                .then(repository.start(2L, SagaStep.STARTED.toString(), "{}", cutoff.plusSeconds(1)))
+                .block();
+
+        StepVerifier.create(repository.findInFlight(IN_FLIGHT_STEPS, cutoff, 0L, 10).map(SagaState::getOrderId))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+}
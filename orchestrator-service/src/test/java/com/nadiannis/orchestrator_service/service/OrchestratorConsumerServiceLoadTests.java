@@ -0,0 +1,118 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.orchestrator_service.config.KafkaReceiverConfig;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Bursts 50k messages through a real (embedded) broker and checks the saga concurrency and the committed offsets
+public class OrchestratorConsumerServiceLoadTests {
+
+    private static final int MESSAGES = 50000;
+    private static final int PARTITIONS = 4;
+    private static final int MAX_IN_FLIGHT_SAGAS = 64;
+
+    private static EmbeddedKafkaKraftBroker broker;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaKraftBroker(1, PARTITIONS, "orchestrator");
+        broker.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    public void OrchestratorConsumerService_Consume_BoundInFlightSagasAndCommitAfterTerminalStep() throws Exception {
+        produceBurst();
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        OrchestratorService orchestratorService = mock(OrchestratorService.class);
+        when(orchestratorService.processOrderCreated(any(MessageDto.class))).thenAnswer(invocation -> Mono.defer(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return Mono.delay(Duration.ofMillis(1)).then();
+        }).doOnTerminate(() -> {
+            inFlight.decrementAndGet();
+            completed.incrementAndGet();
+        }));
+
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+        kafkaProperties.getConsumer().setGroupId("phincommerce-load-test");
+        kafkaProperties.getConsumer().setAutoOffsetReset("earliest");
+        OrchestratorConsumerService consumerService = new OrchestratorConsumerService(
+                new KafkaReceiverConfig().orchestratorTopicReceiver(kafkaProperties, MAX_IN_FLIGHT_SAGAS),
+                orchestratorService,
+                mock(SagaRecoveryService.class),
+                MAX_IN_FLIGHT_SAGAS,
+                Duration.ofSeconds(1),
+                Duration.ofMinutes(1)
+        );
+
+        long start = System.nanoTime();
+        consumerService.consume().take(MESSAGES).blockLast(Duration.ofMinutes(2));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long committed = committedOffsets();
+        System.out.printf("Consumed %d messages in %d ms, max in-flight sagas %d, committed offsets %d%n", MESSAGES, elapsedMillis, maxInFlight.get(), committed);
+
+        Assertions.assertThat(completed.get()).isEqualTo(MESSAGES / 2);
+        Assertions.assertThat(maxInFlight.get()).isLessThanOrEqualTo(MAX_IN_FLIGHT_SAGAS);
+        Assertions.assertThat(committed).isEqualTo(MESSAGES);
+    }
+
+    private void produceBurst() throws Exception {
+        Map<String, Object> producerProperties = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.LINGER_MS_CONFIG, 5
+        );
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(producerProperties)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                // Every other message is not a saga start, so it is acknowledged straight away
+                String status = i % 2 == 0 ? "ORDER_CREATED" : "PAYMENT_APPROVED";
+                producer.send(new ProducerRecord<>("orchestrator", Integer.toString(i), "{\"status\":\"" + status + "\",\"payload\":{\"id\":" + i + "}}"));
+            }
+            producer.flush();
+        }
+    }
+
+    private long committedOffsets() throws Exception {
+        try (AdminClient adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            return adminClient.listConsumerGroupOffsets("phincommerce-load-test")
+                    .partitionsToOffsetAndMetadata()
+                    .get()
+                    .values()
+                    .stream()
+                    .mapToLong(OffsetAndMetadata::offset)
+                    .sum();
+        }
+    }
+
+}
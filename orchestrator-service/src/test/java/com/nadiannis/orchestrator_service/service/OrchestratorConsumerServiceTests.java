@@ -0,0 +1,112 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverRecord;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+public class OrchestratorConsumerServiceTests {
+
+    private static final int ORDERS = 8;
+    private static final int MESSAGES_PER_ORDER = 5;
+
+    @Test
+    public void OrchestratorConsumerService_Consume_KeepOrderPerKeyAndRunKeysConcurrently() {
+        List<ReceiverOffset> offsets = new CopyOnWriteArrayList<>();
+        List<ReceiverRecord<String, MessageDto>> records = IntStream.range(0, ORDERS * MESSAGES_PER_ORDER)
+                .mapToObj(i -> {
+                    ReceiverOffset offset = mock(ReceiverOffset.class);
+                    offsets.add(offset);
+                    long orderId = i % ORDERS;
+                    MessageDto value = MessageDto.builder()
+                            .status("ORDER_CREATED")
+                            .payload(OrderResDto.builder().id(orderId).totalAmount((double) i).build())
+                            .build();
+                    return new ReceiverRecord<>(new ConsumerRecord<>("orchestrator", 0, i, Long.toString(orderId), value), offset);
+                })
+                .collect(Collectors.toList());
+        KafkaReceiver<String, MessageDto> receiver = mock(KafkaReceiver.class);
+        when(receiver.receive()).thenReturn(Flux.fromIterable(records));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger maxInFlightPerOrder = new AtomicInteger();
+        Map<Long, AtomicInteger> inFlightPerOrder = new ConcurrentHashMap<>();
+        Map<Long, List<Double>> processedPerOrder = new ConcurrentHashMap<>();
+        OrchestratorService orchestratorService = mock(OrchestratorService.class);
+        when(orchestratorService.processOrderCreated(any(MessageDto.class))).thenAnswer(invocation -> {
+            MessageDto messageDto = invocation.getArgument(0);
+            Long orderId = messageDto.getPayload().getId();
+            return Mono.defer(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                maxInFlightPerOrder.accumulateAndGet(inFlightPerOrder.computeIfAbsent(orderId, id -> new AtomicInteger()).incrementAndGet(), Math::max);
+                processedPerOrder.computeIfAbsent(orderId, id -> new CopyOnWriteArrayList<>()).add(messageDto.getPayload().getTotalAmount());
+                return Mono.delay(Duration.ofMillis(5)).then();
+            }).doOnTerminate(() -> {
+                inFlightPerOrder.get(orderId).decrementAndGet();
+                inFlight.decrementAndGet();
+            });
+        });
+
+        OrchestratorConsumerService consumerService = new OrchestratorConsumerService(receiver, orchestratorService, mock(SagaRecoveryService.class), 16, Duration.ofMillis(1), Duration.ofMillis(10));
+        consumerService.consume().blockLast(Duration.ofSeconds(10));
+
+        processedPerOrder.forEach((orderId, totalAmounts) -> Assertions.assertThat(totalAmounts).isSorted().hasSize(MESSAGES_PER_ORDER));
+        Assertions.assertThat(maxInFlightPerOrder.get()).isEqualTo(1);
+        Assertions.assertThat(maxInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(16);
+        offsets.forEach(offset -> verify(offset, times(1)).acknowledge());
+    }
+
+    @Test
+    public void OrchestratorConsumerService_Consume_AcknowledgeRecordThatCouldNotBeDeserialized() {
+        ReceiverOffset offset = mock(ReceiverOffset.class);
+        KafkaReceiver<String, MessageDto> receiver = mock(KafkaReceiver.class);
+        when(receiver.receive()).thenReturn(Flux.just(new ReceiverRecord<>(new ConsumerRecord<String, MessageDto>("orchestrator", 0, 0, "1", null), offset)));
+        OrchestratorService orchestratorService = mock(OrchestratorService.class);
+
+        OrchestratorConsumerService consumerService = new OrchestratorConsumerService(receiver, orchestratorService, mock(SagaRecoveryService.class), 16, Duration.ofMillis(1), Duration.ofMillis(10));
+        consumerService.consume().blockLast(Duration.ofSeconds(10));
+
+        verify(offset, times(1)).acknowledge();
+        verifyNoInteractions(orchestratorService);
+    }
+
+    // Flux<ReceiverRecord<String, MessageDto>> consumeWithRestart()
+    @Test
+    public void OrchestratorConsumerService_ConsumeWithRestart_ReceiveAgainAfterReceiverFailed() {
+        ReceiverOffset offset = mock(ReceiverOffset.class);
+        MessageDto value = MessageDto.builder().status("ORDER_CREATED").payload(OrderResDto.builder().id(1L).build()).build();
+        KafkaReceiver<String, MessageDto> receiver = mock(KafkaReceiver.class);
+        when(receiver.receive())
+                .thenReturn(Flux.error(new IllegalStateException("broker unreachable")))
+                .thenReturn(Flux.just(new ReceiverRecord<>(new ConsumerRecord<>("orchestrator", 0, 0, "1", value), offset)));
+        OrchestratorService orchestratorService = mock(OrchestratorService.class);
+        when(orchestratorService.processOrderCreated(any(MessageDto.class))).thenReturn(Mono.empty());
+
+        OrchestratorConsumerService consumerService = new OrchestratorConsumerService(receiver, orchestratorService, mock(SagaRecoveryService.class), 16, Duration.ofMillis(1), Duration.ofMillis(10));
+        consumerService.consumeWithRestart().take(1).blockLast(Duration.ofSeconds(10));
+
+        verify(receiver, times(2)).receive();
+        verify(offset, times(1)).acknowledge();
+    }
+
+}
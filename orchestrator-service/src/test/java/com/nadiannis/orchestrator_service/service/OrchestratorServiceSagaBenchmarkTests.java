@@ -0,0 +1,196 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.utils.Mode;
+import com.nadiannis.orchestrator_service.repository.SagaStateRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Compares the saga against the former availability pre-check flow, with stubbed product and payment services. The
+// latencies are printed for a -Pbenchmark run, only the request counts are asserted.
+public class OrchestratorServiceSagaBenchmarkTests {
+
+    private static final Duration STUB_LATENCY = Duration.ofMillis(5);
+    private static final int ORDER_ITEMS = 30;
+    private static final int ORDERS = 100;
+
+    private AtomicInteger productRequests;
+    private AtomicInteger paymentRequests;
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    private WebClient webClientProduct;
+    private OrchestratorService orchestratorService;
+    private boolean productDeductionFails;
+    private boolean productServiceUnavailable;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        productRequests = new AtomicInteger();
+        paymentRequests = new AtomicInteger();
+        productDeductionFails = false;
+        productServiceUnavailable = false;
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        webClientProduct = stubWebClient("http://product-service", request -> {
+            productRequests.incrementAndGet();
+            if (productServiceUnavailable) {
+                return jsonResponse(HttpStatus.SERVICE_UNAVAILABLE, "{\"status\":\"error\",\"message\":\"service unavailable\"}");
+            }
+            if (request.url().getPath().equals("/api/v1/reservations") && productDeductionFails) {
+                return jsonResponse(HttpStatus.BAD_REQUEST, "{\"status\":\"error\",\"message\":\"insufficient product quantity\"}");
+            }
+            if (request.method() == HttpMethod.GET) {
+                return jsonResponse(HttpStatus.OK, "{\"status\":\"success\",\"data\":{\"id\":1,\"stock_quantity\":1000}}");
+            }
+            return jsonResponse(HttpStatus.OK, "{\"status\":\"success\",\"data\":[]}");
+        });
+        WebClient webClientPayment = stubWebClient("http://payment-service", request -> {
+            paymentRequests.incrementAndGet();
+            return jsonResponse(HttpStatus.CREATED, "{\"status\":\"success\",\"data\":{\"id\":1,\"status\":\"APPROVED\"}}");
+        });
+
+        SagaStateRepository sagaStateRepository = mock(SagaStateRepository.class);
+        when(sagaStateRepository.findById(any(Long.class))).thenReturn(Mono.empty());
+        when(sagaStateRepository.start(any(), any(), any(), any())).thenReturn(Mono.just(1));
+        when(sagaStateRepository.updateStep(any(), any(), any())).thenReturn(Mono.just(1));
+
+        orchestratorService = new OrchestratorService(webClientProduct, webClientPayment, kafkaTemplate, sagaStateRepository, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void OrchestratorService_ProcessOrderCreated_UseOneReservationAndOneConfirmationCallPerOrder() {
+        long[] baselineLatencies = runSagas(order -> checkProductAvailability(order).then(orchestratorService.processOrderCreated(order)));
+        int baselineProductRequests = productRequests.getAndSet(0);
+        paymentRequests.set(0);
+
+        long[] sagaLatencies = runSagas(order -> orchestratorService.processOrderCreated(order));
+        int sagaProductRequests = productRequests.get();
+
+        System.out.printf("pre-check + reservation: %d product requests, mean %.2f ms, p99 %.2f ms%n",
+                baselineProductRequests, mean(baselineLatencies), percentile(baselineLatencies, 0.99));
+        System.out.printf("reservation only: %d product requests, mean %.2f ms, p99 %.2f ms%n",
+                sagaProductRequests, mean(sagaLatencies), percentile(sagaLatencies, 0.99));
+
+        Assertions.assertThat(baselineProductRequests).isEqualTo(ORDERS * (ORDER_ITEMS + 2));
+        Assertions.assertThat(sagaProductRequests).isEqualTo(ORDERS * 2);
+        Assertions.assertThat(paymentRequests.get()).isEqualTo(ORDERS);
+        verify(kafkaTemplate, times(ORDERS * 2)).send(eq("order"), anyString(), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_APPROVED")));
+    }
+
+    @Test
+    public void OrchestratorService_ProcessOrderCreated_SendProductDeductFailedWhenStockIsInsufficient() {
+        productDeductionFails = true;
+
+        orchestratorService.processOrderCreated(createOrderMessage(1L)).block();
+
+        Assertions.assertThat(productRequests.get()).isEqualTo(1);
+        Assertions.assertThat(paymentRequests.get()).isEqualTo(0);
+        verify(kafkaTemplate, times(1)).send(eq("order"), eq("1"), argThat(message -> ((MessageDto) message).getStatus().equals("PRODUCT_DEDUCT_FAILED")));
+        verify(kafkaTemplate, times(1)).send(any(String.class), any(String.class), any());
+    }
+
+    @Test
+    public void OrchestratorService_ProcessOrderCreated_FailStepWithoutOrderMessageWhenProductServiceIsUnavailable() {
+        productServiceUnavailable = true;
+
+        Assertions.assertThatThrownBy(() -> orchestratorService.processOrderCreated(createOrderMessage(1L)).block())
+                .isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+
+        Assertions.assertThat(paymentRequests.get()).isEqualTo(0);
+        verify(kafkaTemplate, never()).send(any(String.class), any(String.class), any());
+    }
+
+    private long[] runSagas(Function<MessageDto, Mono<Void>> saga) {
+        long[] latencies = new long[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            MessageDto messageDto = createOrderMessage((long) i + 1);
+            long start = System.nanoTime();
+            saga.apply(messageDto).block();
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    // The per-item GET the saga used to make before deducting
+    private Mono<Void> checkProductAvailability(MessageDto messageDto) {
+        return Flux.fromIterable(messageDto.getPayload().getOrderItems())
+                .flatMap(orderItem -> webClientProduct.get()
+                        .uri("/api/v1/products/{id}", orderItem.getProductId())
+                        .retrieve()
+                        .bodyToMono(String.class))
+                .then();
+    }
+
+    private MessageDto createOrderMessage(Long orderId) {
+        List<OrderItemResDto> orderItems = IntStream.rangeClosed(1, ORDER_ITEMS)
+                .mapToObj(i -> OrderItemResDto.builder().id((long) i).orderId(orderId).productId((long) i).price(1000.0).quantity(1).build())
+                .collect(Collectors.toCollection(ArrayList::new));
+        OrderResDto orderResDto = OrderResDto.builder()
+                .id(orderId)
+                .customerId(1L)
+                .paymentMethod(Mode.CASH.toString())
+                .totalAmount(1000.0 * ORDER_ITEMS)
+                .orderItems(orderItems)
+                .build();
+        return MessageDto.builder().status("ORDER_CREATED").payload(orderResDto).build();
+    }
+
+    private WebClient stubWebClient(String baseUrl, Function<ClientRequest, ClientResponse> handler) {
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .exchangeFunction(request -> Mono.delay(STUB_LATENCY).map(tick -> handler.apply(request)))
+                .build();
+    }
+
+    private ClientResponse jsonResponse(HttpStatus status, String body) {
+        return ClientResponse.create(status)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build();
+    }
+
+    private double mean(long[] latencies) {
+        return Arrays.stream(latencies).average().orElse(0) / 1_000_000.0;
+    }
+
+    private double percentile(long[] latencies, double percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.nadiannis.orchestrator_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.utils.Mode;
+import com.nadiannis.orchestrator_service.entity.SagaState;
+import com.nadiannis.orchestrator_service.repository.SagaStateRepository;
+import com.nadiannis.orchestrator_service.utils.SagaStep;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DataR2dbcTest
+public class SagaRecoveryServiceTests {
+
+    private static final List<String> IN_FLIGHT_STEPS = List.of(
+            SagaStep.STARTED.toString(),
+            SagaStep.PRODUCTS_DEDUCTED.toString(),
+            SagaStep.PAYMENT_REJECTED.toString(),
+            SagaStep.PAYMENT_REFUNDING.toString()
+    );
+
+    @Autowired
+    private SagaStateRepository sagaStateRepository;
+
+    private ObjectMapper objectMapper;
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    private OrchestratorService orchestratorService;
+    private AtomicInteger productRequests;
+    private AtomicInteger paymentRequests;
+    private AtomicInteger paymentsInFlight;
+    private AtomicInteger maxPaymentsInFlight;
+    private AtomicBoolean paymentServiceDown;
+    private AtomicBoolean confirmRejected;
+    private AtomicInteger refundRequests;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        productRequests = new AtomicInteger();
+        paymentRequests = new AtomicInteger();
+        paymentsInFlight = new AtomicInteger();
+        maxPaymentsInFlight = new AtomicInteger();
+        paymentServiceDown = new AtomicBoolean();
+        confirmRejected = new AtomicBoolean();
+        refundRequests = new AtomicInteger();
+
+        WebClient webClientProduct = stubWebClient(request -> {
+            productRequests.incrementAndGet();
+            if (confirmRejected.get() && request.url().getPath().endsWith("/confirm")) {
+                return Mono.just(jsonResponse(HttpStatus.BAD_REQUEST, "{\"status\":\"error\"}"));
+            }
+            return Mono.just(jsonResponse(HttpStatus.OK, "{\"status\":\"success\",\"data\":[]}"));
+        });
+        WebClient webClientPayment = stubWebClient(request -> Mono.defer(() -> {
+            if (request.url().getPath().endsWith("/refund")) {
+                refundRequests.incrementAndGet();
+                return Mono.just(jsonResponse(HttpStatus.OK, "{\"status\":\"success\",\"data\":{\"id\":1,\"status\":\"REFUNDED\"}}"));
+            }
+            paymentRequests.incrementAndGet();
+            maxPaymentsInFlight.accumulateAndGet(paymentsInFlight.incrementAndGet(), Math::max);
+            if (paymentServiceDown.get()) {
+                return Mono.just(jsonResponse(HttpStatus.SERVICE_UNAVAILABLE, "{\"status\":\"error\"}"));
+            }
+            return Mono.delay(Duration.ofMillis(5)).thenReturn(jsonResponse(HttpStatus.CREATED, "{\"status\":\"success\",\"data\":{\"id\":1,\"status\":\"APPROVED\"}}"));
+        }).doOnTerminate(paymentsInFlight::decrementAndGet));
+
+        orchestratorService = new OrchestratorService(webClientProduct, webClientPayment, kafkaTemplate, sagaStateRepository, objectMapper);
+        sagaStateRepository.deleteAll().block();
+    }
+
+    // Mono<Long> recover()
+    @Test
+    public void SagaRecoveryService_Recover_ResumeOrCompensateFromRecordedStep() {
+        saveSagaState(1L, SagaStep.STARTED);
+        saveSagaState(2L, SagaStep.PRODUCTS_DEDUCTED);
+        saveSagaState(3L, SagaStep.PAYMENT_REJECTED);
+        saveSagaState(4L, SagaStep.COMPLETED);
+        saveSagaState(5L, SagaStep.FAILED);
+
+        StepVerifier.create(createSagaRecoveryService(2, 2).recover())
+                .expectNext(3L)
+                .verifyComplete();
+
+        // Order 1 is reserved, paid and confirmed, order 2 only paid and confirmed, order 3 only gets its reservation released
+        Assertions.assertThat(productRequests.get()).isEqualTo(4);
+        Assertions.assertThat(paymentRequests.get()).isEqualTo(2);
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(
+                1L, SagaStep.COMPLETED.toString(),
+                2L, SagaStep.COMPLETED.toString(),
+                3L, SagaStep.FAILED.toString(),
+                4L, SagaStep.COMPLETED.toString(),
+                5L, SagaStep.FAILED.toString()
+        ));
+        verify(kafkaTemplate, times(1)).send(eq("order"), eq("3"), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_REJECTED")));
+        verify(kafkaTemplate, times(2)).send(eq("order"), any(String.class), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_APPROVED")));
+    }
+
+    @Test
+    public void SagaRecoveryService_Recover_FinishSagasInterruptedBeforePayment() {
+        paymentServiceDown.set(true);
+        Flux.range(1, 50)
+                .concatMap(orderId -> orchestratorService.processOrderCreated(createOrderMessage((long) orderId)).onErrorResume(error -> Mono.empty()))
+                .blockLast();
+        Assertions.assertThat(sagaStateRepository.findInFlight(IN_FLIGHT_STEPS, LocalDateTime.now().plusMinutes(1), 0L, 100).count().block()).isEqualTo(50L);
+
+        // Restart with the payment service back
+        paymentServiceDown.set(false);
+        paymentRequests.set(0);
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recover())
+                .expectNext(50L)
+                .verifyComplete();
+
+        Assertions.assertThat(sagaStateRepository.findInFlight(IN_FLIGHT_STEPS, LocalDateTime.now().plusMinutes(1), 0L, 100).count().block()).isEqualTo(0L);
+        // 50 reservations before the restart and 50 confirmations after it
+        Assertions.assertThat(productRequests.get()).isEqualTo(100);
+        Assertions.assertThat(paymentRequests.get()).isEqualTo(50);
+        Assertions.assertThat(maxPaymentsInFlight.get()).isLessThanOrEqualTo(4);
+        verify(kafkaTemplate, times(50)).send(eq("order"), any(String.class), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_APPROVED")));
+    }
+
+    @Test
+    public void SagaRecoveryService_Recover_KeepStepOfSagaThatFailsAgain() {
+        saveSagaState(1L, SagaStep.PRODUCTS_DEDUCTED);
+        paymentServiceDown.set(true);
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recover())
+                .expectNext(0L)
+                .verifyComplete();
+
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(1L, SagaStep.PRODUCTS_DEDUCTED.toString()));
+    }
+
+    @Test
+    public void SagaRecoveryService_Recover_ResendOrderMessageTheBrokerDidNotAcknowledge() {
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.failedFuture(new TimeoutException("broker unavailable")));
+        StepVerifier.create(orchestratorService.processOrderCreated(createOrderMessage(1L)))
+                .expectError(TimeoutException.class)
+                .verify();
+
+        // The payment went through but its order message was never acknowledged, so the saga is not completed
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(1L, SagaStep.PRODUCTS_DEDUCTED.toString()));
+
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recover())
+                .expectNext(1L)
+                .verifyComplete();
+
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(1L, SagaStep.COMPLETED.toString()));
+        verify(kafkaTemplate, times(2)).send(eq("order"), eq("1"), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_APPROVED")));
+    }
+
+    @Test
+    public void SagaRecoveryService_Recover_RefundPaymentWhenReservationsCannotBeConfirmed() {
+        saveSagaState(1L, SagaStep.PRODUCTS_DEDUCTED);
+        saveSagaState(2L, SagaStep.PAYMENT_REFUNDING);
+        confirmRejected.set(true);
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recover())
+                .expectNext(2L)
+                .verifyComplete();
+
+        // Order 1 is charged but its stock is gone, order 2 was cut off while refunding
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(
+                1L, SagaStep.FAILED.toString(),
+                2L, SagaStep.FAILED.toString()
+        ));
+        Assertions.assertThat(refundRequests.get()).isEqualTo(2);
+        verify(kafkaTemplate, times(2)).send(eq("order"), any(String.class), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_REJECTED")));
+        verify(kafkaTemplate, never()).send(eq("order"), any(String.class), argThat(message -> ((MessageDto) message).getStatus().equals("PAYMENT_APPROVED")));
+    }
+
+    // Mono<Long> recoverStale()
+    @Test
+    public void SagaRecoveryService_RecoverStale_LeaveRecentlyUpdatedSagas() {
+        saveSagaState(1L, SagaStep.PRODUCTS_DEDUCTED, LocalDateTime.now().minusMinutes(5));
+        saveSagaState(2L, SagaStep.PRODUCTS_DEDUCTED);
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recoverStale())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // Order 2 recorded its step just now, so the run processing it is left to finish it
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(
+                1L, SagaStep.COMPLETED.toString(),
+                2L, SagaStep.PRODUCTS_DEDUCTED.toString()
+        ));
+    }
+
+    // Flux<Long> recoverPeriodically()
+    @Test
+    public void SagaRecoveryService_RecoverPeriodically_RecoverStaleSagasOnEveryTick() {
+        saveSagaState(1L, SagaStep.PRODUCTS_DEDUCTED, LocalDateTime.now().minusMinutes(5));
+
+        StepVerifier.create(createSagaRecoveryService(10, 4).recoverPeriodically().take(2))
+                .expectNext(1L, 0L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertThat(findSteps()).isEqualTo(Map.of(1L, SagaStep.COMPLETED.toString()));
+    }
+
+    private SagaRecoveryService createSagaRecoveryService(int batchSize, int parallelism) {
+        return new SagaRecoveryService(sagaStateRepository, orchestratorService, objectMapper, batchSize, parallelism, Duration.ofMinutes(1), Duration.ofMillis(50));
+    }
+
+    private void saveSagaState(Long orderId, SagaStep step) {
+        saveSagaState(orderId, step, LocalDateTime.now());
+    }
+
+    private void saveSagaState(Long orderId, SagaStep step, LocalDateTime updatedAt) {
+        try {
+            String payload = objectMapper.writeValueAsString(createOrderMessage(orderId).getPayload());
+            sagaStateRepository.start(orderId, step.toString(), payload, updatedAt).block();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<Long, String> findSteps() {
+        return sagaStateRepository.findAll().collectMap(SagaState::getOrderId, SagaState::getStep).block();
+    }
+
+    private MessageDto createOrderMessage(Long orderId) {
+        OrderResDto orderResDto = OrderResDto.builder()
+                .id(orderId)
+                .customerId(1L)
+                .paymentMethod(Mode.CASH.toString())
+                .totalAmount(1000.0)
+                .orderItems(List.of(OrderItemResDto.builder().id(orderId).orderId(orderId).productId(1L).price(1000.0).quantity(1).build()))
+                .build();
+        return MessageDto.builder().status("ORDER_CREATED").payload(orderResDto).build();
+    }
+
+    private WebClient stubWebClient(Function<ClientRequest, Mono<ClientResponse>> handler) {
+        return WebClient.builder()
+                .baseUrl("http://localhost")
+                .exchangeFunction(handler::apply)
+                .build();
+    }
+
+    private ClientResponse jsonResponse(HttpStatus status, String body) {
+        return ClientResponse.create(status)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build();
+    }
+
+}
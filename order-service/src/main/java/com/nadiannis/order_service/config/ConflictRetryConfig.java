@@ -0,0 +1,22 @@
+package com.nadiannis.order_service.config;
+
+import com.nadiannis.common.retry.ConflictRetry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ConflictRetryConfig {
+
+    @Bean
+    public ConflictRetry orderConflictRetry(
+            @Value("${order.conflict-retry.max-retries:3}") int maxRetries,
+            @Value("${order.conflict-retry.min-backoff:10ms}") Duration minBackoff,
+            @Value("${order.conflict-retry.max-backoff:200ms}") Duration maxBackoff
+    ) {
+        return new ConflictRetry("order", maxRetries, minBackoff, maxBackoff);
+    }
+
+}
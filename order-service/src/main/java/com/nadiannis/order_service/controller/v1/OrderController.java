@@ -1,5 +1,6 @@
 package com.nadiannis.order_service.controller.v1;
 
+import com.nadiannis.order_service.dto.OrderPageResDto;
 import com.nadiannis.order_service.dto.OrderReqDto;
 import com.nadiannis.common.dto.order.OrderResDto;
 import com.nadiannis.order_service.dto.StatusUpdateReqDto;
@@ -12,16 +13,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/v1/orders")
 public class OrderController {
 
+    private static final String RETURN_MINIMAL = "return=minimal";
+
     private OrderService service;
 
     @Autowired
@@ -29,21 +32,37 @@ public class OrderController {
         this.service = service;
     }
 
-    @Operation(summary = "Get all orders", responses = {
+    @Operation(summary = "Get a page of orders", responses = {
             @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
     })
     @GetMapping
-    public Mono<ResponseEntity<?>> getAll() {
-        Mono<List<OrderResDto>> ordersMono = service.getAll().collectList();
-        return ordersMono.map(data -> {
+    public Mono<ResponseEntity<?>> getAll(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "customer_id", required = false) Long customerId,
+            @RequestParam(name = "order_status", required = false) String orderStatus
+    ) {
+        return service.getPage(cursor, limit, customerId, orderStatus).map(data -> {
             String message = "orders retrieved successfully";
 
-            SuccessResponse<List<OrderResDto>> response = new SuccessResponse<>(message, data);
+            SuccessResponse<OrderPageResDto> response = new SuccessResponse<>(message, data);
             return ResponseEntity.ok(response);
         });
     }
 
+    @Operation(summary = "Stream all orders as newline-delimited JSON", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = OrderResDto.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OrderResDto> stream(
+            @RequestParam(name = "customer_id", required = false) Long customerId,
+            @RequestParam(name = "order_status", required = false) String orderStatus
+    ) {
+        return service.stream(customerId, orderStatus);
+    }
+
     @Operation(summary = "Add a new order", responses = {
             @ApiResponse(responseCode = "201", description = "Created", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
@@ -74,17 +93,28 @@ public class OrderController {
         });
     }
 
-    @Operation(summary = "Update status of an order", responses = {
+    @Operation(summary = "Update status of an order", description = "Send Prefer: return=minimal to skip returning the order", responses = {
             @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
             @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
+            @ApiResponse(responseCode = "409", description = "Order already left the CREATED status", content = @Content),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
     })
     @PatchMapping("/{id}/status")
-    public Mono<ResponseEntity<?>> updateStatus(@PathVariable Long id, @Valid @RequestBody StatusUpdateReqDto body) {
-        return service.updateStatus(id, body).map(data -> {
-            String message = "order status updated successfully";
+    public Mono<ResponseEntity<?>> updateStatus(
+            @PathVariable Long id,
+            @Valid @RequestBody StatusUpdateReqDto body,
+            @RequestHeader(name = "Prefer", required = false) String prefer
+    ) {
+        String message = "order status updated successfully";
+
+        if (RETURN_MINIMAL.equalsIgnoreCase(prefer)) {
+            return service
+                    .transitionStatus(id, body)
+                    .then(Mono.fromSupplier(() -> ResponseEntity.ok(new SuccessResponse<>(message))));
+        }
 
+        return service.updateStatus(id, body).map(data -> {
             SuccessResponse<OrderResDto> response = new SuccessResponse<>(message, data);
             return ResponseEntity.ok(response);
         });
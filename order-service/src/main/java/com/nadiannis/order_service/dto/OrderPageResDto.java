@@ -0,0 +1,23 @@
+package com.nadiannis.order_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.nadiannis.common.dto.order.OrderResDto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPageResDto {
+
+    private List<OrderResDto> orders;
+
+    @JsonProperty(value = "next_cursor")
+    private Long nextCursor;
+
+}
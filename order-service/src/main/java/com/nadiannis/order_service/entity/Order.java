@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.LocalDateTime;
@@ -32,6 +33,10 @@ public class Order {
 
     private Long customerId;
 
+    // Bumped by every status change, so saving an order read before one of them fails instead of overwriting it
+    @Version
+    private Long version;
+
     @CreatedDate
     private LocalDateTime orderDate;
 
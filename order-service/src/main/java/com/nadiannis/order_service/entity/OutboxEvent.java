@@ -0,0 +1,32 @@
+package com.nadiannis.order_service.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table(name = "outbox_events")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    private Long id;
+
+    private String topic;
+
+    private String payload;
+
+    @CreatedDate
+    private LocalDateTime createdAt;
+
+    private LocalDateTime sentAt;
+
+}
@@ -1,5 +1,6 @@
 package com.nadiannis.order_service.exception;
 
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
 import com.nadiannis.common.exception.ResourceNotFoundException;
 import com.nadiannis.common.dto.ErrorResponse;
 import org.slf4j.Logger;
@@ -66,6 +67,13 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return Mono.just(new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND));
     }
 
+    @ExceptionHandler(InvalidStatusTransitionException.class)
+    public Mono<ResponseEntity<ErrorResponse<?>>> handleInvalidStatusTransition(InvalidStatusTransitionException ex, ServerWebExchange exchange) {
+        logger.error("InvalidStatusTransitionException", ex);
+        ErrorResponse<String> errorResponse = new ErrorResponse<>(LocalDateTime.now(), ex.getMessage(), exchange.getRequest().getURI().toString());
+        return Mono.just(new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT));
+    }
+
     @ExceptionHandler(Exception.class)
     public Mono<ResponseEntity<ErrorResponse<?>>> handleGlobalException(Exception ex, ServerWebExchange exchange) {
         logger.error("Exception", ex);
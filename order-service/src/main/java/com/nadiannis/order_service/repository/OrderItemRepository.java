@@ -1,13 +1,17 @@
 package com.nadiannis.order_service.repository;
 
 import com.nadiannis.order_service.entity.OrderItem;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 @Repository
-public interface OrderItemRepository extends R2dbcRepository<OrderItem, Long> {
+public interface OrderItemRepository extends R2dbcRepository<OrderItem, Long>, OrderItemRepositoryCustom {
 
     Flux<OrderItem> findByOrderId(Long orderId);
 
+    @Query("SELECT * FROM order_items WHERE order_id = ANY(:orderIds)")
+    Flux<OrderItem> findAllByOrderIdIn(Long[] orderIds);
+
 }
@@ -0,0 +1,13 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.OrderItem;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public interface OrderItemRepositoryCustom {
+
+    // Inserts the items in one batched statement and emits them with their generated ids, in the given order
+    Flux<OrderItem> insertAll(List<OrderItem> orderItems);
+
+}
@@ -0,0 +1,51 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.OrderItem;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public class OrderItemRepositoryCustomImpl implements OrderItemRepositoryCustom {
+
+    private static final String INSERT_ORDER_ITEM_SQL = "INSERT INTO order_items (order_id, product_id, price, quantity) VALUES ($1, $2, $3, $4)";
+
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    public OrderItemRepositoryCustomImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<OrderItem> insertAll(List<OrderItem> orderItems) {
+        if (orderItems.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // Runs on the connection of the surrounding transaction, so the items commit or roll back with their order
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(INSERT_ORDER_ITEM_SQL).returnGeneratedValues("id");
+                    for (int i = 0; i < orderItems.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        OrderItem orderItem = orderItems.get(i);
+                        statement.bind(0, orderItem.getOrderId())
+                                .bind(1, orderItem.getProductId())
+                                .bind(2, orderItem.getPrice())
+                                .bind(3, orderItem.getQuantity());
+                    }
+                    return Flux.from(statement.execute()).concatMap(result -> result.map((row, metadata) -> row.get(0, Long.class)));
+                })
+                .index()
+                .map(generatedId -> {
+                    OrderItem orderItem = orderItems.get(generatedId.getT1().intValue());
+                    orderItem.setId(generatedId.getT2());
+                    return orderItem;
+                });
+    }
+
+}
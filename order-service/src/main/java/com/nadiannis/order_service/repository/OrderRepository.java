@@ -1,10 +1,18 @@
 package com.nadiannis.order_service.repository;
 
 import com.nadiannis.order_service.entity.Order;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
 @Repository
-public interface OrderRepository extends R2dbcRepository<Order, Long> {
+public interface OrderRepository extends R2dbcRepository<Order, Long>, OrderRepositoryCustom {
+
+    // Orders that already left the CREATED status keep it, so late or redelivered saga results cannot overwrite it
+    @Modifying
+    @Query("UPDATE orders SET order_status = :orderStatus, version = version + 1 WHERE id = ANY(:ids) AND order_status = 'CREATED'")
+    Mono<Integer> updateOrderStatuses(Long[] ids, String orderStatus);
 
 }
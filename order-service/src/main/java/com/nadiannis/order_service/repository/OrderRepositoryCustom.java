@@ -0,0 +1,17 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.Order;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface OrderRepositoryCustom {
+
+    // Orders with id greater than afterId (all orders when null), in id order, narrowed by the filters that are not null
+    Flux<Order> findPage(Long afterId, int limit, Long customerId, String orderStatus);
+
+    Flux<Order> findAllByFilters(Long customerId, String orderStatus);
+
+    // Completes empty when the order does not exist or has already left the CREATED status
+    Mono<Order> updateOrderStatus(Long id, String orderStatus);
+
+}
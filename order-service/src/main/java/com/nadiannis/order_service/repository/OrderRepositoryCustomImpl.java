@@ -0,0 +1,88 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
+
+    private static final String UPDATE_ORDER_STATUS_SQL = "UPDATE orders SET order_status = :orderStatus, version = version + 1 WHERE id = :id AND order_status = 'CREATED'";
+
+    private R2dbcEntityTemplate template;
+
+    private DatabaseClient databaseClient;
+
+    private R2dbcConverter converter;
+
+    private boolean returningSupported;
+
+    @Autowired
+    public OrderRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+        this.databaseClient = template.getDatabaseClient();
+        this.converter = template.getConverter();
+        this.returningSupported = "PostgreSQL".equalsIgnoreCase(databaseClient.getConnectionFactory().getMetadata().getName());
+    }
+
+    @Override
+    public Flux<Order> findPage(Long afterId, int limit, Long customerId, String orderStatus) {
+        Criteria criteria = filters(customerId, orderStatus);
+        if (afterId != null) {
+            criteria = criteria.and(where("id").greaterThan(afterId));
+        }
+
+        return template
+                .select(Order.class)
+                .matching(query(criteria).sort(Sort.by("id")).limit(limit))
+                .all();
+    }
+
+    @Override
+    public Flux<Order> findAllByFilters(Long customerId, String orderStatus) {
+        return template
+                .select(Order.class)
+                .matching(query(filters(customerId, orderStatus)).sort(Sort.by("id")))
+                .all();
+    }
+
+    @Override
+    public Mono<Order> updateOrderStatus(Long id, String orderStatus) {
+        if (returningSupported) {
+            return databaseClient.sql(UPDATE_ORDER_STATUS_SQL + " RETURNING *")
+                    .bind("id", id)
+                    .bind("orderStatus", orderStatus)
+                    .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                    .one();
+        }
+
+        // Databases without UPDATE ... RETURNING (H2) keep the guarded UPDATE and read the row back afterwards
+        return databaseClient.sql(UPDATE_ORDER_STATUS_SQL)
+                .bind("id", id)
+                .bind("orderStatus", orderStatus)
+                .fetch()
+                .rowsUpdated()
+                .filter(rowsUpdated -> rowsUpdated > 0)
+                .flatMap(rowsUpdated -> template.selectOne(query(where("id").is(id)), Order.class));
+    }
+
+    private Criteria filters(Long customerId, String orderStatus) {
+        Criteria criteria = Criteria.empty();
+        if (customerId != null) {
+            criteria = criteria.and(where("customerId").is(customerId));
+        }
+        if (orderStatus != null) {
+            criteria = criteria.and(where("orderStatus").is(orderStatus));
+        }
+        return criteria;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.OutboxEvent;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface OutboxEventRepository extends R2dbcRepository<OutboxEvent, Long> {
+
+    // Locks the rows it returns until the transaction ends and passes over rows another relay holds, so concurrent
+    // relays never send the same event twice
+    @Query("SELECT * FROM outbox_events WHERE sent_at IS NULL ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED")
+    Flux<OutboxEvent> findUnsent(int limit);
+
+    @Modifying
+    @Query("UPDATE outbox_events SET sent_at = :sentAt WHERE id = ANY(:ids)")
+    Mono<Integer> markSent(Long[] ids, LocalDateTime sentAt);
+
+}
@@ -1,6 +1,5 @@
 package com.nadiannis.order_service.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nadiannis.common.dto.MessageDto;
 import com.nadiannis.order_service.dto.*;
@@ -8,78 +7,140 @@ import com.nadiannis.common.dto.order.OrderResDto;
 import com.nadiannis.common.dto.order.OrderItemResDto;
 import com.nadiannis.order_service.entity.Order;
 import com.nadiannis.order_service.entity.OrderItem;
+import com.nadiannis.order_service.entity.OutboxEvent;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
 import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.order_service.repository.OrderItemRepository;
 import com.nadiannis.order_service.repository.OrderRepository;
+import com.nadiannis.order_service.repository.OutboxEventRepository;
 import com.nadiannis.order_service.utils.OrderStatus;
+import com.nadiannis.common.utils.SagaMode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class OrderService {
 
+    private static final int ORDER_ITEMS_FETCH_CHUNK_SIZE = 500;
+
+    private static final int DEFAULT_PAGE_LIMIT = 20;
+
+    private static final int MAX_PAGE_LIMIT = 100;
+
     private OrderRepository orderRepository;
 
     private OrderItemRepository orderItemRepository;
 
-    private KafkaTemplate<String, Object> kafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
 
     private ObjectMapper objectMapper;
 
+    private ConflictRetry conflictRetry;
+
+    // The orchestrator runs the saga by default, in the choreographed saga the product service picks up new orders itself
+    private String orderCreatedTopic;
+
     @Autowired
-    public OrderService(OrderRepository orderRepository, OrderItemRepository orderItemRepository, KafkaTemplate<String, Object> kafkaTemplate, ObjectMapper objectMapper) {
+    public OrderService(
+            OrderRepository orderRepository,
+            OrderItemRepository orderItemRepository,
+            OutboxEventRepository outboxEventRepository,
+            ObjectMapper objectMapper,
+            ConflictRetry conflictRetry,
+            @Value("${saga.mode:orchestrated}") String sagaMode
+    ) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
-        this.kafkaTemplate = kafkaTemplate;
+        this.outboxEventRepository = outboxEventRepository;
         this.objectMapper = objectMapper;
+        this.conflictRetry = conflictRetry;
+        this.orderCreatedTopic = SagaMode.CHOREOGRAPHED.toString().equalsIgnoreCase(sagaMode) ? "product" : "orchestrator";
     }
 
-    @KafkaListener(topics = "order", groupId = "phincommerce")
-    public void handleStatusUpdate(String message) throws JsonProcessingException {
-        MessageDto messageDto = objectMapper.readValue(message, MessageDto.class);
+    // Each listener thread owns a share of the partitions, and keys keep the messages of one order on one thread.
+    // A whole poll is taken at once, and its offsets are committed only after every status in it is written.
+    @KafkaListener(topics = "order", groupId = "phincommerce", concurrency = "${order.listener.concurrency:6}", batch = "true")
+    public void handleStatusUpdates(List<MessageDto> messages) {
+        // Messages of one order arrive in order, so the last status of an order in the poll wins
+        Map<Long, String> orderStatuses = new LinkedHashMap<>();
+        for (MessageDto messageDto : messages) {
+            // A record the deserializer could not read arrives without a value, and redelivering it would not help
+            if (messageDto == null) {
+                System.out.println("Skipping malformed status update");
+                continue;
+            }
 
-        if (messageDto.getStatus().equals("PRODUCT_DEDUCT_FAILED")) {
-            System.out.println("PRODUCT_DEDUCT_FAILED (complete the order): " + messageDto);
-            updateOrderStatus(messageDto, "FAILED");
-        } else if (messageDto.getStatus().equals("PAYMENT_APPROVED")) {
-            System.out.println("PAYMENT_APPROVED (complete the order): " + messageDto);
-            updateOrderStatus(messageDto, "COMPLETED");
-        } else if (messageDto.getStatus().equals("PAYMENT_REJECTED")) {
-            System.out.println("PAYMENT_REJECTED (complete the order): " + messageDto);
-            updateOrderStatus(messageDto, "FAILED");
+            String orderStatus = toOrderStatus(messageDto.getStatus());
+            if (orderStatus != null) {
+                orderStatuses.put(messageDto.getPayload().getId(), orderStatus);
+            }
         }
+
+        Integer updatedOrders = updateOrderStatuses(orderStatuses).block();
+        System.out.println("Order statuses updated successfully: " + updatedOrders + " of " + messages.size() + " messages");
     }
 
-    private void updateOrderStatus(MessageDto messageDto, String status) {
-        Long orderId = messageDto.getPayload().getId();
-        StatusUpdateReqDto statusUpdateReqDto = StatusUpdateReqDto.builder().orderStatus(status).build();
+    // One UPDATE per target status covers every order moving to it
+    public Mono<Integer> updateOrderStatuses(Map<Long, String> orderStatuses) {
+        Map<String, List<Long>> orderIdsByStatus = orderStatuses.entrySet().stream().collect(Collectors.groupingBy(
+                Map.Entry::getValue,
+                LinkedHashMap::new,
+                Collectors.mapping(Map.Entry::getKey, Collectors.toList())
+        ));
 
-        updateStatus(orderId, statusUpdateReqDto).subscribe(
-                orderResDto -> System.out.println("Order status updated successfully to: " + status),
-                error -> System.out.println("Failed to update order status: " + error.getMessage())
-        );
+        return Flux.fromIterable(orderIdsByStatus.entrySet())
+                .concatMap(orderIds -> orderRepository.updateOrderStatuses(orderIds.getValue().toArray(new Long[0]), orderIds.getKey()))
+                .reduce(0, Integer::sum);
     }
 
-    public Flux<OrderResDto> getAll() {
-        return orderRepository.findAll().flatMap(order -> {
-            return orderItemRepository.findByOrderId(order.getId())
-                    .collectList()
-                    .map(orderItems -> {
-                        OrderResDto orderResDto = mapToOrderResDto(order);
-                        orderResDto.setOrderItems(orderItems.stream().map(this::mapToOrderItemResDto).collect(Collectors.toList()));
-                        return orderResDto;
-                    });
-        });
+    private String toOrderStatus(String sagaStatus) {
+        switch (sagaStatus) {
+            case "PAYMENT_APPROVED":
+                return OrderStatus.COMPLETED.toString();
+            case "PRODUCT_DEDUCT_FAILED":
+            case "PAYMENT_REJECTED":
+                return OrderStatus.FAILED.toString();
+            default:
+                return null;
+        }
+    }
+
+    public Mono<OrderPageResDto> getPage(Long cursor, Integer limit, Long customerId, String orderStatus) {
+        int pageLimit = limit == null ? DEFAULT_PAGE_LIMIT : Math.max(1, Math.min(limit, MAX_PAGE_LIMIT));
+
+        // One extra row is read to know whether another page follows
+        return orderRepository
+                .findPage(cursor, pageLimit + 1, customerId, orderStatus == null ? null : orderStatus.toUpperCase())
+                .collectList()
+                .flatMap(orders -> {
+                    boolean hasNext = orders.size() > pageLimit;
+                    List<Order> pageOrders = hasNext ? orders.subList(0, pageLimit) : orders;
+                    Long nextCursor = hasNext ? pageOrders.get(pageLimit - 1).getId() : null;
+
+                    return withOrderItems(Flux.fromIterable(pageOrders))
+                            .collectList()
+                            .map(orderResDtos -> new OrderPageResDto(orderResDtos, nextCursor));
+                });
+    }
+
+    public Flux<OrderResDto> stream(Long customerId, String orderStatus) {
+        return withOrderItems(orderRepository.findAllByFilters(customerId, orderStatus == null ? null : orderStatus.toUpperCase()));
     }
 
+    // The ORDER_CREATED event is written to the outbox in the same transaction and published by OutboxRelayService
+    @Transactional
     public Mono<OrderResDto> add(OrderReqDto orderReqDto) {
         if (orderReqDto.getOrderItems() == null) {
             orderReqDto.setOrderItems(Collections.emptyList());
@@ -92,28 +153,29 @@ public class OrderService {
         order.setOrderStatus(OrderStatus.CREATED.toString());
         order.setTotalAmount(totalAmount);
 
-        return orderRepository.save(order).flatMap(newOrder -> {
+        // Status changes are guarded UPDATEs, so the order is only saved here, where a conflict would be retried and counted
+        return orderRepository.save(order).transform(conflictRetry::retry).flatMap(newOrder -> {
             List<OrderItem> orderItems = orderReqDto.getOrderItems().stream().map(orderItemReqDto -> {
                 OrderItem orderItem = mapToOrderItemEntity(orderItemReqDto);
                 orderItem.setOrderId(newOrder.getId());
                 return orderItem;
             }).collect(Collectors.toList());
 
-            return orderItemRepository.saveAll(orderItems).collectList().map(newOrderItems -> {
+            // All items of the order go in one batched INSERT instead of one statement per item
+            return orderItemRepository.insertAll(orderItems).collectList().flatMap(newOrderItems -> {
                 OrderResDto createdOrderResDto = mapToOrderResDto(newOrder);
                 createdOrderResDto.setOrderItems(newOrderItems.stream()
                         .map(newOrderItem -> mapToOrderItemResDto(newOrderItem))
                         .collect(Collectors.toList()));
 
-                kafkaTemplate.send(
-                        "orchestrator",
-                        MessageDto.builder()
-                                .status("ORDER_CREATED")
-                                .payload(createdOrderResDto)
-                                .build()
-                );
+                MessageDto messageDto = MessageDto.builder()
+                        .status("ORDER_CREATED")
+                        .payload(createdOrderResDto)
+                        .build();
 
-                return createdOrderResDto;
+                return Mono.fromCallable(() -> objectMapper.writeValueAsString(messageDto))
+                        .flatMap(payload -> outboxEventRepository.save(OutboxEvent.builder().topic(orderCreatedTopic).payload(payload).build()))
+                        .thenReturn(createdOrderResDto);
             });
         });
     }
@@ -123,35 +185,16 @@ public class OrderService {
                 .findById(id)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("order", "id", Long.toString(id))));
 
-        return orderMono.flatMap(order -> {
-            return orderItemRepository.findByOrderId(order.getId())
-                    .collectList()
-                    .map(orderItems -> {
-                        OrderResDto orderResDto = mapToOrderResDto(order);
-                        orderResDto.setOrderItems(orderItems.stream().map(this::mapToOrderItemResDto).collect(Collectors.toList()));
-                        return orderResDto;
-                    });
-        });
+        return withOrderItems(orderMono.flux()).next();
     }
 
     public Mono<OrderResDto> updateStatus(Long id, StatusUpdateReqDto statusUpdateReqDto) {
-        Mono<Order> orderMono = orderRepository
-                .findById(id)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("order", "id", Long.toString(id))));
+        return withOrderItems(updateOrderStatus(id, statusUpdateReqDto.getOrderStatus().toUpperCase()).flux()).next();
+    }
 
-        return orderMono
-                .flatMap(order -> {
-                    order.setOrderStatus(statusUpdateReqDto.getOrderStatus().toUpperCase());
-                    return orderRepository.save(order);
-                }).flatMap(order -> {
-                    return orderItemRepository.findByOrderId(order.getId())
-                            .collectList()
-                            .map(orderItems -> {
-                                OrderResDto orderResDto = mapToOrderResDto(order);
-                                orderResDto.setOrderItems(orderItems.stream().map(this::mapToOrderItemResDto).collect(Collectors.toList()));
-                                return orderResDto;
-                            });
-                });
+    // For callers that do not need the order back, so its items are never read
+    public Mono<Void> transitionStatus(Long id, StatusUpdateReqDto statusUpdateReqDto) {
+        return updateOrderStatus(id, statusUpdateReqDto.getOrderStatus().toUpperCase()).then();
     }
 
     public Mono<Void> delete(Long id) {
@@ -162,6 +205,45 @@ public class OrderService {
         return orderMono.flatMap(order -> orderRepository.deleteById(order.getId()));
     }
 
+    // A single guarded UPDATE, so the order is not read before it is written and only CREATED orders move
+    private Mono<Order> updateOrderStatus(Long id, String orderStatus) {
+        return orderRepository
+                .updateOrderStatus(id, orderStatus)
+                .switchIfEmpty(Mono.defer(() -> unchangedOrInvalidTransition(id, orderStatus)));
+    }
+
+    // Only reached when the guarded update matched no row. Repeating the transition an order already made is not an error.
+    private Mono<Order> unchangedOrInvalidTransition(Long id, String orderStatus) {
+        return orderRepository
+                .findById(id)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("order", "id", Long.toString(id))))
+                .flatMap(order -> {
+                    if (order.getOrderStatus().equals(orderStatus)) {
+                        return Mono.just(order);
+                    }
+                    return Mono.error(new InvalidStatusTransitionException("order", order.getOrderStatus(), orderStatus));
+                });
+    }
+
+    // Orders are taken in chunks and the items of a whole chunk are fetched with one query, so memory stays bounded by the chunk size
+    private Flux<OrderResDto> withOrderItems(Flux<Order> orders) {
+        return orders
+                .buffer(ORDER_ITEMS_FETCH_CHUNK_SIZE)
+                .concatMap(orderChunk -> {
+                    Long[] orderIds = orderChunk.stream().map(Order::getId).toArray(Long[]::new);
+
+                    return orderItemRepository.findAllByOrderIdIn(orderIds)
+                            .collectMultimap(OrderItem::getOrderId)
+                            .flatMapIterable(orderItemsByOrderId -> orderChunk.stream().map(order -> {
+                                OrderResDto orderResDto = mapToOrderResDto(order);
+                                orderResDto.setOrderItems(orderItemsByOrderId.getOrDefault(order.getId(), Collections.emptyList()).stream()
+                                        .map(this::mapToOrderItemResDto)
+                                        .collect(Collectors.toList()));
+                                return orderResDto;
+                            }).collect(Collectors.toList()));
+                });
+    }
+
     private OrderResDto mapToOrderResDto(Order order) {
         OrderResDto orderResDto = new OrderResDto();
         orderResDto.setId(order.getId());
@@ -0,0 +1,115 @@
+package com.nadiannis.order_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.order_service.entity.OutboxEvent;
+import com.nadiannis.order_service.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Publishes outbox rows written together with the orders. Delivery is at least once: a row is marked sent only after Kafka acknowledged it.
+@Service
+public class OutboxRelayService implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(OutboxRelayService.class);
+
+    private OutboxEventRepository repository;
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    private ObjectMapper objectMapper;
+
+    private TransactionalOperator transactionalOperator;
+
+    private int batchSize;
+
+    private Duration linger;
+
+    private Disposable relay;
+
+    @Autowired
+    public OutboxRelayService(
+            OutboxEventRepository repository,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            ObjectMapper objectMapper,
+            TransactionalOperator transactionalOperator,
+            @Value("${order.outbox.batch-size:100}") int batchSize,
+            @Value("${order.outbox.linger:100ms}") Duration linger
+    ) {
+        this.repository = repository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionalOperator = transactionalOperator;
+        this.batchSize = batchSize;
+        this.linger = linger;
+    }
+
+    // Keeps draining while batches come back full, so a backlog is not throttled by the linger
+    public Mono<Integer> relayPending() {
+        return relayBatch()
+                .expand(sent -> sent == batchSize ? relayBatch() : Mono.empty())
+                .reduce(0, Integer::sum);
+    }
+
+    // The batch is claimed, sent and marked in one transaction, so its rows stay locked against other instances until
+    // they are marked sent, and a crash before that leaves them unsent for the next relay
+    private Mono<Integer> relayBatch() {
+        Mono<Integer> relayed = repository.findUnsent(batchSize)
+                .publishOn(Schedulers.boundedElastic())
+                .flatMapSequential(outboxEvent -> send(outboxEvent)
+                        .thenReturn(outboxEvent.getId())
+                        .onErrorResume(error -> {
+                            logger.error("Failed to relay outbox event {}", outboxEvent.getId(), error);
+                            return Mono.empty();
+                        }))
+                .collectList()
+                .flatMap(sentIds -> sentIds.isEmpty()
+                        ? Mono.just(0)
+                        : repository.markSent(sentIds.toArray(new Long[0]), LocalDateTime.now()).thenReturn(sentIds.size()));
+
+        return transactionalOperator.transactional(relayed);
+    }
+
+    private Mono<?> send(OutboxEvent outboxEvent) {
+        return Mono.fromCallable(() -> objectMapper.readValue(outboxEvent.getPayload(), MessageDto.class))
+                // Keyed by order id, so every message of an order lands on the same partition and stays in order
+                .flatMap(messageDto -> Mono.fromFuture(kafkaTemplate.send(outboxEvent.getTopic(), Long.toString(messageDto.getPayload().getId()), messageDto)));
+    }
+
+    @Override
+    public void start() {
+        relay = Flux.interval(linger)
+                .onBackpressureDrop()
+                .concatMap(tick -> relayPending().onErrorResume(error -> {
+                    logger.error("Failed to relay outbox events", error);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if (relay != null) {
+            relay.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return relay != null && !relay.isDisposed();
+    }
+
+}
@@ -6,9 +6,13 @@ CREATE TABLE IF NOT EXISTS orders (
     order_status VARCHAR(255) NOT NULL,
     total_amount FLOAT8 NOT NULL,
     customer_id BIGINT NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
     order_date TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
 );
 
+-- Tables created before optimistic locking get the column too, every existing row starting at version 0
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
 CREATE TABLE IF NOT EXISTS order_items (
     id BIGSERIAL PRIMARY KEY,
     order_id BIGINT NOT NULL,
@@ -21,3 +25,19 @@ CREATE TABLE IF NOT EXISTS order_items (
         ON UPDATE CASCADE
         ON DELETE CASCADE
 );
+
+CREATE INDEX IF NOT EXISTS orders_customer_id_id_idx ON orders (customer_id, id);
+
+CREATE INDEX IF NOT EXISTS orders_order_status_id_idx ON orders (order_status, id);
+
+CREATE INDEX IF NOT EXISTS order_items_order_id_idx ON order_items (order_id);
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id BIGSERIAL PRIMARY KEY,
+    topic VARCHAR(255) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW(),
+    sent_at TIMESTAMP(6) WITHOUT TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS outbox_events_sent_at_id_idx ON outbox_events (sent_at, id);
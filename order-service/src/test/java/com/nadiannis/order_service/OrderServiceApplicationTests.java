@@ -3,7 +3,8 @@ package com.nadiannis.order_service;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// A database of its own, since the outbox relay keeps claiming rows for as long as this context is cached
+@SpringBootTest(properties = "spring.r2dbc.url=r2dbc:h2:mem:///applicationdb;DB_CLOSE_DELAY=-1")
 class OrderServiceApplicationTests {
 
 	@Test
@@ -2,7 +2,9 @@ package com.nadiannis.order_service.controller.v1;
 
 import com.nadiannis.common.dto.order.OrderItemResDto;
 import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
 import com.nadiannis.order_service.dto.OrderItemReqDto;
+import com.nadiannis.order_service.dto.OrderPageResDto;
 import com.nadiannis.order_service.dto.OrderReqDto;
 import com.nadiannis.order_service.dto.StatusUpdateReqDto;
 import com.nadiannis.order_service.service.OrderService;
@@ -95,25 +97,44 @@ public class OrderControllerTests {
     }
 
     // @GetMapping
-    // public Mono<ResponseEntity<?>> getAll()
+    // public Mono<ResponseEntity<?>> getAll(cursor, limit, customerId, orderStatus)
     @Test
-    public void OrderController_GetAll_ReturnOrderResDtos() {
-        when(orderService.getAll()).thenReturn(Flux.just(orderResDto1, orderResDto2));
+    public void OrderController_GetAll_ReturnOrderPage() {
+        OrderPageResDto orderPageResDto = new OrderPageResDto(List.of(orderResDto1, orderResDto2), orderResDto2.getId());
+        when(orderService.getPage(null, 2, 1L, "CREATED")).thenReturn(Mono.just(orderPageResDto));
 
-        webTestClient.get().uri("/api/v1/orders")
+        webTestClient.get().uri("/api/v1/orders?limit=2&customer_id=1&order_status=CREATED")
                 .accept(MediaType.APPLICATION_JSON)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody()
                 .jsonPath("$.status").isEqualTo("success")
                 .jsonPath("$.message").isEqualTo("orders retrieved successfully")
-                .jsonPath("$.data.length()").isEqualTo(2)
-                .jsonPath("$.data[0].id").isEqualTo(orderResDto1.getId())
-                .jsonPath("$.data[1].id").isEqualTo(orderResDto2.getId())
-                .jsonPath("$.data[0].order_items.length()").isEqualTo(1)
-                .jsonPath("$.data[1].order_items.length()").isEqualTo(1);
+                .jsonPath("$.data.orders.length()").isEqualTo(2)
+                .jsonPath("$.data.orders[0].id").isEqualTo(orderResDto1.getId())
+                .jsonPath("$.data.orders[1].id").isEqualTo(orderResDto2.getId())
+                .jsonPath("$.data.orders[0].order_items.length()").isEqualTo(1)
+                .jsonPath("$.data.orders[1].order_items.length()").isEqualTo(1)
+                .jsonPath("$.data.next_cursor").isEqualTo(orderResDto2.getId());
 
-        verify(orderService, times(1)).getAll();
+        verify(orderService, times(1)).getPage(null, 2, 1L, "CREATED");
+    }
+
+    // @GetMapping("/stream")
+    // public Flux<OrderResDto> stream(customerId, orderStatus)
+    @Test
+    public void OrderController_Stream_ReturnNdjsonOrderResDtos() {
+        when(orderService.stream(null, null)).thenReturn(Flux.just(orderResDto1, orderResDto2));
+
+        webTestClient.get().uri("/api/v1/orders/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(OrderResDto.class)
+                .hasSize(2);
+
+        verify(orderService, times(1)).stream(null, null);
     }
 
     // @PostMapping
@@ -185,6 +206,41 @@ public class OrderControllerTests {
         verify(orderService, times(1)).updateStatus(anyLong(), any(StatusUpdateReqDto.class));
     }
 
+    @Test
+    public void OrderController_UpdateStatus_ReturnNoOrderWhenMinimalIsPreferred() {
+        Long orderId = orderResDto1.getId();
+        when(orderService.transitionStatus(anyLong(), any(StatusUpdateReqDto.class))).thenReturn(Mono.empty());
+
+        webTestClient.patch().uri("/api/v1/orders/"+ orderId +"/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Prefer", "return=minimal")
+                .bodyValue(statusUpdateReqDto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.message").isEqualTo("order status updated successfully")
+                .jsonPath("$.data").doesNotExist();
+
+        verify(orderService, times(1)).transitionStatus(anyLong(), any(StatusUpdateReqDto.class));
+        verify(orderService, never()).updateStatus(anyLong(), any(StatusUpdateReqDto.class));
+    }
+
+    @Test
+    public void OrderController_UpdateStatus_ReturnConflictWhenOrderLeftCreated() {
+        Long orderId = orderResDto1.getId();
+        when(orderService.updateStatus(anyLong(), any(StatusUpdateReqDto.class)))
+                .thenReturn(Mono.error(new InvalidStatusTransitionException("order", "FAILED", "COMPLETED")));
+
+        webTestClient.patch().uri("/api/v1/orders/"+ orderId +"/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(statusUpdateReqDto)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("order status cannot change from FAILED to COMPLETED");
+    }
+
     // @DeleteMapping("/{id}")
     // public Mono<ResponseEntity<?>> delete(@PathVariable Long id)
     @Test
@@ -0,0 +1,83 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.Order;
+import com.nadiannis.order_service.entity.OrderItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Time to write an order row and its items in one transaction, as OrderService.add does, with one INSERT per item
+// against the batched insert. Launched by OrderItemRepositoryBenchmarkTests, which hands over its test context.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderItemRepositoryBenchmark {
+
+    static ApplicationContext applicationContext;
+
+    @Param({"1", "10", "100", "1000"})
+    public int orderSize;
+
+    private OrderRepository orderRepository;
+
+    private OrderItemRepository orderItemRepository;
+
+    private TransactionalOperator transactionalOperator;
+
+    @Setup
+    public void setUp() {
+        orderRepository = applicationContext.getBean(OrderRepository.class);
+        orderItemRepository = applicationContext.getBean(OrderItemRepository.class);
+        transactionalOperator = applicationContext.getBean(TransactionalOperator.class);
+        orderRepository.deleteAll().block();
+    }
+
+    @Benchmark
+    public Order saveAll() {
+        return write(orderItems -> orderItemRepository.saveAll(orderItems));
+    }
+
+    @Benchmark
+    public Order insertAll() {
+        return write(orderItems -> orderItemRepository.insertAll(orderItems));
+    }
+
+    private Order write(Function<List<OrderItem>, Flux<OrderItem>> writeOrderItems) {
+        return transactionalOperator.transactional(orderRepository.save(createOrder())
+                .flatMap(order -> writeOrderItems.apply(createOrderItems(order.getId())).then(Mono.just(order))))
+                .block();
+    }
+
+    private Order createOrder() {
+        return Order.builder()
+                .paymentMethod("CASH")
+                .billingAddress("Bekasi")
+                .shippingAddress("Jakarta")
+                .orderStatus("CREATED")
+                .totalAmount(100000.0)
+                .customerId(1L)
+                .build();
+    }
+
+    private List<OrderItem> createOrderItems(Long orderId) {
+        return IntStream.range(0, orderSize)
+                .mapToObj(i -> OrderItem.builder().orderId(orderId).productId((long) i + 1).price(10000.0).quantity(1).build())
+                .collect(Collectors.toList());
+    }
+
+}
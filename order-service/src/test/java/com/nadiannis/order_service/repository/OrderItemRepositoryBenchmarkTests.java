@@ -0,0 +1,46 @@
+package com.nadiannis.order_service.repository;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Collection;
+
+// Runs OrderItemRepositoryBenchmark against the test database, with mvn test -Pbenchmark
+@DataR2dbcTest
+@Tag("benchmark")
+public class OrderItemRepositoryBenchmarkTests {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Test
+    public void OrderItemRepository_InsertAll_BenchmarkAgainstSaveAll() throws RunnerException {
+        OrderItemRepositoryBenchmark.applicationContext = applicationContext;
+        Options options = new OptionsBuilder()
+                .include(OrderItemRepositoryBenchmark.class.getName())
+                // In this JVM, so the benchmark writes through the repositories of this test context
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(1))
+                .shouldFailOnError(true)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        // saveAll and insertAll, for each of the 4 order sizes
+        Assertions.assertThat(results).hasSize(8);
+    }
+
+}
@@ -87,6 +87,32 @@ public class OrderItemRepositoryTests {
                 .verifyComplete();
     }
 
+    // Flux<OrderItem> insertAll(orderItems)
+    @Test
+    public void OrderItemRepository_InsertAll_ReturnOrderItemsWithGeneratedIdsInOrder() {
+        orderRepository.save(order).block();
+        orderItem1.setOrderId(order.getId());
+        orderItem2.setOrderId(order.getId());
+
+        Mono<List<OrderItem>> insertedOrderItemListMono = orderItemRepository.insertAll(List.of(orderItem1, orderItem2)).collectList();
+
+        StepVerifier.create(insertedOrderItemListMono)
+                .assertNext(orderItemList -> {
+                    Assertions.assertThat(orderItemList).extracting(OrderItem::getProductId).containsExactly(1L, 2L);
+                    Assertions.assertThat(orderItemList).extracting(OrderItem::getId).doesNotContainNull().doesNotHaveDuplicates();
+                })
+                .verifyComplete();
+
+        StepVerifier.create(orderItemRepository.findById(orderItem2.getId()))
+                .expectNextMatches(orderItem -> orderItem.getProductId().equals(2L) && orderItem.getQuantity().equals(20))
+                .verifyComplete();
+    }
+
+    @Test
+    public void OrderItemRepository_InsertAll_ReturnEmptyForNoOrderItems() {
+        StepVerifier.create(orderItemRepository.insertAll(List.of())).verifyComplete();
+    }
+
     // Flux<OrderItem> findByOrderId(orderId)
     @Test
     public void OrderItemRepository_FindByOrderId_ReturnOrderItems() {
@@ -103,4 +129,30 @@ public class OrderItemRepositoryTests {
                 .verifyComplete();
     }
 
+    // Flux<OrderItem> findAllByOrderIdIn(orderIds)
+    @Test
+    public void OrderItemRepository_FindAllByOrderIdIn_ReturnOrderItemsOfEveryOrder() {
+        orderRepository.save(order).block();
+        Order otherOrder = orderRepository.save(Order.builder()
+                .paymentMethod("CASH")
+                .billingAddress("Bandung")
+                .shippingAddress("Semarang")
+                .orderStatus("CREATED")
+                .totalAmount(200000.0)
+                .customerId(2L)
+                .build()).block();
+        orderItem1.setOrderId(order.getId());
+        orderItem2.setOrderId(otherOrder.getId());
+        orderItemRepository.saveAll(Flux.just(orderItem1, orderItem2)).blockLast();
+
+        Mono<List<OrderItem>> orderItemListMono = orderItemRepository.findAllByOrderIdIn(new Long[]{order.getId(), otherOrder.getId()}).collectList();
+
+        StepVerifier.create(orderItemListMono)
+                .assertNext(orderItemList -> {
+                    Assertions.assertThat(orderItemList.size()).isEqualTo(2);
+                    Assertions.assertThat(orderItemList).extracting(OrderItem::getOrderId).containsExactlyInAnyOrder(order.getId(), otherOrder.getId());
+                })
+                .verifyComplete();
+    }
+
 }
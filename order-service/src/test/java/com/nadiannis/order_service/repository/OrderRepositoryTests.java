@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -93,4 +94,128 @@ public class OrderRepositoryTests {
                 .verifyComplete();
     }
 
+    // Flux<Order> findPage(afterId, limit, customerId, orderStatus)
+    @Test
+    public void OrderRepository_FindPage_ReturnOrdersAfterCursor() {
+        List<Order> orders = repository.saveAll(Flux.range(0, 5).map(i -> Order.builder()
+                .paymentMethod("CASH")
+                .billingAddress("Bekasi")
+                .shippingAddress("Jakarta")
+                .orderStatus("CREATED")
+                .totalAmount(100000.0)
+                .customerId(1L)
+                .build())).collectList().block();
+
+        Mono<List<Order>> orderListMono = repository.findPage(orders.get(1).getId(), 2, null, null).collectList();
+
+        StepVerifier.create(orderListMono)
+                .assertNext(orderList -> Assertions.assertThat(orderList)
+                        .extracting(Order::getId)
+                        .containsExactly(orders.get(2).getId(), orders.get(3).getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void OrderRepository_FindPage_ReturnOrdersMatchingFilters() {
+        repository.saveAll(Flux.just(order1, order2)).blockLast();
+
+        Mono<List<Order>> orderListMono = repository.findPage(null, 10, 2L, "COMPLETED").collectList();
+
+        StepVerifier.create(orderListMono)
+                .assertNext(orderList -> {
+                    Assertions.assertThat(orderList.size()).isEqualTo(1);
+                    Assertions.assertThat(orderList.get(0).getId()).isEqualTo(order2.getId());
+                })
+                .verifyComplete();
+    }
+
+    // Flux<Order> findAllByFilters(customerId, orderStatus)
+    @Test
+    public void OrderRepository_FindAllByFilters_ReturnOrdersOfCustomer() {
+        repository.saveAll(Flux.just(order1, order2)).blockLast();
+
+        Mono<List<Order>> orderListMono = repository.findAllByFilters(1L, null).collectList();
+
+        StepVerifier.create(orderListMono)
+                .assertNext(orderList -> {
+                    Assertions.assertThat(orderList.size()).isEqualTo(1);
+                    Assertions.assertThat(orderList.get(0).getCustomerId()).isEqualTo(1L);
+                })
+                .verifyComplete();
+    }
+
+    // Mono<Integer> updateOrderStatuses(ids, orderStatus)
+    @Test
+    public void OrderRepository_UpdateOrderStatuses_UpdateOnlyListedCreatedOrders() {
+        Order order3 = Order.builder()
+                .paymentMethod("CASH")
+                .billingAddress("Bekasi")
+                .shippingAddress("Jakarta")
+                .orderStatus("CREATED")
+                .totalAmount(300000.0)
+                .customerId(3L)
+                .build();
+        repository.saveAll(Flux.just(order1, order2, order3)).blockLast();
+
+        Mono<List<Order>> orderListMono = repository
+                .updateOrderStatuses(new Long[]{order1.getId(), order2.getId()}, "FAILED")
+                .doOnNext(updatedOrders -> Assertions.assertThat(updatedOrders).isEqualTo(1))
+                .thenMany(repository.findAll())
+                .collectList();
+
+        StepVerifier.create(orderListMono)
+                .assertNext(orderList -> Assertions.assertThat(orderList)
+                        .extracting(Order::getId, Order::getOrderStatus)
+                        .containsExactlyInAnyOrder(
+                                Assertions.tuple(order1.getId(), "FAILED"),
+                                Assertions.tuple(order2.getId(), "COMPLETED"),
+                                Assertions.tuple(order3.getId(), "CREATED")
+                        ))
+                .verifyComplete();
+    }
+
+    // Mono<Order> updateOrderStatus(id, orderStatus)
+    @Test
+    public void OrderRepository_UpdateOrderStatus_ReturnUpdatedCreatedOrder() {
+        repository.save(order1).block();
+
+        Mono<Order> orderMono = repository.updateOrderStatus(order1.getId(), "COMPLETED");
+
+        StepVerifier.create(orderMono)
+                .assertNext(order -> {
+                    Assertions.assertThat(order.getId()).isEqualTo(order1.getId());
+                    Assertions.assertThat(order.getOrderStatus()).isEqualTo("COMPLETED");
+                    Assertions.assertThat(order.getCustomerId()).isEqualTo(1L);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void OrderRepository_UpdateOrderStatus_ReturnEmptyWhenOrderLeftCreated() {
+        repository.save(order2).block();
+
+        Mono<Order> orderMono = repository
+                .updateOrderStatus(order2.getId(), "FAILED")
+                .switchIfEmpty(Mono.defer(() -> repository.findById(order2.getId()).filter(order -> order.getOrderStatus().equals("FAILED"))));
+
+        StepVerifier.create(orderMono)
+                .expectNextCount(0L)
+                .verifyComplete();
+    }
+
+    // Mono<Order> save(order) with @Version
+    @Test
+    public void OrderRepository_Save_ThrowOptimisticLockingFailureExceptionForStaleOrder() {
+        repository.save(order1).block();
+        Order staleOrder = repository.findById(order1.getId()).block();
+        repository.updateOrderStatus(order1.getId(), "COMPLETED").block();
+
+        staleOrder.setShippingAddress("Bandung");
+
+        StepVerifier.create(repository.save(staleOrder))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        Assertions.assertThat(repository.findById(order1.getId()).block().getOrderStatus()).isEqualTo("COMPLETED");
+    }
+
 }
@@ -0,0 +1,108 @@
+package com.nadiannis.order_service.repository;
+
+import com.nadiannis.order_service.entity.OutboxEvent;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import reactor.core.publisher.Flux;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@DataR2dbcTest
+public class OutboxEventRepositoryTests {
+
+    @Autowired
+    private OutboxEventRepository repository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private OutboxEvent outboxEvent1;
+
+    private OutboxEvent outboxEvent2;
+
+    @BeforeEach
+    void setUp() {
+        outboxEvent1 = OutboxEvent.builder().topic("orchestrator").payload("{\"status\":\"ORDER_CREATED\"}").build();
+        outboxEvent2 = OutboxEvent.builder().topic("orchestrator").payload("{\"status\":\"ORDER_CREATED\"}").build();
+
+        repository.deleteAll().block();
+    }
+
+    // Flux<OutboxEvent> findUnsent(limit)
+    @Test
+    public void OutboxEventRepository_FindUnsent_ReturnOldestUnsentEvents() {
+        repository.saveAll(Flux.just(outboxEvent1, outboxEvent2)).blockLast();
+
+        Mono<List<OutboxEvent>> outboxEventListMono = repository.findUnsent(1).collectList();
+
+        StepVerifier.create(outboxEventListMono)
+                .assertNext(outboxEventList -> {
+                    Assertions.assertThat(outboxEventList.size()).isEqualTo(1);
+                    Assertions.assertThat(outboxEventList.get(0).getId()).isEqualTo(outboxEvent1.getId());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void OutboxEventRepository_FindUnsent_SkipEventsLockedByAnotherRelay() {
+        repository.saveAll(Flux.just(outboxEvent1, outboxEvent2)).blockLast();
+        Sinks.One<Long> locked = Sinks.one();
+        Sinks.Empty<Void> release = Sinks.empty();
+
+        // Another relay holds the first event in its open transaction. It is locked by id, since H2, unlike
+        // PostgreSQL, also locks the rows a LIMIT leaves out.
+        transactionalOperator.transactional(databaseClient.sql("SELECT id FROM outbox_events WHERE id = :id FOR UPDATE")
+                        .bind("id", outboxEvent1.getId())
+                        .map(row -> row.get("id", Long.class))
+                        .one()
+                        .doOnNext(locked::tryEmitValue)
+                        .flatMap(id -> release.asMono().thenReturn(id)))
+                .subscribe();
+        locked.asMono().block(Duration.ofSeconds(5));
+
+        try {
+            Mono<List<OutboxEvent>> outboxEventListMono = transactionalOperator.transactional(repository.findUnsent(10).collectList());
+
+            StepVerifier.create(outboxEventListMono)
+                    .assertNext(outboxEventList -> {
+                        Assertions.assertThat(outboxEventList.size()).isEqualTo(1);
+                        Assertions.assertThat(outboxEventList.get(0).getId()).isEqualTo(outboxEvent2.getId());
+                    })
+                    .verifyComplete();
+        } finally {
+            release.tryEmitEmpty();
+        }
+    }
+
+    // Mono<Integer> markSent(ids, sentAt)
+    @Test
+    public void OutboxEventRepository_MarkSent_ExcludeEventsFromUnsent() {
+        repository.saveAll(Flux.just(outboxEvent1, outboxEvent2)).blockLast();
+
+        Mono<List<OutboxEvent>> outboxEventListMono = repository
+                .markSent(new Long[]{outboxEvent1.getId()}, LocalDateTime.now())
+                .thenMany(repository.findUnsent(10))
+                .collectList();
+
+        StepVerifier.create(outboxEventListMono)
+                .assertNext(outboxEventList -> {
+                    Assertions.assertThat(outboxEventList.size()).isEqualTo(1);
+                    Assertions.assertThat(outboxEventList.get(0).getId()).isEqualTo(outboxEvent2.getId());
+                })
+                .verifyComplete();
+    }
+
+}
@@ -1,13 +1,21 @@
 package com.nadiannis.order_service.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
 import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.order_service.dto.OrderItemReqDto;
+import com.nadiannis.order_service.dto.OrderPageResDto;
 import com.nadiannis.order_service.dto.OrderReqDto;
 import com.nadiannis.order_service.dto.StatusUpdateReqDto;
 import com.nadiannis.order_service.entity.Order;
 import com.nadiannis.order_service.entity.OrderItem;
+import com.nadiannis.order_service.entity.OutboxEvent;
 import com.nadiannis.order_service.repository.OrderItemRepository;
 import com.nadiannis.order_service.repository.OrderRepository;
+import com.nadiannis.order_service.repository.OutboxEventRepository;
 import com.nadiannis.order_service.utils.OrderStatus;
 import com.nadiannis.order_service.utils.PaymentMethod;
 import org.assertj.core.api.Assertions;
@@ -16,13 +24,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.kafka.core.KafkaTemplate;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -37,7 +47,13 @@ public class OrderServiceTests {
     private OrderItemRepository orderItemRepository;
 
     @Mock
-    private KafkaTemplate<String, Object> kafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private ConflictRetry conflictRetry = new ConflictRetry("order", 3, Duration.ofMillis(1), Duration.ofMillis(5));
 
     @InjectMocks
     private OrderService orderService;
@@ -89,26 +105,77 @@ public class OrderServiceTests {
                 .build();
     }
 
-    // Flux<OrderResDto> getAll()
+    // Mono<OrderPageResDto> getPage(Long cursor, Integer limit, Long customerId, String orderStatus)
+    @Test
+    public void OrderService_GetPage_ReturnOrderResDtosWithTheirItems() {
+        when(orderRepository.findPage(null, 21, null, null)).thenReturn(Flux.just(order1, order2));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem1, orderItem2));
+
+        Mono<OrderPageResDto> orderPageMono = orderService.getPage(null, null, null, null);
+
+        StepVerifier.create(orderPageMono)
+                .assertNext(orderPage -> {
+                    Assertions.assertThat(orderPage.getOrders().size()).isEqualTo(2);
+                    Assertions.assertThat(orderPage.getOrders().get(0).getOrderItems().size()).isEqualTo(1);
+                    Assertions.assertThat(orderPage.getOrders().get(1).getOrderItems().size()).isEqualTo(1);
+                })
+                .verifyComplete();
+
+        verify(orderItemRepository, times(1)).findAllByOrderIdIn(new Long[]{order1.getId(), order2.getId()});
+        verify(orderItemRepository, never()).findByOrderId(anyLong());
+    }
+
+    @Test
+    public void OrderService_GetPage_ReturnOrdersWithNextCursor() {
+        when(orderRepository.findPage(null, 2, null, OrderStatus.CREATED.toString())).thenReturn(Flux.just(order1, order2));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem1));
+
+        Mono<OrderPageResDto> orderPageMono = orderService.getPage(null, 1, null, "created");
+
+        StepVerifier.create(orderPageMono)
+                .assertNext(orderPage -> {
+                    Assertions.assertThat(orderPage.getOrders().size()).isEqualTo(1);
+                    Assertions.assertThat(orderPage.getOrders().get(0).getId()).isEqualTo(order1.getId());
+                    Assertions.assertThat(orderPage.getNextCursor()).isEqualTo(order1.getId());
+                })
+                .verifyComplete();
+
+        verify(orderItemRepository, times(1)).findAllByOrderIdIn(new Long[]{order1.getId()});
+    }
+
+    @Test
+    public void OrderService_GetPage_ReturnNoNextCursorOnLastPage() {
+        when(orderRepository.findPage(order1.getId(), 21, null, null)).thenReturn(Flux.just(order2));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem2));
+
+        Mono<OrderPageResDto> orderPageMono = orderService.getPage(order1.getId(), null, null, null);
+
+        StepVerifier.create(orderPageMono)
+                .assertNext(orderPage -> {
+                    Assertions.assertThat(orderPage.getOrders().size()).isEqualTo(1);
+                    Assertions.assertThat(orderPage.getNextCursor()).isNull();
+                })
+                .verifyComplete();
+    }
+
+    // Flux<OrderResDto> stream(Long customerId, String orderStatus)
     @Test
-    public void OrderService_GetAll_ReturnOrderResDtos() {
-        when(orderRepository.findAll()).thenReturn(Flux.just(order1, order2));
-        when(orderItemRepository.findByOrderId(order1.getId())).thenReturn(Flux.just(orderItem1));
-        when(orderItemRepository.findByOrderId(order2.getId())).thenReturn(Flux.just(orderItem2));
+    public void OrderService_Stream_FetchOrderItemsOncePerChunk() {
+        Flux<Order> orders = Flux.range(1, 1200).map(i -> Order.builder().id((long) i).orderStatus(OrderStatus.CREATED.toString()).build());
+        when(orderRepository.findAllByFilters(null, null)).thenReturn(orders);
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem1));
 
-        Mono<List<OrderResDto>> orderListMono = orderService.getAll().collectList();
+        Mono<List<OrderResDto>> orderListMono = orderService.stream(null, null).collectList();
 
         StepVerifier.create(orderListMono)
                 .assertNext(orderList -> {
-                    Assertions.assertThat(orderList).isNotNull();
-                    Assertions.assertThat(orderList.size()).isEqualTo(2);
+                    Assertions.assertThat(orderList.size()).isEqualTo(1200);
                     Assertions.assertThat(orderList.get(0).getOrderItems().size()).isEqualTo(1);
-                    Assertions.assertThat(orderList.get(1).getOrderItems().size()).isEqualTo(1);
+                    Assertions.assertThat(orderList.get(1).getOrderItems()).isEmpty();
                 })
                 .verifyComplete();
 
-        verify(orderRepository, times(1)).findAll();
-        verify(orderItemRepository, times(2)).findByOrderId(anyLong());
+        verify(orderItemRepository, times(3)).findAllByOrderIdIn(any(Long[].class));
     }
 
     // Mono<OrderResDto> add(OrderReqDto orderReqDto)
@@ -116,8 +183,8 @@ public class OrderServiceTests {
     public void OrderService_Add_SaveAndReturnOrderResDto() {
         Double totalAmount = orderReqDto.getOrderItems().get(0).getPrice() * orderReqDto.getOrderItems().get(0).getQuantity();
         when(orderRepository.save(any(Order.class))).thenReturn(Mono.just(order1));
-        when(orderItemRepository.saveAll(anyList())).thenReturn(Flux.just(orderItem1));
-        when(kafkaTemplate.send(anyString(), any(Object.class))).thenReturn(null);
+        when(orderItemRepository.insertAll(anyList())).thenReturn(Flux.just(orderItem1));
+        when(outboxEventRepository.save(any(OutboxEvent.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
 
         Mono<OrderResDto> orderMono = orderService.add(orderReqDto);
 
@@ -137,8 +204,24 @@ public class OrderServiceTests {
                 .verifyComplete();
 
         verify(orderRepository, times(1)).save(any(Order.class));
-        verify(orderItemRepository, times(1)).saveAll(anyList());
-        verify(kafkaTemplate, times(1)).send(anyString(), any(Object.class));
+        verify(orderItemRepository, times(1)).insertAll(anyList());
+        verify(outboxEventRepository, times(1)).save(argThat(outboxEvent ->
+                outboxEvent.getTopic().equals("orchestrator") && outboxEvent.getPayload().contains("\"status\":\"ORDER_CREATED\"")));
+    }
+
+    @Test
+    public void OrderService_Add_PublishOrderCreatedToProductServiceInChoreographedSaga() {
+        OrderService choreographedOrderService = new OrderService(orderRepository, orderItemRepository, outboxEventRepository, objectMapper, conflictRetry, "choreographed");
+        when(orderRepository.save(any(Order.class))).thenReturn(Mono.just(order1));
+        when(orderItemRepository.insertAll(anyList())).thenReturn(Flux.just(orderItem1));
+        when(outboxEventRepository.save(any(OutboxEvent.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(choreographedOrderService.add(orderReqDto))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(outboxEventRepository, times(1)).save(argThat(outboxEvent ->
+                outboxEvent.getTopic().equals("product") && outboxEvent.getPayload().contains("\"status\":\"ORDER_CREATED\"")));
     }
 
     // Mono<OrderResDto> getById(Long id)
@@ -146,7 +229,7 @@ public class OrderServiceTests {
     public void OrderService_GetById_ReturnOrderResDto() {
         Long orderId = order1.getId();
         when(orderRepository.findById(anyLong())).thenReturn(Mono.just(order1));
-        when(orderItemRepository.findByOrderId(anyLong())).thenReturn(Flux.just(orderItem1));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem1));
 
         Mono<OrderResDto> orderMono = orderService.getById(orderId);
 
@@ -155,17 +238,16 @@ public class OrderServiceTests {
                 .verifyComplete();
 
         verify(orderRepository, times(1)).findById(anyLong());
-        verify(orderItemRepository, times(1)).findByOrderId(anyLong());
+        verify(orderItemRepository, times(1)).findAllByOrderIdIn(new Long[]{orderId});
     }
 
     // Mono<OrderResDto> updateStatus(Long id, StatusUpdateReqDto statusUpdateReqDto)
     @Test
     public void OrderService_UpdateStatus_UpdateStatusAndReturnOrderResDto() {
         Long orderId = order1.getId();
-        when(orderRepository.findById(anyLong())).thenReturn(Mono.just(order1));
         order1.setOrderStatus(OrderStatus.COMPLETED.toString());
-        when(orderRepository.save(any(Order.class))).thenReturn(Mono.just(order1));
-        when(orderItemRepository.findByOrderId(anyLong())).thenReturn(Flux.just(orderItem1));
+        when(orderRepository.updateOrderStatus(anyLong(), anyString())).thenReturn(Mono.just(order1));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem1));
 
         Mono<OrderResDto> updatedOrderMono = orderService.updateStatus(orderId, statusUpdateReqDto);
 
@@ -173,9 +255,110 @@ public class OrderServiceTests {
                 .expectNextMatches(updatedOrder -> updatedOrder != null && updatedOrder.getOrderStatus().equals(statusUpdateReqDto.getOrderStatus()))
                 .verifyComplete();
 
-        verify(orderRepository, times(1)).findById(anyLong());
-        verify(orderRepository, times(1)).save(any(Order.class));
-        verify(orderItemRepository, times(1)).findByOrderId(anyLong());
+        verify(orderRepository, times(1)).updateOrderStatus(orderId, OrderStatus.COMPLETED.toString());
+        verify(orderRepository, never()).findById(anyLong());
+        verify(orderRepository, never()).save(any(Order.class));
+        verify(orderItemRepository, times(1)).findAllByOrderIdIn(new Long[]{orderId});
+    }
+
+    @Test
+    public void OrderService_UpdateStatus_ReturnOrderWhenTransitionWasAlreadyMade() {
+        Long orderId = order2.getId();
+        when(orderRepository.updateOrderStatus(anyLong(), anyString())).thenReturn(Mono.empty());
+        when(orderRepository.findById(anyLong())).thenReturn(Mono.just(order2));
+        when(orderItemRepository.findAllByOrderIdIn(any(Long[].class))).thenReturn(Flux.just(orderItem2));
+
+        Mono<OrderResDto> updatedOrderMono = orderService.updateStatus(orderId, statusUpdateReqDto);
+
+        StepVerifier.create(updatedOrderMono)
+                .expectNextMatches(updatedOrder -> updatedOrder.getOrderStatus().equals(OrderStatus.COMPLETED.toString()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void OrderService_UpdateStatus_ThrowInvalidStatusTransitionWhenOrderLeftCreated() {
+        Long orderId = order2.getId();
+        when(orderRepository.updateOrderStatus(anyLong(), anyString())).thenReturn(Mono.empty());
+        when(orderRepository.findById(anyLong())).thenReturn(Mono.just(order2));
+
+        Mono<OrderResDto> updatedOrderMono = orderService.updateStatus(orderId, StatusUpdateReqDto.builder().orderStatus(OrderStatus.FAILED.toString()).build());
+
+        StepVerifier.create(updatedOrderMono)
+                .expectError(InvalidStatusTransitionException.class)
+                .verify();
+
+        verify(orderItemRepository, never()).findAllByOrderIdIn(any(Long[].class));
+    }
+
+    @Test
+    public void OrderService_UpdateStatus_ThrowResourceNotFound() {
+        when(orderRepository.updateOrderStatus(anyLong(), anyString())).thenReturn(Mono.empty());
+        when(orderRepository.findById(anyLong())).thenReturn(Mono.empty());
+
+        Mono<OrderResDto> updatedOrderMono = orderService.updateStatus(99L, statusUpdateReqDto);
+
+        StepVerifier.create(updatedOrderMono)
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    // Mono<Void> transitionStatus(Long id, StatusUpdateReqDto statusUpdateReqDto)
+    @Test
+    public void OrderService_TransitionStatus_UpdateStatusWithoutReadingItems() {
+        Long orderId = order1.getId();
+        when(orderRepository.updateOrderStatus(anyLong(), anyString())).thenReturn(Mono.just(order1));
+
+        Mono<Void> result = orderService.transitionStatus(orderId, statusUpdateReqDto);
+
+        StepVerifier.create(result).verifyComplete();
+
+        verify(orderRepository, times(1)).updateOrderStatus(orderId, OrderStatus.COMPLETED.toString());
+        verifyNoInteractions(orderItemRepository);
+    }
+
+    // void handleStatusUpdates(List<MessageDto> messages)
+    @Test
+    public void OrderService_HandleStatusUpdates_UpdateEachTargetStatusWithOneStatement() {
+        when(orderRepository.updateOrderStatuses(any(Long[].class), anyString()))
+                .thenAnswer(invocation -> Mono.just(((Long[]) invocation.getArgument(0)).length));
+
+        orderService.handleStatusUpdates(List.of(
+                statusMessage("PAYMENT_APPROVED", 1L),
+                statusMessage("PAYMENT_REJECTED", 2L),
+                statusMessage("PAYMENT_APPROVED", 3L),
+                statusMessage("PRODUCT_DEDUCT_FAILED", 4L)
+        ));
+
+        verify(orderRepository, times(1)).updateOrderStatuses(new Long[]{1L, 3L}, OrderStatus.COMPLETED.toString());
+        verify(orderRepository, times(1)).updateOrderStatuses(new Long[]{2L, 4L}, OrderStatus.FAILED.toString());
+        verify(orderRepository, never()).findById(anyLong());
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    public void OrderService_HandleStatusUpdates_KeepLastStatusOfOrderAndSkipMalformedMessages() {
+        when(orderRepository.updateOrderStatuses(any(Long[].class), anyString())).thenReturn(Mono.just(1));
+
+        orderService.handleStatusUpdates(Arrays.asList(
+                statusMessage("PRODUCT_DEDUCT_FAILED", 1L),
+                null,
+                statusMessage("ORDER_CREATED", 2L),
+                statusMessage("PAYMENT_APPROVED", 1L)
+        ));
+
+        verify(orderRepository, times(1)).updateOrderStatuses(new Long[]{1L}, OrderStatus.COMPLETED.toString());
+        verify(orderRepository, times(1)).updateOrderStatuses(any(Long[].class), anyString());
+    }
+
+    @Test
+    public void OrderService_HandleStatusUpdates_ThrowWhenWriteFailsSoPollIsRedelivered() {
+        when(orderRepository.updateOrderStatuses(any(Long[].class), anyString())).thenReturn(Mono.error(new RuntimeException("connection lost")));
+
+        List<MessageDto> messages = List.of(statusMessage("PAYMENT_APPROVED", 1L));
+
+        Assertions.assertThatThrownBy(() -> orderService.handleStatusUpdates(messages))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("connection lost");
     }
 
     // Mono<Void> delete(Long id)
@@ -193,4 +376,11 @@ public class OrderServiceTests {
         verify(orderRepository, times(1)).deleteById(anyLong());
     }
 
+    private MessageDto statusMessage(String status, Long orderId) {
+        return MessageDto.builder()
+                .status(status)
+                .payload(OrderResDto.builder().id(orderId).build())
+                .build();
+    }
+
 }
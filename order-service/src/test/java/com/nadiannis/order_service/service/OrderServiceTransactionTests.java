@@ -0,0 +1,82 @@
+package com.nadiannis.order_service.service;
+
+import com.nadiannis.order_service.config.ConflictRetryConfig;
+import com.nadiannis.order_service.dto.OrderItemReqDto;
+import com.nadiannis.order_service.dto.OrderReqDto;
+import com.nadiannis.order_service.entity.OutboxEvent;
+import com.nadiannis.order_service.repository.OrderItemRepository;
+import com.nadiannis.order_service.repository.OrderRepository;
+import com.nadiannis.order_service.repository.OutboxEventRepository;
+import com.nadiannis.order_service.utils.PaymentMethod;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+
+@DataR2dbcTest
+@Import({OrderService.class, ConflictRetryConfig.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class OrderServiceTransactionTests {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @SpyBean
+    private OutboxEventRepository outboxEventRepository;
+
+    private OrderReqDto orderReqDto;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        outboxEventRepository.deleteAll().block();
+
+        orderReqDto = OrderReqDto.builder()
+                .paymentMethod(PaymentMethod.CASH.toString())
+                .billingAddress("Bekasi")
+                .shippingAddress("Jakarta")
+                .customerId(1L)
+                .orderItems(List.of(OrderItemReqDto.builder().productId(1L).price(100000.0).quantity(10).build()))
+                .build();
+    }
+
+    @Test
+    public void OrderService_Add_WriteOrderItemsAndOutboxEventTogether() {
+        StepVerifier.create(orderService.add(orderReqDto)).expectNextCount(1).verifyComplete();
+
+        Assertions.assertThat(orderRepository.count().block()).isEqualTo(1);
+        Assertions.assertThat(orderItemRepository.count().block()).isEqualTo(1);
+        Assertions.assertThat(outboxEventRepository.findUnsent(10).collectList().block())
+                .singleElement()
+                .satisfies(outboxEvent -> Assertions.assertThat(outboxEvent.getPayload()).contains("ORDER_CREATED"));
+    }
+
+    @Test
+    public void OrderService_Add_RollBackOrderWhenOutboxWriteFails() {
+        doReturn(Mono.error(new RuntimeException("outbox unavailable"))).when(outboxEventRepository).save(any(OutboxEvent.class));
+
+        StepVerifier.create(orderService.add(orderReqDto)).expectError(RuntimeException.class).verify();
+
+        Assertions.assertThat(orderRepository.count().block()).isEqualTo(0);
+        Assertions.assertThat(orderItemRepository.count().block()).isEqualTo(0);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.nadiannis.order_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.order_service.entity.OutboxEvent;
+import com.nadiannis.order_service.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxRelayServiceTests {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private OutboxRelayService outboxRelayService;
+
+    private OutboxEvent outboxEvent1;
+
+    private OutboxEvent outboxEvent2;
+
+    @BeforeEach
+    void setUp() {
+        outboxRelayService = new OutboxRelayService(outboxEventRepository, kafkaTemplate, new ObjectMapper().findAndRegisterModules(), transactionalOperator, 2, Duration.ofMillis(100));
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        outboxEvent1 = OutboxEvent.builder().id(1L).topic("orchestrator").payload("{\"status\":\"ORDER_CREATED\",\"payload\":{\"id\":10}}").build();
+        outboxEvent2 = OutboxEvent.builder().id(2L).topic("orchestrator").payload("{\"status\":\"ORDER_CREATED\",\"payload\":{\"id\":20}}").build();
+    }
+
+    @Test
+    public void OutboxRelayService_RelayPending_SendAndMarkEventsSent() {
+        when(outboxEventRepository.findUnsent(2)).thenReturn(Flux.just(outboxEvent1, outboxEvent2), Flux.empty());
+        when(kafkaTemplate.send(anyString(), anyString(), any(Object.class))).thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        when(outboxEventRepository.markSent(any(Long[].class), any(LocalDateTime.class))).thenReturn(Mono.just(2));
+
+        StepVerifier.create(outboxRelayService.relayPending())
+                .expectNext(2)
+                .verifyComplete();
+
+        verify(kafkaTemplate, times(1)).send(eq("orchestrator"), eq("10"), any(MessageDto.class));
+        verify(kafkaTemplate, times(1)).send(eq("orchestrator"), eq("20"), any(MessageDto.class));
+        verify(outboxEventRepository, times(1)).markSent(eq(new Long[]{1L, 2L}), any(LocalDateTime.class));
+        verify(outboxEventRepository, times(2)).findUnsent(2);
+    }
+
+    @Test
+    public void OutboxRelayService_RelayPending_LeaveFailedEventsUnsent() {
+        when(outboxEventRepository.findUnsent(2)).thenReturn(Flux.just(outboxEvent1, outboxEvent2));
+        when(kafkaTemplate.send(anyString(), anyString(), any(Object.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        when(outboxEventRepository.markSent(any(Long[].class), any(LocalDateTime.class))).thenReturn(Mono.just(1));
+
+        StepVerifier.create(outboxRelayService.relayPending())
+                .expectNext(1)
+                .verifyComplete();
+
+        verify(outboxEventRepository, times(1)).markSent(eq(new Long[]{2L}), any(LocalDateTime.class));
+        verify(outboxEventRepository, times(1)).findUnsent(2);
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.nadiannis.payment_service.config;
+
+import com.nadiannis.common.retry.ConflictRetry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ConflictRetryConfig {
+
+    @Bean
+    public ConflictRetry balanceConflictRetry(
+            @Value("${balance.conflict-retry.max-retries:3}") int maxRetries,
+            @Value("${balance.conflict-retry.min-backoff:10ms}") Duration minBackoff,
+            @Value("${balance.conflict-retry.max-backoff:200ms}") Duration maxBackoff
+    ) {
+        return new ConflictRetry("balance", maxRetries, minBackoff, maxBackoff);
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.nadiannis.payment_service.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+// Only the choreographed saga talks to the payment service over Kafka
+@Configuration
+@ConditionalOnProperty(name = "saga.mode", havingValue = "choreographed")
+public class KafkaTopicConfig {
+
+    @Value("${kafka.topic.payment.partitions:6}")
+    private int paymentTopicPartitions;
+
+    @Value("${kafka.topic.replicas:1}")
+    private int topicReplicas;
+
+    @Bean
+    public NewTopic PaymentTopic() {
+        return TopicBuilder.name("payment").partitions(paymentTopicPartitions).replicas(topicReplicas).build();
+    }
+
+}
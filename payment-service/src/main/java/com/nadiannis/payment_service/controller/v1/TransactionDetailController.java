@@ -2,6 +2,7 @@ package com.nadiannis.payment_service.controller.v1;
 
 import com.nadiannis.common.dto.SuccessResponse;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailRefundReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
 import com.nadiannis.payment_service.dto.TransactionDetailUpdateReqDto;
 import com.nadiannis.payment_service.service.TransactionDetailService;
@@ -90,6 +91,22 @@ public class TransactionDetailController {
         });
     }
 
+    @Operation(summary = "Refund the transaction of an order", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PostMapping("/orders/{orderId}/refund")
+    public Mono<ResponseEntity<?>> refund(@PathVariable Long orderId, @Valid @RequestBody TransactionDetailRefundReqDto body) {
+        return service.refund(orderId, body).map(data -> {
+            String message = "transaction refunded successfully";
+
+            SuccessResponse<TransactionDetailResDto> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
     @Operation(summary = "Delete a transaction by id", responses = {
             @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
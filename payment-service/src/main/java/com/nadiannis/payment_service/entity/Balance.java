@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 @Table(name = "balances")
@@ -21,4 +22,8 @@ public class Balance {
 
     private Long customerId;
 
+    // Bumped by every debit and credit, so saving a balance read before one of them fails instead of overwriting it
+    @Version
+    private Long version;
+
 }
@@ -6,7 +6,7 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
 
 @Repository
-public interface BalanceRepository extends R2dbcRepository<Balance, Long> {
+public interface BalanceRepository extends R2dbcRepository<Balance, Long>, BalanceRepositoryCustom {
 
     Mono<Balance> findByCustomerId(Long customerId);
 
@@ -0,0 +1,14 @@
+package com.nadiannis.payment_service.repository;
+
+import com.nadiannis.payment_service.entity.Balance;
+import reactor.core.publisher.Mono;
+
+public interface BalanceRepositoryCustom {
+
+    // Completes empty when the balance does not exist or its amount is lower than the debited amount
+    Mono<Balance> debitAmount(Long customerId, Double amount);
+
+    // Completes empty when the balance does not exist
+    Mono<Balance> creditAmount(Long customerId, Double amount);
+
+}
@@ -0,0 +1,64 @@
+package com.nadiannis.payment_service.repository;
+
+import com.nadiannis.payment_service.entity.Balance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+public class BalanceRepositoryCustomImpl implements BalanceRepositoryCustom {
+
+    private static final String DEBIT_AMOUNT_SQL = "UPDATE balances SET amount = amount - :amount, version = version + 1 WHERE customer_id = :customerId AND amount >= :amount";
+
+    private static final String CREDIT_AMOUNT_SQL = "UPDATE balances SET amount = amount + :amount, version = version + 1 WHERE customer_id = :customerId";
+
+    private R2dbcEntityTemplate template;
+
+    private DatabaseClient databaseClient;
+
+    private R2dbcConverter converter;
+
+    private boolean returningSupported;
+
+    @Autowired
+    public BalanceRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+        this.databaseClient = template.getDatabaseClient();
+        this.converter = template.getConverter();
+        this.returningSupported = "PostgreSQL".equalsIgnoreCase(databaseClient.getConnectionFactory().getMetadata().getName());
+    }
+
+    @Override
+    public Mono<Balance> debitAmount(Long customerId, Double amount) {
+        return updateAmount(DEBIT_AMOUNT_SQL, customerId, amount);
+    }
+
+    @Override
+    public Mono<Balance> creditAmount(Long customerId, Double amount) {
+        return updateAmount(CREDIT_AMOUNT_SQL, customerId, amount);
+    }
+
+    private Mono<Balance> updateAmount(String sql, Long customerId, Double amount) {
+        if (returningSupported) {
+            return databaseClient.sql(sql + " RETURNING *")
+                    .bind("customerId", customerId)
+                    .bind("amount", amount)
+                    .map((row, metadata) -> converter.read(Balance.class, row, metadata))
+                    .one();
+        }
+
+        // Databases without UPDATE ... RETURNING (H2) keep the guarded UPDATE and read the row back afterwards
+        return databaseClient.sql(sql)
+                .bind("customerId", customerId)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated()
+                .filter(rowsUpdated -> rowsUpdated > 0)
+                .flatMap(rowsUpdated -> template.selectOne(query(where("customerId").is(customerId)), Balance.class));
+    }
+
+}
@@ -1,10 +1,20 @@
 package com.nadiannis.payment_service.repository;
 
 import com.nadiannis.payment_service.entity.TransactionDetail;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
 @Repository
 public interface TransactionDetailRepository extends R2dbcRepository<TransactionDetail, Long> {
 
+    Mono<TransactionDetail> findByOrderId(Long orderId);
+
+    // Guarded by the current status, so of two concurrent transitions only one moves the transaction
+    @Modifying
+    @Query("UPDATE transaction_details SET status = :toStatus WHERE order_id = :orderId AND status = :fromStatus")
+    Mono<Integer> updateStatusByOrderId(Long orderId, String fromStatus, String toStatus);
+
 }
@@ -6,6 +6,7 @@ import com.nadiannis.common.dto.balance.BalanceResDto;
 import com.nadiannis.payment_service.entity.Balance;
 import com.nadiannis.common.exception.ResourceInsufficientException;
 import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.payment_service.repository.BalanceRepository;
 import com.nadiannis.common.utils.AmountUpdateAction;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,9 +19,12 @@ public class BalanceService {
 
     private BalanceRepository repository;
 
+    private ConflictRetry conflictRetry;
+
     @Autowired
-    public BalanceService(BalanceRepository repository) {
+    public BalanceService(BalanceRepository repository, ConflictRetry conflictRetry) {
         this.repository = repository;
+        this.conflictRetry = conflictRetry;
     }
 
     public Flux<BalanceResDto> getAll() {
@@ -29,7 +33,8 @@ public class BalanceService {
 
     public Mono<BalanceResDto> add(BalanceReqDto balanceReqDto) {
         Balance balance = mapToEntity(balanceReqDto);
-        return repository.save(balance).map(newBalance -> mapToResDto(newBalance));
+        // Debits and credits are guarded UPDATEs, so this is the only save of a balance and the one its conflicts are counted on
+        return repository.save(balance).transform(conflictRetry::retry).map(newBalance -> mapToResDto(newBalance));
     }
 
     public Mono<BalanceResDto> getByCustomerId(Long customerId) {
@@ -41,24 +46,22 @@ public class BalanceService {
     }
 
     public Mono<BalanceResDto> updateAmount(Long customerId, AmountUpdateReqDto amountUpdateReqDto) {
-        Mono<Balance> balanceMono = repository
-                .findByCustomerId(customerId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("balance", "customer id", Long.toString(customerId))));
+        Mono<Balance> balanceMono;
+        if (amountUpdateReqDto.getAction().toUpperCase().equals(AmountUpdateAction.DEBIT.toString())) {
+            balanceMono = repository
+                    .debitAmount(customerId, amountUpdateReqDto.getAmount())
+                    .switchIfEmpty(Mono.defer(() -> insufficientAmountOrNotFound(customerId)));
+        } else if (amountUpdateReqDto.getAction().toUpperCase().equals(AmountUpdateAction.CREDIT.toString())) {
+            balanceMono = repository
+                    .creditAmount(customerId, amountUpdateReqDto.getAmount())
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("balance", "customer id", Long.toString(customerId))));
+        } else {
+            balanceMono = repository
+                    .findByCustomerId(customerId)
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("balance", "customer id", Long.toString(customerId))));
+        }
 
-        return balanceMono
-                .flatMap(balance -> {
-                    if (amountUpdateReqDto.getAction().toUpperCase().equals(AmountUpdateAction.DEBIT.toString())) {
-                        if (balance.getAmount() >= amountUpdateReqDto.getAmount()) {
-                            balance.setAmount(balance.getAmount() - amountUpdateReqDto.getAmount());
-                        } else {
-                            return Mono.error(new ResourceInsufficientException("balance", "amount"));
-                        }
-                    } else if (amountUpdateReqDto.getAction().toUpperCase().equals(AmountUpdateAction.CREDIT.toString())) {
-                        balance.setAmount(balance.getAmount() + amountUpdateReqDto.getAmount());
-                    }
-                    return repository.save(balance);
-                })
-                .map(balance -> mapToResDto(balance));
+        return balanceMono.map(balance -> mapToResDto(balance));
     }
 
     public Mono<Void> deleteByCustomerId(Long customerId) {
@@ -69,6 +72,13 @@ public class BalanceService {
         return balanceMono.flatMap(balance -> repository.deleteByCustomerId(balance.getCustomerId()));
     }
 
+    // The debit matched no row, so reading the balance tells a short balance from a customer without one
+    private Mono<Balance> insufficientAmountOrNotFound(Long customerId) {
+        return repository.findByCustomerId(customerId)
+                .flatMap(balance -> Mono.<Balance>error(new ResourceInsufficientException("balance", "amount")))
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("balance", "customer id", Long.toString(customerId))));
+    }
+
     private BalanceResDto mapToResDto(Balance balance) {
         BalanceResDto balanceResDto = new BalanceResDto();
         balanceResDto.setId(balance.getId());
@@ -0,0 +1,61 @@
+package com.nadiannis.payment_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.utils.TransactionDetailStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+// The payment step of the choreographed saga: pays for an order whose stock was deducted. An approved payment
+// completes the order, a rejected one goes back to the product service to give the stock back.
+@Service
+@ConditionalOnProperty(name = "saga.mode", havingValue = "choreographed")
+public class PaymentSagaService {
+
+    private TransactionDetailService transactionDetailService;
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    public PaymentSagaService(TransactionDetailService transactionDetailService, KafkaTemplate<String, Object> kafkaTemplate) {
+        this.transactionDetailService = transactionDetailService;
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    // Blocks the listener thread until the next message is acknowledged by Kafka, so the offset is committed only
+    // after the step is done. A redelivered message is answered with the transaction already settled for the order.
+    @KafkaListener(topics = "payment", groupId = "phincommerce", concurrency = "${payment.listener.concurrency:6}")
+    public void handleSagaEvent(MessageDto messageDto) {
+        if (messageDto.getStatus().equals("PRODUCT_DEDUCTED")) {
+            System.out.println("PRODUCT_DEDUCTED (process to payment): " + messageDto);
+            processPayment(messageDto).block();
+        }
+    }
+
+    public Mono<Void> processPayment(MessageDto messageDto) {
+        TransactionDetailAddReqDto transactionDetailAddReqDto = TransactionDetailAddReqDto.builder()
+                .orderId(messageDto.getPayload().getId())
+                .customerId(messageDto.getPayload().getCustomerId())
+                .amount(messageDto.getPayload().getTotalAmount())
+                .mode(messageDto.getPayload().getPaymentMethod())
+                .build();
+
+        return transactionDetailService.add(transactionDetailAddReqDto).flatMap(transactionDetailResDto -> {
+            if (transactionDetailResDto.getStatus().equals(TransactionDetailStatus.APPROVED.toString())) {
+                return send("order", messageDto, "PAYMENT_APPROVED");
+            }
+            return send("product", messageDto, "PAYMENT_REJECTED");
+        });
+    }
+
+    private Mono<Void> send(String topic, MessageDto messageDto, String status) {
+        MessageDto nextMessageDto = MessageDto.builder().status(status).payload(messageDto.getPayload()).build();
+        // Keyed by order id, so every message of an order lands on the same partition and stays in order
+        return Mono.fromFuture(() -> kafkaTemplate.send(topic, Long.toString(messageDto.getPayload().getId()), nextMessageDto)).then();
+    }
+
+}
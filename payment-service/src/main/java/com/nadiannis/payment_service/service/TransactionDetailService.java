@@ -2,6 +2,7 @@ package com.nadiannis.payment_service.service;
 
 import com.nadiannis.common.dto.balance.AmountUpdateReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailRefundReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
 import com.nadiannis.common.utils.AmountUpdateAction;
 import com.nadiannis.common.utils.TransactionDetailStatus;
@@ -9,48 +10,63 @@ import com.nadiannis.payment_service.dto.TransactionDetailUpdateReqDto;
 import com.nadiannis.payment_service.entity.TransactionDetail;
 import com.nadiannis.common.exception.ResourceNotFoundException;
 import com.nadiannis.payment_service.repository.TransactionDetailRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.UUID;
 
 @Service
 public class TransactionDetailService {
 
+    private static final int RECENT_TRANSACTION_DETAILS_MAXIMUM_SIZE = 10000;
+
+    private static final Duration RECENT_TRANSACTION_DETAILS_EXPIRE_AFTER_WRITE = Duration.ofMinutes(10);
+
     private TransactionDetailRepository repository;
 
     private BalanceService balanceService;
 
+    private TransactionalOperator transactionalOperator;
+
+    // Recently settled orders, so saga retries and Kafka redeliveries are answered without touching the database
+    private Cache<Long, TransactionDetailResDto> recentTransactionDetails;
+
     @Autowired
-    public TransactionDetailService(TransactionDetailRepository repository, BalanceService balanceService) {
+    public TransactionDetailService(TransactionDetailRepository repository, BalanceService balanceService, TransactionalOperator transactionalOperator) {
         this.repository = repository;
         this.balanceService = balanceService;
+        this.transactionalOperator = transactionalOperator;
+        this.recentTransactionDetails = Caffeine.newBuilder()
+                .maximumSize(RECENT_TRANSACTION_DETAILS_MAXIMUM_SIZE)
+                .expireAfterWrite(RECENT_TRANSACTION_DETAILS_EXPIRE_AFTER_WRITE)
+                .build();
     }
 
     public Flux<TransactionDetailResDto> getAll() {
         return repository.findAll().map(transactionDetail -> mapToResDto(transactionDetail));
     }
 
+    // Replays for an order that already has a transaction return that transaction and leave the balance untouched
     public Mono<TransactionDetailResDto> add(TransactionDetailAddReqDto transactionDetailAddReqDto) {
-        return balanceService.updateAmount(
-                transactionDetailAddReqDto.getCustomerId(),
-                AmountUpdateReqDto.builder()
-                        .action(AmountUpdateAction.DEBIT.toString())
-                        .amount(transactionDetailAddReqDto.getAmount())
-                        .build()
-        ).flatMap(balanceResDto -> {
-            TransactionDetail transactionDetail = mapFromAddReqDtoToEntity(transactionDetailAddReqDto);
-            transactionDetail.setReferenceNumber(UUID.randomUUID().toString());
-            transactionDetail.setStatus(TransactionDetailStatus.APPROVED.toString());
-            return repository.save(transactionDetail).map(newTransactionDetail -> mapToResDto(newTransactionDetail));
-        }).onErrorResume(error -> {
-            TransactionDetail transactionDetail = mapFromAddReqDtoToEntity(transactionDetailAddReqDto);
-            transactionDetail.setReferenceNumber(UUID.randomUUID().toString());
-            transactionDetail.setStatus(TransactionDetailStatus.REJECTED.toString());
-            return repository.save(transactionDetail).map(newTransactionDetail -> mapToResDto(newTransactionDetail));
-        });
+        Long orderId = transactionDetailAddReqDto.getOrderId();
+        TransactionDetailResDto recentTransactionDetailResDto = recentTransactionDetails.getIfPresent(orderId);
+        if (recentTransactionDetailResDto != null) {
+            return Mono.just(recentTransactionDetailResDto);
+        }
+
+        return repository.findByOrderId(orderId)
+                .switchIfEmpty(Mono.defer(() -> transactionalOperator.transactional(debitAndSave(transactionDetailAddReqDto))))
+                // A concurrent request for the same order won the unique order_id, and its debit was rolled back with this insert
+                .onErrorResume(DuplicateKeyException.class, error -> repository.findByOrderId(orderId))
+                .map(transactionDetail -> mapToResDto(transactionDetail))
+                .doOnNext(transactionDetailResDto -> recentTransactionDetails.put(orderId, transactionDetailResDto));
     }
 
     public Mono<TransactionDetailResDto> getById(Long id) {
@@ -68,6 +84,7 @@ public class TransactionDetailService {
 
         return transactionDetailMono
                 .flatMap(transactionDetail -> {
+                    recentTransactionDetails.invalidate(transactionDetail.getOrderId());
                     transactionDetail.setOrderId(transactionDetailUpdateReqDto.getOrderId());
                     transactionDetail.setAmount(transactionDetailUpdateReqDto.getAmount());
                     transactionDetail.setMode(transactionDetailUpdateReqDto.getMode().toUpperCase());
@@ -79,7 +96,8 @@ public class TransactionDetailService {
                     }
                     return repository.save(transactionDetail);
                 })
-                .map(transactionDetail -> mapToResDto(transactionDetail));
+                .map(transactionDetail -> mapToResDto(transactionDetail))
+                .doOnNext(transactionDetailResDto -> recentTransactionDetails.invalidate(transactionDetailResDto.getOrderId()));
     }
 
     public Mono<Void> delete(Long id) {
@@ -87,7 +105,47 @@ public class TransactionDetailService {
                 .findById(id)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("transaction", "id", Long.toString(id))));
 
-        return transactionDetailMono.flatMap(transactionDetail -> repository.deleteById(transactionDetail.getId()));
+        return transactionDetailMono.flatMap(transactionDetail -> repository
+                .deleteById(transactionDetail.getId())
+                .doOnSuccess(deleted -> recentTransactionDetails.invalidate(transactionDetail.getOrderId())));
+    }
+
+    // Credits an approved transaction back and marks it REFUNDED in one transaction. Refunding again, or refunding a
+    // rejected transaction that never debited the balance, leaves the balance untouched.
+    public Mono<TransactionDetailResDto> refund(Long orderId, TransactionDetailRefundReqDto transactionDetailRefundReqDto) {
+        Mono<TransactionDetail> refunded = repository
+                .findByOrderId(orderId)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("transaction", "order id", Long.toString(orderId))))
+                .flatMap(transactionDetail -> repository
+                        .updateStatusByOrderId(orderId, TransactionDetailStatus.APPROVED.toString(), TransactionDetailStatus.REFUNDED.toString())
+                        .filter(rowsUpdated -> rowsUpdated > 0)
+                        .flatMap(rowsUpdated -> balanceService.updateAmount(
+                                transactionDetailRefundReqDto.getCustomerId(),
+                                AmountUpdateReqDto.builder()
+                                        .action(AmountUpdateAction.CREDIT.toString())
+                                        .amount(transactionDetail.getAmount())
+                                        .build()
+                        ))
+                        .then(repository.findByOrderId(orderId)));
+
+        return transactionalOperator.transactional(refunded)
+                .map(transactionDetail -> mapToResDto(transactionDetail))
+                .doOnNext(transactionDetailResDto -> recentTransactionDetails.invalidate(orderId));
+    }
+
+    private Mono<TransactionDetail> debitAndSave(TransactionDetailAddReqDto transactionDetailAddReqDto) {
+        return balanceService.updateAmount(
+                transactionDetailAddReqDto.getCustomerId(),
+                AmountUpdateReqDto.builder()
+                        .action(AmountUpdateAction.DEBIT.toString())
+                        .amount(transactionDetailAddReqDto.getAmount())
+                        .build()
+        ).map(balanceResDto -> TransactionDetailStatus.APPROVED).onErrorReturn(TransactionDetailStatus.REJECTED).flatMap(status -> {
+            TransactionDetail transactionDetail = mapFromAddReqDtoToEntity(transactionDetailAddReqDto);
+            transactionDetail.setReferenceNumber(UUID.randomUUID().toString());
+            transactionDetail.setStatus(status.toString());
+            return repository.save(transactionDetail);
+        });
     }
 
     private TransactionDetailResDto mapToResDto(TransactionDetail transactionDetail) {
@@ -8,8 +8,14 @@ CREATE TABLE IF NOT EXISTS transaction_details (
     payment_date TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
 );
 
+CREATE UNIQUE INDEX IF NOT EXISTS transaction_details_order_id_key ON transaction_details (order_id);
+
 CREATE TABLE IF NOT EXISTS balances (
     id BIGSERIAL PRIMARY KEY,
     amount FLOAT8 NOT NULL,
-    customer_id BIGINT NOT NULL UNIQUE
+    customer_id BIGINT NOT NULL UNIQUE,
+    version BIGINT NOT NULL DEFAULT 0
 );
+
+-- Tables created before optimistic locking get the column too, every existing row starting at version 0
+ALTER TABLE balances ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -1,6 +1,7 @@
 package com.nadiannis.payment_service.controller.v1;
 
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailRefundReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
 import com.nadiannis.common.utils.Mode;
 import com.nadiannis.common.utils.TransactionDetailStatus;
@@ -173,6 +174,29 @@ public class TransactionDetailControllerTests {
         verify(transactionDetailService, times(1)).update(anyLong(), any(TransactionDetailUpdateReqDto.class));
     }
 
+    // @PostMapping("/orders/{orderId}/refund")
+    // public Mono<ResponseEntity<?>> refund(@PathVariable Long orderId, @Valid @RequestBody TransactionDetailRefundReqDto body)
+    @Test
+    public void TransactionDetailController_Refund_ReturnTransactionDetailResDto() {
+        Long orderId = transactionDetailResDto1.getOrderId();
+        transactionDetailResDto1.setStatus(TransactionDetailStatus.REFUNDED.toString());
+        TransactionDetailRefundReqDto transactionDetailRefundReqDto = TransactionDetailRefundReqDto.builder().customerId(1L).build();
+        when(transactionDetailService.refund(anyLong(), any(TransactionDetailRefundReqDto.class))).thenReturn(Mono.just(transactionDetailResDto1));
+
+        webTestClient.post().uri("/api/v1/transactions/orders/" + orderId + "/refund")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(transactionDetailRefundReqDto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.message").isEqualTo("transaction refunded successfully")
+                .jsonPath("$.data.order_id").isEqualTo(orderId)
+                .jsonPath("$.data.status").isEqualTo(TransactionDetailStatus.REFUNDED.toString());
+
+        verify(transactionDetailService, times(1)).refund(orderId, transactionDetailRefundReqDto);
+    }
+
     // @DeleteMapping("/{id}")
     // public Mono<ResponseEntity<?>> delete(@PathVariable Long id)
     @Test
@@ -6,11 +6,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @DataR2dbcTest
 public class BalanceRepositoryTests {
@@ -85,4 +87,80 @@ public class BalanceRepositoryTests {
                 .verifyComplete();
     }
 
+    // Mono<Balance> debitAmount(customerId, amount)
+    @Test
+    public void BalanceRepository_DebitAmount_ReturnBalanceWithDebitedAmount() {
+        repository.save(balance1).block();
+
+        Mono<Balance> balanceMono = repository.debitAmount(balance1.getCustomerId(), 100000.0);
+
+        StepVerifier.create(balanceMono)
+                .expectNextMatches(balance -> balance.getAmount().equals(900000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void BalanceRepository_DebitAmount_ReturnEmptyWhenAmountIsInsufficient() {
+        repository.save(balance1).block();
+
+        Mono<Balance> balanceMono = repository.debitAmount(balance1.getCustomerId(), 1000001.0);
+
+        StepVerifier.create(balanceMono).verifyComplete();
+        StepVerifier.create(repository.findByCustomerId(balance1.getCustomerId()))
+                .expectNextMatches(balance -> balance.getAmount().equals(1000000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void BalanceRepository_DebitAmountConcurrently_NeverOverdraw() {
+        repository.save(balance1).block();
+        int debits = 5000;
+        AtomicInteger succeeded = new AtomicInteger();
+
+        Flux<Balance> debitsFlux = Flux.range(0, debits)
+                .flatMap(i -> repository.debitAmount(balance1.getCustomerId(), 10000.0)
+                        .doOnNext(balance -> succeeded.incrementAndGet()), 256);
+
+        StepVerifier.create(debitsFlux.then(repository.findByCustomerId(balance1.getCustomerId())))
+                .assertNext(balance -> {
+                    Assertions.assertThat(succeeded.get()).isEqualTo(100);
+                    Assertions.assertThat(balance.getAmount()).isEqualTo(0.0);
+                })
+                .verifyComplete();
+    }
+
+    // Mono<Balance> creditAmount(customerId, amount)
+    @Test
+    public void BalanceRepository_CreditAmount_ReturnBalanceWithCreditedAmount() {
+        repository.save(balance1).block();
+
+        Mono<Balance> balanceMono = repository.creditAmount(balance1.getCustomerId(), 100000.0);
+
+        StepVerifier.create(balanceMono)
+                .expectNextMatches(balance -> balance.getAmount().equals(1100000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void BalanceRepository_CreditAmount_ReturnEmptyWhenBalanceDoesNotExist() {
+        Mono<Balance> balanceMono = repository.creditAmount(99L, 100000.0);
+
+        StepVerifier.create(balanceMono).verifyComplete();
+    }
+
+    // Mono<Balance> save(balance) with @Version
+    @Test
+    public void BalanceRepository_Save_ThrowOptimisticLockingFailureExceptionForStaleBalance() {
+        repository.save(balance1).block();
+        Balance staleBalance = repository.findByCustomerId(balance1.getCustomerId()).block();
+        repository.debitAmount(balance1.getCustomerId(), 100000.0).block();
+
+        staleBalance.setAmount(2000000.0);
+
+        StepVerifier.create(repository.save(staleBalance))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        Assertions.assertThat(repository.findByCustomerId(balance1.getCustomerId()).block().getAmount()).isEqualTo(900000.0);
+    }
+
 }
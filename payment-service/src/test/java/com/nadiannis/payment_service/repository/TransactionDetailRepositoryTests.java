@@ -8,6 +8,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.dao.DuplicateKeyException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -94,4 +95,28 @@ public class TransactionDetailRepositoryTests {
                 .verifyComplete();
     }
 
+    // Mono<TransactionDetail> findByOrderId(orderId)
+    @Test
+    public void TransactionDetailRepository_FindByOrderId_ReturnTransactionDetail() {
+        repository.saveAll(Flux.just(transactionDetail1, transactionDetail2)).blockLast();
+
+        Mono<TransactionDetail> transactionDetailMono = repository.findByOrderId(transactionDetail2.getOrderId());
+
+        StepVerifier.create(transactionDetailMono)
+                .expectNextMatches(transactionDetail -> transactionDetail.getId().equals(transactionDetail2.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void TransactionDetailRepository_Save_RejectSecondTransactionDetailForOrder() {
+        repository.save(transactionDetail1).block();
+        transactionDetail2.setOrderId(transactionDetail1.getOrderId());
+
+        Mono<TransactionDetail> savedTransactionDetailMono = repository.save(transactionDetail2);
+
+        StepVerifier.create(savedTransactionDetailMono)
+                .expectError(DuplicateKeyException.class)
+                .verify();
+    }
+
 }
@@ -4,6 +4,9 @@ import com.nadiannis.common.dto.balance.AmountUpdateReqDto;
 import com.nadiannis.common.dto.balance.BalanceResDto;
 import com.nadiannis.common.utils.AmountUpdateAction;
 import com.nadiannis.payment_service.dto.BalanceReqDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.payment_service.entity.Balance;
 import com.nadiannis.payment_service.repository.BalanceRepository;
 import org.assertj.core.api.Assertions;
@@ -12,11 +15,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -27,6 +32,9 @@ public class BalanceServiceTests {
     @Mock
     private BalanceRepository balanceRepository;
 
+    @Spy
+    private ConflictRetry conflictRetry = new ConflictRetry("balance", 3, Duration.ofMillis(1), Duration.ofMillis(5));
+
     @InjectMocks
     private BalanceService balanceService;
 
@@ -96,8 +104,8 @@ public class BalanceServiceTests {
     public void BalanceService_DebitAmount_DebitAmountAndReturnBalanceResDto() {
         Long customerId = balance1.getCustomerId();
         Double updatedAmount = balance1.getAmount() - amountUpdateReqDto1.getAmount();
-        when(balanceRepository.findByCustomerId(anyLong())).thenReturn(Mono.just(balance1));
-        when(balanceRepository.save(any(Balance.class))).thenReturn(Mono.just(balance1));
+        Balance debitedBalance = Balance.builder().id(balance1.getId()).amount(updatedAmount).customerId(customerId).build();
+        when(balanceRepository.debitAmount(customerId, amountUpdateReqDto1.getAmount())).thenReturn(Mono.just(debitedBalance));
 
         Mono<BalanceResDto> updatedBalanceMono = balanceService.updateAmount(customerId, amountUpdateReqDto1);
 
@@ -105,16 +113,42 @@ public class BalanceServiceTests {
                 .expectNextMatches(updatedBalance -> updatedBalance != null && updatedBalance.getAmount().equals(updatedAmount))
                 .verifyComplete();
 
-        verify(balanceRepository, times(1)).findByCustomerId(anyLong());
-        verify(balanceRepository, times(1)).save(any(Balance.class));
+        verify(balanceRepository, times(1)).debitAmount(customerId, amountUpdateReqDto1.getAmount());
+        verify(balanceRepository, never()).findByCustomerId(anyLong());
+        verify(balanceRepository, never()).save(any(Balance.class));
+    }
+
+    @Test
+    public void BalanceService_DebitAmount_ReturnResourceInsufficientException() {
+        Long customerId = balance1.getCustomerId();
+        when(balanceRepository.debitAmount(anyLong(), anyDouble())).thenReturn(Mono.empty());
+        when(balanceRepository.findByCustomerId(anyLong())).thenReturn(Mono.just(balance1));
+
+        Mono<BalanceResDto> updatedBalanceMono = balanceService.updateAmount(customerId, amountUpdateReqDto1);
+
+        StepVerifier.create(updatedBalanceMono)
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+    }
+
+    @Test
+    public void BalanceService_DebitAmount_ReturnResourceNotFoundException() {
+        when(balanceRepository.debitAmount(anyLong(), anyDouble())).thenReturn(Mono.empty());
+        when(balanceRepository.findByCustomerId(anyLong())).thenReturn(Mono.empty());
+
+        Mono<BalanceResDto> updatedBalanceMono = balanceService.updateAmount(99L, amountUpdateReqDto1);
+
+        StepVerifier.create(updatedBalanceMono)
+                .expectError(ResourceNotFoundException.class)
+                .verify();
     }
 
     @Test
     public void BalanceService_CreditAmount_CreditAmountAndReturnBalanceResDto() {
         Long customerId = balance1.getCustomerId();
         Double updatedAmount = balance1.getAmount() + amountUpdateReqDto2.getAmount();
-        when(balanceRepository.findByCustomerId(anyLong())).thenReturn(Mono.just(balance1));
-        when(balanceRepository.save(any(Balance.class))).thenReturn(Mono.just(balance1));
+        Balance creditedBalance = Balance.builder().id(balance1.getId()).amount(updatedAmount).customerId(customerId).build();
+        when(balanceRepository.creditAmount(customerId, amountUpdateReqDto2.getAmount())).thenReturn(Mono.just(creditedBalance));
 
         Mono<BalanceResDto> updatedBalanceMono = balanceService.updateAmount(customerId, amountUpdateReqDto2);
 
@@ -122,8 +156,8 @@ public class BalanceServiceTests {
                 .expectNextMatches(updatedBalance -> updatedBalance != null && updatedBalance.getAmount().equals(updatedAmount))
                 .verifyComplete();
 
-        verify(balanceRepository, times(1)).findByCustomerId(anyLong());
-        verify(balanceRepository, times(1)).save(any(Balance.class));
+        verify(balanceRepository, times(1)).creditAmount(customerId, amountUpdateReqDto2.getAmount());
+        verify(balanceRepository, never()).save(any(Balance.class));
     }
 
     // Mono<Void> deleteByCustomerId(Long customerId)
@@ -0,0 +1,92 @@
+package com.nadiannis.payment_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
+import com.nadiannis.common.utils.TransactionDetailStatus;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PaymentSagaServiceTests {
+
+    @Mock
+    private TransactionDetailService transactionDetailService;
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    private PaymentSagaService paymentSagaService;
+
+    private MessageDto messageDto;
+
+    @BeforeEach
+    void setUp() {
+        paymentSagaService = new PaymentSagaService(transactionDetailService, kafkaTemplate);
+
+        OrderResDto orderResDto = OrderResDto.builder()
+                .id(7L)
+                .customerId(1L)
+                .totalAmount(300000.0)
+                .paymentMethod("BANK_TRANSFER")
+                .build();
+        messageDto = MessageDto.builder().status("PRODUCT_DEDUCTED").payload(orderResDto).build();
+    }
+
+    // Mono<Void> processPayment(MessageDto messageDto)
+
+    @Test
+    public void PaymentSagaService_ProcessPayment_SendPaymentApprovedToOrder() {
+        when(transactionDetailService.add(any(TransactionDetailAddReqDto.class))).thenReturn(Mono.just(transactionDetailResDto(TransactionDetailStatus.APPROVED)));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(paymentSagaService.processPayment(messageDto)).verifyComplete();
+
+        ArgumentCaptor<TransactionDetailAddReqDto> addCaptor = ArgumentCaptor.forClass(TransactionDetailAddReqDto.class);
+        verify(transactionDetailService).add(addCaptor.capture());
+        Assertions.assertThat(addCaptor.getValue().getOrderId()).isEqualTo(7L);
+        Assertions.assertThat(addCaptor.getValue().getAmount()).isEqualTo(300000.0);
+
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("order"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PAYMENT_APPROVED");
+    }
+
+    @Test
+    public void PaymentSagaService_ProcessPayment_SendPaymentRejectedToProduct() {
+        when(transactionDetailService.add(any(TransactionDetailAddReqDto.class))).thenReturn(Mono.just(transactionDetailResDto(TransactionDetailStatus.REJECTED)));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(paymentSagaService.processPayment(messageDto)).verifyComplete();
+
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("product"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PAYMENT_REJECTED");
+        verify(kafkaTemplate, never()).send(eq("order"), anyString(), any());
+    }
+
+    private TransactionDetailResDto transactionDetailResDto(TransactionDetailStatus status) {
+        return TransactionDetailResDto.builder()
+                .id(1L)
+                .orderId(7L)
+                .amount(300000.0)
+                .mode("BANK_TRANSFER")
+                .status(status.toString())
+                .build();
+    }
+
+}
@@ -4,6 +4,7 @@ import com.nadiannis.common.dto.balance.AmountUpdateReqDto;
 import com.nadiannis.common.dto.balance.BalanceResDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
 import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
 import com.nadiannis.common.utils.Mode;
 import com.nadiannis.common.utils.TransactionDetailStatus;
 import com.nadiannis.payment_service.dto.TransactionDetailUpdateReqDto;
@@ -16,6 +17,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -34,6 +37,9 @@ public class TransactionDetailServiceTests {
     @Mock
     private BalanceService balanceService;
 
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
     @InjectMocks
     private TransactionDetailService transactionDetailService;
 
@@ -97,6 +103,8 @@ public class TransactionDetailServiceTests {
     // Mono<TransactionDetailResDto> add(TransactionDetailAddReqDto transactionDetailAddReqDto)
     @Test
     public void TransactionDetailService_Add_SaveAndReturnTransactionDetailResDto() {
+        when(transactionDetailRepository.findByOrderId(anyLong())).thenReturn(Mono.empty());
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(balanceService.updateAmount(anyLong(), any(AmountUpdateReqDto.class))).thenReturn(Mono.just(balanceResDto));
         when(transactionDetailRepository.save(any(TransactionDetail.class))).thenReturn(Mono.just(transactionDetail1));
 
@@ -117,6 +125,65 @@ public class TransactionDetailServiceTests {
         verify(transactionDetailRepository, times(1)).save(any(TransactionDetail.class));
     }
 
+    @Test
+    public void TransactionDetailService_Add_SaveRejectedTransactionWhenDebitFails() {
+        when(transactionDetailRepository.findByOrderId(anyLong())).thenReturn(Mono.empty());
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(balanceService.updateAmount(anyLong(), any(AmountUpdateReqDto.class))).thenReturn(Mono.error(new ResourceInsufficientException("balance", "amount")));
+        when(transactionDetailRepository.save(any(TransactionDetail.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        Mono<TransactionDetailResDto> savedTransactionDetailMono = transactionDetailService.add(transactionDetailAddReqDto);
+
+        StepVerifier.create(savedTransactionDetailMono)
+                .expectNextMatches(savedTransactionDetail -> savedTransactionDetail.getStatus().equals(TransactionDetailStatus.REJECTED.toString()))
+                .verifyComplete();
+
+        verify(transactionDetailRepository, times(1)).save(any(TransactionDetail.class));
+    }
+
+    @Test
+    public void TransactionDetailService_Add_ReturnExistingTransactionDetailResDtoOnReplay() {
+        when(transactionDetailRepository.findByOrderId(transactionDetailAddReqDto.getOrderId())).thenReturn(Mono.just(transactionDetail1));
+
+        Mono<TransactionDetailResDto> transactionDetailMono = transactionDetailService.add(transactionDetailAddReqDto);
+
+        StepVerifier.create(transactionDetailMono)
+                .expectNextMatches(transactionDetail -> transactionDetail.getId().equals(transactionDetail1.getId()))
+                .verifyComplete();
+
+        verify(balanceService, never()).updateAmount(anyLong(), any(AmountUpdateReqDto.class));
+        verify(transactionDetailRepository, never()).save(any(TransactionDetail.class));
+    }
+
+    @Test
+    public void TransactionDetailService_Add_ReturnRecentTransactionDetailResDtoWithoutQuery() {
+        when(transactionDetailRepository.findByOrderId(transactionDetailAddReqDto.getOrderId())).thenReturn(Mono.just(transactionDetail1));
+
+        transactionDetailService.add(transactionDetailAddReqDto).block();
+        Mono<TransactionDetailResDto> transactionDetailMono = transactionDetailService.add(transactionDetailAddReqDto);
+
+        StepVerifier.create(transactionDetailMono)
+                .expectNextMatches(transactionDetail -> transactionDetail.getId().equals(transactionDetail1.getId()))
+                .verifyComplete();
+
+        verify(transactionDetailRepository, times(1)).findByOrderId(anyLong());
+    }
+
+    @Test
+    public void TransactionDetailService_Add_ReturnWinningTransactionDetailResDtoOnDuplicateKey() {
+        when(transactionDetailRepository.findByOrderId(anyLong())).thenReturn(Mono.empty(), Mono.just(transactionDetail1));
+        when(balanceService.updateAmount(anyLong(), any(AmountUpdateReqDto.class))).thenReturn(Mono.just(balanceResDto));
+        when(transactionalOperator.transactional(any(Mono.class))).thenReturn(Mono.error(new DuplicateKeyException("order_id")));
+
+        Mono<TransactionDetailResDto> transactionDetailMono = transactionDetailService.add(transactionDetailAddReqDto);
+
+        StepVerifier.create(transactionDetailMono)
+                .expectNextMatches(transactionDetail -> transactionDetail.getId().equals(transactionDetail1.getId()))
+                .verifyComplete();
+
+        verify(transactionDetailRepository, times(2)).findByOrderId(anyLong());
+    }
+
     // Mono<TransactionDetailResDto> getById(Long id)
     @Test
     public void TransactionDetailService_GetById_ReturnTransactionDetailResDto() {
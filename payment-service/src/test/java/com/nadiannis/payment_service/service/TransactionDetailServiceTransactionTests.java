@@ -0,0 +1,84 @@
+package com.nadiannis.payment_service.service;
+
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailAddReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailRefundReqDto;
+import com.nadiannis.common.dto.transactiondetail.TransactionDetailResDto;
+import com.nadiannis.common.utils.Mode;
+import com.nadiannis.common.utils.TransactionDetailStatus;
+import com.nadiannis.payment_service.config.ConflictRetryConfig;
+import com.nadiannis.payment_service.entity.Balance;
+import com.nadiannis.payment_service.repository.BalanceRepository;
+import com.nadiannis.payment_service.repository.TransactionDetailRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+@DataR2dbcTest
+@Import({TransactionDetailService.class, BalanceService.class, ConflictRetryConfig.class})
+public class TransactionDetailServiceTransactionTests {
+
+    @Autowired
+    private TransactionDetailService transactionDetailService;
+
+    @Autowired
+    private TransactionDetailRepository transactionDetailRepository;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    private TransactionDetailAddReqDto transactionDetailAddReqDto;
+
+    @BeforeEach
+    void setUp() {
+        transactionDetailRepository.deleteAll().block();
+        balanceRepository.deleteAll().block();
+        balanceRepository.save(Balance.builder().amount(1000000.0).customerId(1L).build()).block();
+
+        transactionDetailAddReqDto = TransactionDetailAddReqDto.builder()
+                .orderId(1L)
+                .customerId(1L)
+                .amount(100000.0)
+                .mode(Mode.CASH.toString())
+                .build();
+    }
+
+    @Test
+    public void TransactionDetailService_AddConcurrently_DebitBalanceOnce() {
+        Flux<TransactionDetailResDto> addsFlux = Flux.range(0, 20)
+                .flatMap(i -> transactionDetailService.add(transactionDetailAddReqDto), 20);
+
+        StepVerifier.create(addsFlux.collectList())
+                .assertNext(transactionDetails -> {
+                    Assertions.assertThat(transactionDetails.size()).isEqualTo(20);
+                    Assertions.assertThat(transactionDetails).extracting(TransactionDetailResDto::getId).containsOnly(transactionDetails.get(0).getId());
+                    Assertions.assertThat(transactionDetails).extracting(TransactionDetailResDto::getStatus).containsOnly(TransactionDetailStatus.APPROVED.toString());
+                })
+                .verifyComplete();
+
+        Assertions.assertThat(transactionDetailRepository.count().block()).isEqualTo(1);
+        Assertions.assertThat(balanceRepository.findByCustomerId(1L).block().getAmount()).isEqualTo(900000.0);
+    }
+
+    @Test
+    public void TransactionDetailService_RefundTwice_CreditBalanceOnce() {
+        // An order of its own, since the service remembers the transactions it recently added
+        transactionDetailAddReqDto.setOrderId(2L);
+        transactionDetailService.add(transactionDetailAddReqDto).block();
+        TransactionDetailRefundReqDto transactionDetailRefundReqDto = TransactionDetailRefundReqDto.builder().customerId(1L).build();
+
+        StepVerifier.create(transactionDetailService.refund(2L, transactionDetailRefundReqDto)
+                        .then(transactionDetailService.refund(2L, transactionDetailRefundReqDto)))
+                .assertNext(transactionDetail -> Assertions.assertThat(transactionDetail.getStatus()).isEqualTo(TransactionDetailStatus.REFUNDED.toString()))
+                .verifyComplete();
+
+        Assertions.assertThat(balanceRepository.findByCustomerId(1L).block().getAmount()).isEqualTo(1000000.0);
+    }
+
+}
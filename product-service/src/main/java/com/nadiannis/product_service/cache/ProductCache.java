@@ -0,0 +1,54 @@
+package com.nadiannis.product_service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nadiannis.common.dto.product.ProductResDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Registered as a MeterBinder so hits, misses and evictions show up under /actuator/metrics/cache.*
+@Component
+public class ProductCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "products";
+
+    private Cache<Long, ProductResDto> cache;
+
+    @Autowired
+    public ProductCache(
+            @Value("${product.cache.maximum-size:10000}") long maximumSize,
+            @Value("${product.cache.expire-after-write:60s}") Duration expireAfterWrite
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<ProductResDto> get(Long id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    // Only reads fill the cache and writes invalidate it, so a value already cached is never replaced by an older read
+    public void putIfAbsent(ProductResDto productResDto) {
+        cache.asMap().putIfAbsent(productResDto.getId(), productResDto);
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+}
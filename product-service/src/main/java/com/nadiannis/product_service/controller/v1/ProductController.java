@@ -1,5 +1,8 @@
 package com.nadiannis.product_service.controller.v1;
 
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductBatchResDto;
+import com.nadiannis.product_service.dto.ProductIdsReqDto;
 import com.nadiannis.product_service.dto.ProductReqDto;
 import com.nadiannis.common.dto.product.ProductResDto;
 import com.nadiannis.common.dto.product.QuantityUpdateReqDto;
@@ -29,12 +32,16 @@ public class ProductController {
         this.service = service;
     }
 
-    @Operation(summary = "Get all products", responses = {
+    @Operation(summary = "Get all products, or only the products with the given ids", responses = {
             @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
     })
     @GetMapping
-    public Mono<ResponseEntity<?>> getAll() {
+    public Mono<ResponseEntity<?>> getAll(@RequestParam(required = false) List<Long> ids) {
+        if (ids != null) {
+            return getBatchByIds(ids);
+        }
+
         Mono<List<ProductResDto>> productsMono = service.getAll().collectList();
         return productsMono.map(data -> {
             String message = "products retrieved successfully";
@@ -44,6 +51,16 @@ public class ProductController {
         });
     }
 
+    @Operation(summary = "Get products by a list of ids", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<?>> getBatch(@Valid @RequestBody ProductIdsReqDto body) {
+        return getBatchByIds(body.getIds());
+    }
+
     @Operation(summary = "Add a new product", responses = {
             @ApiResponse(responseCode = "201", description = "Created", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
@@ -106,6 +123,23 @@ public class ProductController {
         });
     }
 
+    @Operation(summary = "Update quantities of several products at once", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PatchMapping("/quantities")
+    public Mono<ResponseEntity<?>> updateQuantities(@Valid @RequestBody BulkQuantityUpdateReqDto body) {
+        Mono<List<ProductResDto>> productsMono = service.updateQuantities(body).collectList();
+        return productsMono.map(data -> {
+            String message = "product quantities updated successfully";
+
+            SuccessResponse<List<ProductResDto>> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
     @Operation(summary = "Delete a product by id", responses = {
             @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
             @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
@@ -123,4 +157,13 @@ public class ProductController {
                 }));
     }
 
+    private Mono<ResponseEntity<?>> getBatchByIds(List<Long> ids) {
+        return service.getBatchByIds(ids).map(data -> {
+            String message = "products retrieved successfully";
+
+            SuccessResponse<ProductBatchResDto> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
 }
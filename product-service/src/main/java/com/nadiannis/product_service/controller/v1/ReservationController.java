@@ -0,0 +1,97 @@
+package com.nadiannis.product_service.controller.v1;
+
+import com.nadiannis.common.dto.SuccessResponse;
+import com.nadiannis.common.dto.reservation.ReservationReqDto;
+import com.nadiannis.common.dto.reservation.ReservationResDto;
+import com.nadiannis.product_service.service.ReservationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/reservations")
+public class ReservationController {
+
+    private ReservationService service;
+
+    @Autowired
+    public ReservationController(ReservationService service) {
+        this.service = service;
+    }
+
+    @Operation(summary = "Reserve quantities of several products for an order", responses = {
+            @ApiResponse(responseCode = "201", description = "Created", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PostMapping
+    public Mono<ResponseEntity<?>> reserve(@Valid @RequestBody ReservationReqDto body) {
+        Mono<List<ReservationResDto>> reservationsMono = service.reserve(body).collectList();
+        return reservationsMono.map(data -> {
+            String message = "products reserved successfully";
+
+            SuccessResponse<List<ReservationResDto>> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        });
+    }
+
+    @Operation(summary = "Get the reservations of an order", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @GetMapping("/{orderId}")
+    public Mono<ResponseEntity<?>> getByOrderId(@PathVariable Long orderId) {
+        Mono<List<ReservationResDto>> reservationsMono = service.getByOrderId(orderId).collectList();
+        return reservationsMono.map(data -> {
+            String message = "reservations retrieved successfully";
+
+            SuccessResponse<List<ReservationResDto>> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    @Operation(summary = "Confirm the reservations of an order, deducting their quantities from the stock", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PostMapping("/{orderId}/confirm")
+    public Mono<ResponseEntity<?>> confirm(@PathVariable Long orderId) {
+        Mono<List<ReservationResDto>> reservationsMono = service.confirm(orderId).collectList();
+        return reservationsMono.map(data -> {
+            String message = "reservations confirmed successfully";
+
+            SuccessResponse<List<ReservationResDto>> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    @Operation(summary = "Release the reservations of an order, giving their quantities back to the available stock", responses = {
+            @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(schema = @Schema(implementation = SuccessResponse.class))),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+    })
+    @PostMapping("/{orderId}/release")
+    public Mono<ResponseEntity<?>> release(@PathVariable Long orderId) {
+        Mono<List<ReservationResDto>> reservationsMono = service.release(orderId).collectList();
+        return reservationsMono.map(data -> {
+            String message = "reservations released successfully";
+
+            SuccessResponse<List<ReservationResDto>> response = new SuccessResponse<>(message, data);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+}
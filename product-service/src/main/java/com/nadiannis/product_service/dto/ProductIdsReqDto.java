@@ -0,0 +1,22 @@
+package com.nadiannis.product_service.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductIdsReqDto {
+
+    @NotEmpty(message = "ids is required")
+    @Size(max = 1000, message = "ids should not contain more than 1000 items")
+    private List<Long> ids;
+
+}
@@ -0,0 +1,30 @@
+package com.nadiannis.product_service.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table(name = "processed_saga_steps")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedSagaStep {
+
+    @Id
+    private Long id;
+
+    private Long orderId;
+
+    private String action;
+
+    @CreatedDate
+    private LocalDateTime processedAt;
+
+}
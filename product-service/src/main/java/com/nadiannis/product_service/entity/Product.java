@@ -8,6 +8,8 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.LocalDateTime;
@@ -31,10 +33,18 @@ public class Product {
 
     private Integer stockQuantity;
 
+    // Only changed by the guarded reservation statements, so saving a product never overwrites a concurrent reservation
+    @ReadOnlyProperty
+    private Integer reservedQuantity;
+
     private String description;
 
     private String imageUrl;
 
+    // Bumped by every write, so saving a product read before a concurrent write fails instead of overwriting it
+    @Version
+    private Long version;
+
     @CreatedDate
     private LocalDateTime createdAt;
 
@@ -0,0 +1,32 @@
+package com.nadiannis.product_service.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table(name = "stock_allotments")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockAllotment {
+
+    @Id
+    private Long id;
+
+    private Long productId;
+
+    private String owner;
+
+    private Integer quantity;
+
+    @LastModifiedDate
+    private LocalDateTime updatedAt;
+
+}
@@ -1,10 +1,12 @@
 package com.nadiannis.product_service.exception;
 
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
 import com.nadiannis.common.exception.ResourceInsufficientException;
 import com.nadiannis.common.exception.ResourceNotFoundException;
 import com.nadiannis.common.dto.ErrorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -56,6 +58,20 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return Mono.just(new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND));
     }
 
+    @ExceptionHandler(InvalidStatusTransitionException.class)
+    public Mono<ResponseEntity<ErrorResponse<?>>> handleInvalidStatusTransition(InvalidStatusTransitionException ex, ServerWebExchange exchange) {
+        logger.error("InvalidStatusTransitionException", ex);
+        ErrorResponse<String> errorResponse = new ErrorResponse<>(LocalDateTime.now(), ex.getMessage(), exchange.getRequest().getURI().toString());
+        return Mono.just(new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT));
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public Mono<ResponseEntity<ErrorResponse<?>>> handleOptimisticLockingFailure(OptimisticLockingFailureException ex, ServerWebExchange exchange) {
+        logger.error("OptimisticLockingFailureException", ex);
+        ErrorResponse<String> errorResponse = new ErrorResponse<>(LocalDateTime.now(), "resource was changed concurrently, try again", exchange.getRequest().getURI().toString());
+        return Mono.just(new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT));
+    }
+
     @ExceptionHandler(Exception.class)
     public Mono<ResponseEntity<ErrorResponse<?>>> handleGlobalException(Exception ex, ServerWebExchange exchange) {
         logger.error("Exception", ex);
@@ -0,0 +1,99 @@
+package com.nadiannis.product_service.inventory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Stock of one hot product split over several stripes, so concurrent deductions mostly compare-and-set different
+// cache lines instead of all spinning on one value. No stripe ever goes below zero, so the sum is never oversold.
+public class StripedStockCounter {
+
+    // Longs between two stripes, so neighbouring stripes never share a cache line (or its prefetched pair)
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray cells;
+
+    private final int stripes;
+
+    public StripedStockCounter(int stripes) {
+        this.stripes = Math.max(1, stripes);
+        this.cells = new AtomicLongArray(this.stripes * PADDING);
+    }
+
+    // Takes the quantity from the stripe of the calling thread, then from the others. When no stripe holds it on its
+    // own it is gathered from several, and given back if they fall short.
+    public boolean tryDeduct(int quantity) {
+        int start = probe();
+
+        for (int i = 0; i < stripes; i++) {
+            int cell = cellIndex(start + i);
+            long current = cells.get(cell);
+            while (current >= quantity) {
+                if (cells.compareAndSet(cell, current, current - quantity)) {
+                    return true;
+                }
+                current = cells.get(cell);
+            }
+        }
+
+        long taken = 0;
+        for (int i = 0; i < stripes && taken < quantity; i++) {
+            int cell = cellIndex(start + i);
+            long current = cells.get(cell);
+            while (current > 0 && taken < quantity) {
+                long take = Math.min(current, quantity - taken);
+                if (cells.compareAndSet(cell, current, current - take)) {
+                    taken += take;
+                }
+                current = cells.get(cell);
+            }
+        }
+
+        if (taken == quantity) {
+            return true;
+        }
+        if (taken > 0) {
+            cells.getAndAdd(cellIndex(start), taken);
+        }
+        return false;
+    }
+
+    // Spreads the quantity evenly, so threads on every stripe find stock of their own
+    public void add(long quantity) {
+        long share = quantity / stripes;
+        long remainder = quantity % stripes;
+        int start = probe();
+        for (int i = 0; i < stripes; i++) {
+            long stripeQuantity = share + (i < remainder ? 1 : 0);
+            if (stripeQuantity > 0) {
+                cells.getAndAdd(cellIndex(start + i), stripeQuantity);
+            }
+        }
+    }
+
+    // Not an atomic snapshot while deductions run, only used for reporting
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(cellIndex(i));
+        }
+        return sum;
+    }
+
+    // Empties every stripe and returns what they held
+    public long drain() {
+        long drained = 0;
+        for (int i = 0; i < stripes; i++) {
+            drained += cells.getAndSet(cellIndex(i), 0);
+        }
+        return drained;
+    }
+
+    private int cellIndex(int stripe) {
+        return Math.floorMod(stripe, stripes) * PADDING;
+    }
+
+    private int probe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 33);
+    }
+
+}
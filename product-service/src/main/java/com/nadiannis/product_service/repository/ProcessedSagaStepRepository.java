@@ -0,0 +1,9 @@
+package com.nadiannis.product_service.repository;
+
+import com.nadiannis.product_service.entity.ProcessedSagaStep;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProcessedSagaStepRepository extends R2dbcRepository<ProcessedSagaStep, Long> {
+}
@@ -1,10 +1,20 @@
 package com.nadiannis.product_service.repository;
 
 import com.nadiannis.product_service.entity.Product;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Repository
-public interface ProductRepository extends R2dbcRepository<Product, Long> {
+public interface ProductRepository extends R2dbcRepository<Product, Long>, ProductRepositoryCustom {
+
+    @Query("SELECT * FROM products WHERE id = ANY(:ids)")
+    Flux<Product> findAllByIdIn(Long[] ids);
+
+    // Holds the row until the surrounding transaction ends
+    @Query("SELECT * FROM products WHERE id = :id FOR UPDATE")
+    Mono<Product> findByIdForUpdate(Long id);
 
 }
@@ -0,0 +1,29 @@
+package com.nadiannis.product_service.repository;
+
+import com.nadiannis.product_service.entity.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+
+    // Completes empty when the product does not exist or its stock is lower than the quantity
+    Mono<Product> deductStockQuantity(Long id, Integer quantity);
+
+    // Completes empty when the product does not exist
+    Mono<Product> addStockQuantity(Long id, Integer quantity);
+
+    // Applies signed stock deltas keyed by product id in one batched statement, emitting only the rows that were updated
+    Flux<Product> updateStockQuantities(Map<Long, Integer> stockQuantityDeltas);
+
+    // Holds quantities keyed by product id out of the available stock, emitting only the ids that had enough available
+    Flux<Long> reserveStockQuantities(Map<Long, Integer> quantities);
+
+    // Gives held quantities back to the available stock, emitting the ids that were updated
+    Flux<Long> releaseReservedQuantities(Map<Long, Integer> quantities);
+
+    // Turns held quantities into a deduction of the stock, emitting the ids that were updated
+    Flux<Long> confirmReservedQuantities(Map<Long, Integer> quantities);
+
+}
@@ -0,0 +1,148 @@
+package com.nadiannis.product_service.repository;
+
+import com.nadiannis.product_service.entity.Product;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    // Deductions only take from the available stock, so they never eat into quantities held by reservations
+    private static final String DEDUCT_STOCK_QUANTITY_SQL = "UPDATE products SET stock_quantity = stock_quantity - :quantity, version = version + 1, updated_at = :updatedAt WHERE id = :id AND stock_quantity - reserved_quantity >= :quantity";
+
+    private static final String ADD_STOCK_QUANTITY_SQL = "UPDATE products SET stock_quantity = stock_quantity + :quantity, version = version + 1, updated_at = :updatedAt WHERE id = :id";
+
+    private static final String UPDATE_STOCK_QUANTITY_BATCH_SQL = "UPDATE products SET stock_quantity = stock_quantity + $1, version = version + 1, updated_at = $2 WHERE id = $3 AND stock_quantity - reserved_quantity + $1 >= 0";
+
+    private static final String RESERVE_STOCK_QUANTITY_BATCH_SQL = "UPDATE products SET reserved_quantity = reserved_quantity + $1, version = version + 1, updated_at = $2 WHERE id = $3 AND stock_quantity - reserved_quantity >= $1";
+
+    private static final String RELEASE_RESERVED_QUANTITY_BATCH_SQL = "UPDATE products SET reserved_quantity = reserved_quantity - $1, version = version + 1, updated_at = $2 WHERE id = $3";
+
+    private static final String CONFIRM_RESERVED_QUANTITY_BATCH_SQL = "UPDATE products SET stock_quantity = stock_quantity - $1, reserved_quantity = reserved_quantity - $1, version = version + 1, updated_at = $2 WHERE id = $3";
+
+    private R2dbcEntityTemplate template;
+
+    private DatabaseClient databaseClient;
+
+    private R2dbcConverter converter;
+
+    private boolean returningSupported;
+
+    @Autowired
+    public ProductRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+        this.databaseClient = template.getDatabaseClient();
+        this.converter = template.getConverter();
+        this.returningSupported = "PostgreSQL".equalsIgnoreCase(databaseClient.getConnectionFactory().getMetadata().getName());
+    }
+
+    @Override
+    public Mono<Product> deductStockQuantity(Long id, Integer quantity) {
+        return updateStockQuantity(DEDUCT_STOCK_QUANTITY_SQL, id, quantity);
+    }
+
+    @Override
+    public Mono<Product> addStockQuantity(Long id, Integer quantity) {
+        return updateStockQuantity(ADD_STOCK_QUANTITY_SQL, id, quantity);
+    }
+
+    @Override
+    public Flux<Product> updateStockQuantities(Map<Long, Integer> stockQuantityDeltas) {
+        if (stockQuantityDeltas.isEmpty()) {
+            return Flux.empty();
+        }
+
+        List<Map.Entry<Long, Integer>> deltas = new ArrayList<>(stockQuantityDeltas.entrySet());
+        LocalDateTime updatedAt = LocalDateTime.now();
+
+        if (returningSupported) {
+            return databaseClient.inConnectionMany(connection -> {
+                Statement statement = bindStockQuantityDeltas(connection.createStatement(UPDATE_STOCK_QUANTITY_BATCH_SQL + " RETURNING *"), deltas, updatedAt);
+                return Flux.from(statement.execute())
+                        .concatMap(result -> result.map((row, metadata) -> converter.read(Product.class, row, metadata)));
+            });
+        }
+
+        return updateBatch(UPDATE_STOCK_QUANTITY_BATCH_SQL, deltas, updatedAt)
+                .collectList()
+                .flatMapMany(ids -> ids.isEmpty()
+                        ? Flux.empty()
+                        : template.select(Product.class).matching(query(where("id").in(ids))).all());
+    }
+
+    @Override
+    public Flux<Long> reserveStockQuantities(Map<Long, Integer> quantities) {
+        return updateBatch(RESERVE_STOCK_QUANTITY_BATCH_SQL, new ArrayList<>(quantities.entrySet()), LocalDateTime.now());
+    }
+
+    @Override
+    public Flux<Long> releaseReservedQuantities(Map<Long, Integer> quantities) {
+        return updateBatch(RELEASE_RESERVED_QUANTITY_BATCH_SQL, new ArrayList<>(quantities.entrySet()), LocalDateTime.now());
+    }
+
+    @Override
+    public Flux<Long> confirmReservedQuantities(Map<Long, Integer> quantities) {
+        return updateBatch(CONFIRM_RESERVED_QUANTITY_BATCH_SQL, new ArrayList<>(quantities.entrySet()), LocalDateTime.now());
+    }
+
+    // Runs one batched statement and emits the ids of the products it updated
+    private Flux<Long> updateBatch(String sql, List<Map.Entry<Long, Integer>> deltas, LocalDateTime updatedAt) {
+        if (deltas.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = bindStockQuantityDeltas(connection.createStatement(sql), deltas, updatedAt);
+                    return Flux.from(statement.execute()).concatMap(result -> result.getRowsUpdated());
+                })
+                .index()
+                .filter(rowsUpdated -> rowsUpdated.getT2() > 0)
+                .map(rowsUpdated -> deltas.get(rowsUpdated.getT1().intValue()).getKey());
+    }
+
+    private Statement bindStockQuantityDeltas(Statement statement, List<Map.Entry<Long, Integer>> deltas, LocalDateTime updatedAt) {
+        for (int i = 0; i < deltas.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            statement.bind(0, deltas.get(i).getValue())
+                    .bind(1, updatedAt)
+                    .bind(2, deltas.get(i).getKey());
+        }
+        return statement;
+    }
+
+    private Mono<Product> updateStockQuantity(String sql, Long id, Integer quantity) {
+        if (returningSupported) {
+            return databaseClient.sql(sql + " RETURNING *")
+                    .bind("id", id)
+                    .bind("quantity", quantity)
+                    .bind("updatedAt", LocalDateTime.now())
+                    .map((row, metadata) -> converter.read(Product.class, row, metadata))
+                    .one();
+        }
+
+        // Databases without UPDATE ... RETURNING (H2) keep the guarded UPDATE and read the row back afterwards
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .bind("quantity", quantity)
+                .bind("updatedAt", LocalDateTime.now())
+                .fetch()
+                .rowsUpdated()
+                .filter(rowsUpdated -> rowsUpdated > 0)
+                .flatMap(rowsUpdated -> template.selectOne(query(where("id").is(id)), Product.class));
+    }
+
+}
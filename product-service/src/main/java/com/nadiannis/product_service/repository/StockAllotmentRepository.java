@@ -0,0 +1,26 @@
+package com.nadiannis.product_service.repository;
+
+import com.nadiannis.product_service.entity.StockAllotment;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface StockAllotmentRepository extends R2dbcRepository<StockAllotment, Long>, StockAllotmentRepositoryCustom {
+
+    Flux<StockAllotment> findByOwner(String owner);
+
+    @Modifying
+    @Query("DELETE FROM stock_allotments WHERE owner = :owner")
+    Mono<Long> deleteByOwner(String owner);
+
+    @Modifying
+    @Query("UPDATE stock_allotments SET quantity = quantity + :quantity, updated_at = :updatedAt WHERE owner = :owner AND product_id = :productId")
+    Mono<Long> addQuantity(String owner, Long productId, Integer quantity, LocalDateTime updatedAt);
+
+}
@@ -0,0 +1,12 @@
+package com.nadiannis.product_service.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+public interface StockAllotmentRepositoryCustom {
+
+    // Takes quantities keyed by product id off the allotments of one owner in one batched statement
+    Mono<Void> subtractQuantities(String owner, Map<Long, Long> quantities);
+
+}
@@ -0,0 +1,51 @@
+package com.nadiannis.product_service.repository;
+
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class StockAllotmentRepositoryCustomImpl implements StockAllotmentRepositoryCustom {
+
+    private static final String SUBTRACT_QUANTITY_BATCH_SQL = "UPDATE stock_allotments SET quantity = quantity - $1, updated_at = $2 WHERE owner = $3 AND product_id = $4";
+
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    public StockAllotmentRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.databaseClient = template.getDatabaseClient();
+    }
+
+    @Override
+    public Mono<Void> subtractQuantities(String owner, Map<Long, Long> quantities) {
+        if (quantities.isEmpty()) {
+            return Mono.empty();
+        }
+
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(quantities.entrySet());
+        LocalDateTime updatedAt = LocalDateTime.now();
+
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(SUBTRACT_QUANTITY_BATCH_SQL);
+                    for (int i = 0; i < entries.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        statement.bind(0, entries.get(i).getValue().intValue())
+                                .bind(1, updatedAt)
+                                .bind(2, owner)
+                                .bind(3, entries.get(i).getKey());
+                    }
+                    return Flux.from(statement.execute()).concatMap(result -> result.getRowsUpdated());
+                })
+                .then();
+    }
+
+}
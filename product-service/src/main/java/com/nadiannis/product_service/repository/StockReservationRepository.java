@@ -0,0 +1,19 @@
+package com.nadiannis.product_service.repository;
+
+import com.nadiannis.product_service.entity.StockReservation;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface StockReservationRepository extends R2dbcRepository<StockReservation, Long>, StockReservationRepositoryCustom {
+
+    Flux<StockReservation> findByOrderId(Long orderId);
+
+    @Query("SELECT * FROM stock_reservations WHERE status = 'RESERVED' AND expires_at <= :now ORDER BY expires_at LIMIT :limit")
+    Flux<StockReservation> findExpired(LocalDateTime now, int limit);
+
+}
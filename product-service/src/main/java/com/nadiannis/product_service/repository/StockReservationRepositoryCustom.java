@@ -0,0 +1,13 @@
+package com.nadiannis.product_service.repository;
+
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public interface StockReservationRepositoryCustom {
+
+    // Moves each reservation still in fromStatus to toStatus in one batched statement, emitting only the ids that moved,
+    // so a reservation raced by the reaper or a concurrent confirm or release is settled exactly once
+    Flux<Long> updateStatuses(List<Long> ids, String fromStatus, String toStatus);
+
+}
@@ -0,0 +1,49 @@
+package com.nadiannis.product_service.repository;
+
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class StockReservationRepositoryCustomImpl implements StockReservationRepositoryCustom {
+
+    private static final String UPDATE_STATUS_BATCH_SQL = "UPDATE stock_reservations SET status = $1, updated_at = $2 WHERE id = $3 AND status = $4";
+
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    public StockReservationRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.databaseClient = template.getDatabaseClient();
+    }
+
+    @Override
+    public Flux<Long> updateStatuses(List<Long> ids, String fromStatus, String toStatus) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+
+        LocalDateTime updatedAt = LocalDateTime.now();
+
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(UPDATE_STATUS_BATCH_SQL);
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        statement.bind(0, toStatus)
+                                .bind(1, updatedAt)
+                                .bind(2, ids.get(i))
+                                .bind(3, fromStatus);
+                    }
+                    return Flux.from(statement.execute()).concatMap(result -> result.getRowsUpdated());
+                })
+                .index()
+                .filter(rowsUpdated -> rowsUpdated.getT2() > 0)
+                .map(rowsUpdated -> ids.get(rowsUpdated.getT1().intValue()));
+    }
+
+}
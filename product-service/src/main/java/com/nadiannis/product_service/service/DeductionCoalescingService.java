@@ -0,0 +1,242 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Groups the deductions of one product that arrive within a short window, or until the group is full, and applies
+// each group as one guarded UPDATE. Every caller still gets its own answer: the product as it was right after its own
+// deduction, or ResourceInsufficientException, decided in arrival order.
+@Service
+public class DeductionCoalescingService {
+
+    private ProductRepository repository;
+
+    private TransactionalOperator transactionalOperator;
+
+    private Duration window;
+
+    private int maxBatchSize;
+
+    private Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DeductionCoalescingService(
+            ProductRepository repository,
+            TransactionalOperator transactionalOperator,
+            @Value("${product.coalescing.window:0ms}") Duration window,
+            @Value("${product.coalescing.max-batch-size:64}") int maxBatchSize
+    ) {
+        this.repository = repository;
+        this.transactionalOperator = transactionalOperator;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    // A zero window turns coalescing off, and every deduction runs its own UPDATE
+    public boolean isEnabled() {
+        return !window.isZero();
+    }
+
+    public Mono<Product> deduct(Long id, int quantity) {
+        return Mono.create(sink -> {
+            PendingDeduction deduction = new PendingDeduction(quantity, sink);
+            // A caller that gives up before its group is applied, on a timeout for instance, leaves the group
+            sink.onCancel(() -> withdraw(id, deduction));
+            enqueue(id, deduction);
+        });
+    }
+
+    private void enqueue(Long id, PendingDeduction deduction) {
+        while (true) {
+            Batch batch = batches.computeIfAbsent(id, key -> openBatch(key));
+            synchronized (batch) {
+                // Lost the race with the flush of this batch, the next one is opened instead
+                if (batch.closed) {
+                    continue;
+                }
+                batch.deductions.add(deduction);
+                if (batch.deductions.size() < maxBatchSize) {
+                    return;
+                }
+                close(id, batch);
+            }
+            apply(id, batch.deductions);
+            return;
+        }
+    }
+
+    // A group already closed is being applied, and the deduction stays in it like a cancelled single UPDATE would
+    private void withdraw(Long id, PendingDeduction deduction) {
+        Batch batch = batches.get(id);
+        if (batch == null) {
+            return;
+        }
+        synchronized (batch) {
+            if (!batch.closed) {
+                batch.deductions.remove(deduction);
+            }
+        }
+    }
+
+    private Batch openBatch(Long id) {
+        Batch batch = new Batch();
+        Schedulers.parallel().schedule(() -> flush(id, batch), window.toNanos(), TimeUnit.NANOSECONDS);
+        return batch;
+    }
+
+    private void flush(Long id, Batch batch) {
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            close(id, batch);
+        }
+        apply(id, batch.deductions);
+    }
+
+    private void close(Long id, Batch batch) {
+        batch.closed = true;
+        batches.remove(id, batch);
+    }
+
+    // The whole group usually fits, so it costs one statement. Otherwise the row is locked and read, the deductions
+    // that fit are picked in arrival order, and their sum is applied in a second statement.
+    private void apply(Long id, List<PendingDeduction> deductions) {
+        // Every caller of the group cancelled
+        if (deductions.isEmpty()) {
+            return;
+        }
+        int total = deductions.stream().mapToInt(deduction -> deduction.quantity).sum();
+
+        Mono<List<Boolean>> accepted = repository.deductStockQuantity(id, total)
+                .map(product -> snapshot(deductions, product, total, acceptAll(deductions)))
+                .switchIfEmpty(Mono.defer(() -> repository.findByIdForUpdate(id).flatMap(product -> {
+                    List<Boolean> fits = acceptInArrivalOrder(deductions, availableQuantity(product));
+                    int acceptedTotal = sumAccepted(deductions, fits);
+                    if (acceptedTotal == 0) {
+                        return Mono.just(snapshot(deductions, product, 0, fits));
+                    }
+                    return repository.deductStockQuantity(id, acceptedTotal)
+                            .map(updatedProduct -> snapshot(deductions, updatedProduct, acceptedTotal, fits));
+                })));
+
+        transactionalOperator.transactional(accepted)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("product", "id", Long.toString(id))))
+                .subscribe(
+                        fits -> {
+                            for (int i = 0; i < deductions.size(); i++) {
+                                PendingDeduction deduction = deductions.get(i);
+                                if (fits.get(i)) {
+                                    deduction.sink.success(deduction.product);
+                                } else {
+                                    deduction.sink.error(new ResourceInsufficientException("product", "quantity"));
+                                }
+                            }
+                        },
+                        error -> deductions.forEach(deduction -> deduction.sink.error(error))
+                );
+    }
+
+    // Gives every accepted deduction the stock as it was right after it, counting back from the row after the group
+    private List<Boolean> snapshot(List<PendingDeduction> deductions, Product updatedProduct, int acceptedTotal, List<Boolean> fits) {
+        int stockQuantity = updatedProduct.getStockQuantity() + acceptedTotal;
+        for (int i = 0; i < deductions.size(); i++) {
+            if (fits.get(i)) {
+                stockQuantity -= deductions.get(i).quantity;
+                deductions.get(i).product = withStockQuantity(updatedProduct, stockQuantity);
+            }
+        }
+        return fits;
+    }
+
+    private List<Boolean> acceptAll(List<PendingDeduction> deductions) {
+        List<Boolean> fits = new ArrayList<>(deductions.size());
+        deductions.forEach(deduction -> fits.add(true));
+        return fits;
+    }
+
+    private List<Boolean> acceptInArrivalOrder(List<PendingDeduction> deductions, int availableQuantity) {
+        List<Boolean> fits = new ArrayList<>(deductions.size());
+        int remaining = availableQuantity;
+        for (PendingDeduction deduction : deductions) {
+            boolean fit = deduction.quantity <= remaining;
+            if (fit) {
+                remaining -= deduction.quantity;
+            }
+            fits.add(fit);
+        }
+        return fits;
+    }
+
+    private int sumAccepted(List<PendingDeduction> deductions, List<Boolean> fits) {
+        int sum = 0;
+        for (int i = 0; i < deductions.size(); i++) {
+            if (fits.get(i)) {
+                sum += deductions.get(i).quantity;
+            }
+        }
+        return sum;
+    }
+
+    private int availableQuantity(Product product) {
+        return product.getStockQuantity() - Objects.requireNonNullElse(product.getReservedQuantity(), 0);
+    }
+
+    private Product withStockQuantity(Product product, int stockQuantity) {
+        return Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .price(product.getPrice())
+                .category(product.getCategory())
+                .stockQuantity(stockQuantity)
+                .reservedQuantity(product.getReservedQuantity())
+                .description(product.getDescription())
+                .imageUrl(product.getImageUrl())
+                .version(product.getVersion())
+                .createdAt(product.getCreatedAt())
+                .updatedAt(product.getUpdatedAt())
+                .build();
+    }
+
+    private static class Batch {
+
+        private final List<PendingDeduction> deductions = new ArrayList<>();
+
+        private boolean closed;
+
+    }
+
+    private static class PendingDeduction {
+
+        private final int quantity;
+
+        private final MonoSink<Product> sink;
+
+        // The product right after this deduction, set once the group is applied
+        private Product product;
+
+        private PendingDeduction(int quantity, MonoSink<Product> sink) {
+            this.quantity = quantity;
+            this.sink = sink;
+        }
+
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.entity.StockAllotment;
+import com.nadiannis.product_service.inventory.StripedStockCounter;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockAllotmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Serves deductions of hot products from striped in-memory counters instead of the products row lock. Stock moves into
+// memory in allotments taken with one guarded UPDATE each, and sold quantities are written behind to the allotment rows
+// of this instance in periodic batches. An allotment leaves stock_quantity when it is taken, so a crash strands at most
+// what was held in memory: the product may undersell by that much after a restart, but never oversells.
+// Reservations and bulk updates read only stock_quantity, so when they run short the memory of the product is handed
+// back first, and an update that sets stock_quantity absolutely hands it back before writing.
+@Service
+public class HotInventoryService implements SmartLifecycle {
+
+    // Set on every product while stopping, so no deduction takes a new allotment while the memory is handed back
+    private static final Mono<Integer> CLAIMS_CLOSED = Mono.just(-1);
+
+    private final Logger logger = LoggerFactory.getLogger(HotInventoryService.class);
+
+    private ProductRepository productRepository;
+
+    private StockAllotmentRepository allotmentRepository;
+
+    private ProductCache cache;
+
+    private TransactionalOperator transactionalOperator;
+
+    private String owner;
+
+    private int allotmentSize;
+
+    private Duration flushInterval;
+
+    private Map<Long, HotStock> stocks;
+
+    private Disposable flusher;
+
+    private volatile boolean running;
+
+    @Autowired
+    public HotInventoryService(
+            ProductRepository productRepository,
+            StockAllotmentRepository allotmentRepository,
+            ProductCache cache,
+            TransactionalOperator transactionalOperator,
+            @Value("${product.inventory.hot-product-ids:}") List<Long> hotProductIds,
+            @Value("${product.inventory.owner:}") String owner,
+            @Value("${product.inventory.allotment-size:100}") int allotmentSize,
+            @Value("${product.inventory.stripes:0}") int stripes,
+            @Value("${product.inventory.flush-interval:200ms}") Duration flushInterval
+    ) {
+        this.productRepository = productRepository;
+        this.allotmentRepository = allotmentRepository;
+        this.cache = cache;
+        this.transactionalOperator = transactionalOperator;
+        // Startup reconciles only the allotment rows of its own owner, so the owner has to survive restarts. A generated
+        // or host name owner would leave what a crashed run held stranded in rows nothing reconciles.
+        if (!hotProductIds.isEmpty() && owner.isBlank()) {
+            throw new IllegalStateException("product.inventory.owner is required when product.inventory.hot-product-ids is set");
+        }
+        this.owner = owner;
+        this.allotmentSize = allotmentSize;
+        this.flushInterval = flushInterval;
+
+        int stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.stocks = new ConcurrentHashMap<>();
+        hotProductIds.forEach(id -> stocks.put(id, new HotStock(stripeCount)));
+    }
+
+    // Until the allotments of a previous run are reconciled, hot products are deducted in the database like the others
+    public boolean isHot(Long id) {
+        return running && stocks.containsKey(id);
+    }
+
+    // Emits false when neither memory nor the available stock in the database holds the quantity
+    public Mono<Boolean> deduct(Long id, int quantity) {
+        HotStock stock = stocks.get(id);
+
+        return Mono.defer(() -> {
+            if (stock.counter.tryDeduct(quantity)) {
+                stock.sold.add(quantity);
+                return Mono.just(true);
+            }
+            // Another deduction may have used up the new allotment before this one got to it, so it claims again
+            // until the database has nothing left
+            return claim(id, stock, quantity).flatMap(claimed -> {
+                if (claimed > 0) {
+                    return deduct(id, quantity);
+                }
+                if (claimed < 0) {
+                    // Stopping, the deduction goes to the database like the ones of other products
+                    return productRepository.deductStockQuantity(id, quantity)
+                            .doOnNext(product -> cache.invalidate(id))
+                            .map(product -> true)
+                            .defaultIfEmpty(false);
+                }
+                return Mono.fromSupplier(() -> {
+                    boolean deducted = stock.counter.tryDeduct(quantity);
+                    if (deducted) {
+                        stock.sold.add(quantity);
+                    }
+                    return deducted;
+                });
+            });
+        });
+    }
+
+    // What the product holds in memory on top of its stock_quantity
+    public long allottedQuantity(Long id) {
+        HotStock stock = stocks.get(id);
+        return stock == null ? 0 : stock.counter.sum();
+    }
+
+    // Writes the quantities sold since the last flush off the allotment rows in one batched statement
+    public Mono<Void> flush() {
+        Map<Long, Long> sold = new LinkedHashMap<>();
+        stocks.forEach((id, stock) -> {
+            long quantity = stock.sold.sumThenReset();
+            if (quantity > 0) {
+                sold.put(id, quantity);
+            }
+        });
+
+        return allotmentRepository.subtractQuantities(owner, sold)
+                .doOnError(error -> sold.forEach((id, quantity) -> stocks.get(id).sold.add(quantity)));
+    }
+
+    // Writes off what a previous run of this owner left in its allotments. Those quantities mix stock sold but not yet
+    // flushed with stock never sold, and they already left stock_quantity, so dropping them can only undersell.
+    public Mono<Void> reconcile() {
+        Mono<Void> reconciled = allotmentRepository.findByOwner(owner)
+                .filter(allotment -> allotment.getQuantity() > 0)
+                .doOnNext(allotment -> logger.warn("Writing off {} units of product {} left in memory by an unclean shutdown", allotment.getQuantity(), allotment.getProductId()))
+                .then(allotmentRepository.deleteByOwner(owner))
+                .thenMany(allotmentRepository.saveAll(stocks.keySet().stream()
+                        .map(id -> StockAllotment.builder().productId(id).owner(owner).quantity(0).build())
+                        .collect(Collectors.toList())))
+                .then();
+
+        return transactionalOperator.transactional(reconciled);
+    }
+
+    // Flushes the sold quantities and gives what is left in memory back to stock_quantity
+    public Mono<Void> returnAllotments() {
+        return flush().thenMany(Flux.fromIterable(stocks.keySet()).concatMap(id -> returnAllotment(id))).then();
+    }
+
+    // Gives what one product holds in memory back to stock_quantity, emitting the quantity returned. Deductions that
+    // run short afterwards take a new allotment as usual.
+    public Mono<Long> returnAllotment(Long id) {
+        HotStock stock = stocks.get(id);
+        return Mono.defer(() -> {
+            long unsold = stock == null ? 0 : stock.counter.drain();
+            if (unsold == 0) {
+                return Mono.just(0L);
+            }
+
+            Mono<Long> returned = productRepository.addStockQuantity(id, (int) unsold)
+                    .then(allotmentRepository.addQuantity(owner, id, (int) -unsold, LocalDateTime.now()))
+                    .thenReturn(unsold);
+            // Stock not handed back stays in memory, where it can still be sold
+            return transactionalOperator.transactional(returned)
+                    .doOnError(error -> stock.counter.add(unsold))
+                    .doOnSuccess(returnedQuantity -> cache.invalidate(id));
+        });
+    }
+
+    // Runs the attempt, and when it runs short of stock hands back the memory of the hot products involved and runs it
+    // once more. Stock held in memory has already left stock_quantity, so statements guarded on it would otherwise fail
+    // while the product is still sellable. Each attempt has to run in a transaction of its own, so the first one is
+    // rolled back before the second starts.
+    public <T> Flux<T> withHotStock(Flux<Long> ids, Supplier<Flux<T>> attempt) {
+        return attempt.get().onErrorResume(ResourceInsufficientException.class, error -> ids
+                .filter(id -> isHot(id))
+                .concatMap(id -> returnAllotment(id))
+                .reduce(0L, Long::sum)
+                .flatMapMany(returned -> returned > 0 ? attempt.get() : Flux.error(error)));
+    }
+
+    // Only one allotment per product is taken at a time, every deduction that runs short meanwhile waits for that one.
+    // Emits the quantity taken, or -1 once claims are closed.
+    private Mono<Integer> claim(Long id, HotStock stock, int quantity) {
+        while (true) {
+            Mono<Integer> inFlight = stock.claim.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            AtomicReference<Mono<Integer>> self = new AtomicReference<>();
+            Mono<Integer> claim = takeAllotment(id, Math.max(allotmentSize, quantity), quantity)
+                    .doOnNext(stock.counter::add)
+                    // Cleared before the waiting deductions see the result, so one that still runs short claims anew
+                    .doOnTerminate(() -> stock.claim.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(claim);
+            if (stock.claim.compareAndSet(null, claim)) {
+                return claim;
+            }
+        }
+    }
+
+    // Waits for the allotment being taken, if any, and then closes the product to new ones
+    private Mono<Void> closeClaims(HotStock stock) {
+        return Mono.defer(() -> {
+            Mono<Integer> inFlight = stock.claim.get();
+            if (inFlight == CLAIMS_CLOSED) {
+                return Mono.empty();
+            }
+            if (inFlight == null) {
+                return stock.claim.compareAndSet(null, CLAIMS_CLOSED) ? Mono.empty() : closeClaims(stock);
+            }
+            return inFlight.onErrorResume(error -> Mono.empty()).then(closeClaims(stock));
+        });
+    }
+
+    // Takes a full allotment, or only the quantity asked for once the available stock runs lower than an allotment
+    private Mono<Integer> takeAllotment(Long id, int allotment, int quantity) {
+        Mono<Integer> taken = productRepository.deductStockQuantity(id, allotment).map(product -> allotment)
+                .switchIfEmpty(Mono.defer(() -> allotment > quantity
+                        ? productRepository.deductStockQuantity(id, quantity).map(product -> quantity)
+                        : Mono.empty()))
+                .flatMap(claimed -> allotmentRepository.addQuantity(owner, id, claimed, LocalDateTime.now()).thenReturn(claimed))
+                .defaultIfEmpty(0);
+
+        return transactionalOperator.transactional(taken).doOnNext(claimed -> cache.invalidate(id));
+    }
+
+    @Override
+    public void start() {
+        if (stocks.isEmpty()) {
+            return;
+        }
+
+        reconcile().block();
+        running = true;
+        flusher = Flux.interval(flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush().onErrorResume(error -> {
+                    logger.error("Failed to flush hot product deductions", error);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        flusher.dispose();
+        // A deduction that passed isHot before running turned false may still run short, so claims are closed before
+        // the counters are drained, or an allotment taken meanwhile would be stranded in memory
+        Flux.fromIterable(stocks.values())
+                .concatMap(stock -> closeClaims(stock))
+                .then(returnAllotments())
+                .block();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static class HotStock {
+
+        private final StripedStockCounter counter;
+
+        private final LongAdder sold = new LongAdder();
+
+        private final AtomicReference<Mono<Integer>> claim = new AtomicReference<>();
+
+        private HotStock(int stripes) {
+            this.counter = new StripedStockCounter(stripes);
+        }
+
+    }
+
+}
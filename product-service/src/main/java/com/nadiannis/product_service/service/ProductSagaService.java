@@ -0,0 +1,121 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.product_service.entity.ProcessedSagaStep;
+import com.nadiannis.product_service.repository.ProcessedSagaStepRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.stream.Collectors;
+
+// The product step of the choreographed saga: deducts the stock of a created order and hands it to the payment
+// service, and gives the stock back when the payment was rejected
+@Service
+@ConditionalOnProperty(name = "saga.mode", havingValue = "choreographed")
+public class ProductSagaService {
+
+    private ProductService productService;
+
+    private HotInventoryService hotInventoryService;
+
+    private ProcessedSagaStepRepository processedSagaStepRepository;
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    public ProductSagaService(
+            ProductService productService,
+            HotInventoryService hotInventoryService,
+            ProcessedSagaStepRepository processedSagaStepRepository,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            TransactionalOperator transactionalOperator
+    ) {
+        this.productService = productService;
+        this.hotInventoryService = hotInventoryService;
+        this.processedSagaStepRepository = processedSagaStepRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    // Blocks the listener thread until the next message is acknowledged by Kafka, so the offset is committed only
+    // after the step is done and a failed step is redelivered
+    @KafkaListener(topics = "product", groupId = "phincommerce", concurrency = "${product.listener.concurrency:6}")
+    public void handleSagaEvent(MessageDto messageDto) {
+        if (messageDto.getStatus().equals("ORDER_CREATED")) {
+            System.out.println("ORDER_CREATED (deduct the product): " + messageDto);
+            deductProducts(messageDto).block();
+        } else if (messageDto.getStatus().equals("PAYMENT_REJECTED")) {
+            System.out.println("PAYMENT_REJECTED (add the product): " + messageDto);
+            addProducts(messageDto).block();
+        }
+    }
+
+    public Mono<Void> deductProducts(MessageDto messageDto) {
+        return updateQuantitiesOnce(messageDto, QuantityUpdateAction.DEDUCT)
+                .then(Mono.defer(() -> send("payment", messageDto, "PRODUCT_DEDUCTED")))
+                // Only a missing product or insufficient stock fails the order, other errors are retried by redelivery
+                .onErrorResume(
+                        error -> error instanceof ResourceInsufficientException || error instanceof ResourceNotFoundException,
+                        error -> send("order", messageDto, "PRODUCT_DEDUCT_FAILED")
+                );
+    }
+
+    public Mono<Void> addProducts(MessageDto messageDto) {
+        return updateQuantitiesOnce(messageDto, QuantityUpdateAction.ADD)
+                .then(Mono.defer(() -> send("order", messageDto, "PAYMENT_REJECTED")));
+    }
+
+    // The step is recorded in the transaction of the stock update. A message redelivered after the commit, because
+    // its next message was not acknowledged, hits the unique (order_id, action) and only sends that message again.
+    private Mono<Void> updateQuantitiesOnce(MessageDto messageDto, QuantityUpdateAction action) {
+        Flux<Long> productIds = Flux.fromIterable(messageDto.getPayload().getOrderItems()).map(OrderItemResDto::getProductId).distinct();
+
+        // A deduction short of stock that hot products hold in memory runs once more, with a new step row, in a
+        // transaction of its own
+        return hotInventoryService.withHotStock(productIds, () -> transactionalOperator.transactional(recordAndUpdateQuantities(messageDto, action)).flux())
+                .then()
+                .onErrorResume(DuplicateKeyException.class, error -> {
+                    System.out.println(action + " already applied for order " + messageDto.getPayload().getId());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> send(String topic, MessageDto messageDto, String status) {
+        MessageDto nextMessageDto = MessageDto.builder().status(status).payload(messageDto.getPayload()).build();
+        // Keyed by order id, so every message of an order lands on the same partition and stays in order
+        return Mono.fromFuture(() -> kafkaTemplate.send(topic, Long.toString(messageDto.getPayload().getId()), nextMessageDto)).then();
+    }
+
+    private Mono<Void> recordAndUpdateQuantities(MessageDto messageDto, QuantityUpdateAction action) {
+        ProcessedSagaStep processedSagaStep = ProcessedSagaStep.builder()
+                .orderId(messageDto.getPayload().getId())
+                .action(action.toString())
+                .build();
+
+        return processedSagaStepRepository.save(processedSagaStep)
+                .thenMany(Flux.defer(() -> productService.updateQuantitiesInCurrentTransaction(toBulkQuantityUpdateReqDto(messageDto, action))))
+                .then();
+    }
+
+    private BulkQuantityUpdateReqDto toBulkQuantityUpdateReqDto(MessageDto messageDto, QuantityUpdateAction action) {
+        return new BulkQuantityUpdateReqDto(messageDto.getPayload().getOrderItems().stream()
+                .map(orderItem -> new ProductQuantityUpdateReqDto(orderItem.getProductId(), action.toString(), orderItem.getQuantity()))
+                .collect(Collectors.toList()));
+    }
+
+}
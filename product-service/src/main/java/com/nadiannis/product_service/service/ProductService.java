@@ -1,8 +1,13 @@
 package com.nadiannis.product_service.service;
 
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductBatchResDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
+import com.nadiannis.product_service.cache.ProductCache;
 import com.nadiannis.product_service.dto.ProductReqDto;
 import com.nadiannis.common.dto.product.ProductResDto;
 import com.nadiannis.common.dto.product.QuantityUpdateReqDto;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.product_service.entity.Product;
 import com.nadiannis.common.exception.ResourceInsufficientException;
 import com.nadiannis.common.exception.ResourceNotFoundException;
@@ -10,21 +15,71 @@ import com.nadiannis.product_service.repository.ProductRepository;
 import com.nadiannis.common.utils.QuantityUpdateAction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
 public class ProductService {
 
     private ProductRepository repository;
 
+    private ProductCache cache;
+
+    private HotInventoryService hotInventoryService;
+
+    private DeductionCoalescingService deductionCoalescingService;
+
+    private ConflictRetry conflictRetry;
+
+    private TransactionalOperator transactionalOperator;
+
     @Autowired
-    public ProductService(ProductRepository repository) {
+    public ProductService(
+            ProductRepository repository,
+            ProductCache cache,
+            HotInventoryService hotInventoryService,
+            DeductionCoalescingService deductionCoalescingService,
+            ConflictRetry conflictRetry,
+            TransactionalOperator transactionalOperator
+    ) {
         this.repository = repository;
+        this.cache = cache;
+        this.hotInventoryService = hotInventoryService;
+        this.deductionCoalescingService = deductionCoalescingService;
+        this.conflictRetry = conflictRetry;
+        this.transactionalOperator = transactionalOperator;
     }
 
     public Flux<ProductResDto> getAll() {
-        return repository.findAll().map(product -> mapToResDto(product));
+        return repository.findAll().map(product -> withAllottedQuantity(mapToResDto(product)));
+    }
+
+    public Flux<ProductResDto> getAllByIds(List<Long> ids) {
+        return repository.findAllByIdIn(ids.toArray(new Long[0])).map(product -> withAllottedQuantity(mapToResDto(product)));
+    }
+
+    public Mono<ProductBatchResDto> getBatchByIds(List<Long> ids) {
+        Set<Long> requestedIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+
+        return getAllByIds(List.copyOf(requestedIds)).collectList().map(products -> {
+            Set<Long> foundIds = products.stream().map(ProductResDto::getId).collect(Collectors.toSet());
+            List<Long> missingIds = requestedIds.stream().filter(id -> !foundIds.contains(id)).collect(Collectors.toList());
+            return new ProductBatchResDto(products, missingIds);
+        });
     }
 
     public Mono<ProductResDto> add(ProductReqDto productReqDto) {
@@ -33,20 +88,30 @@ public class ProductService {
     }
 
     public Mono<ProductResDto> getById(Long id) {
-        Mono<Product> productMono = repository
-                .findById(id)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
+        return Mono.justOrEmpty(cache.get(id)).switchIfEmpty(Mono.defer(() -> {
+            Mono<Product> productMono = repository
+                    .findById(id)
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
 
-        return productMono.map(product -> mapToResDto(product));
+            return productMono.map(product -> mapToResDto(product)).doOnNext(cache::putIfAbsent);
+        })).map(productResDto -> withAllottedQuantity(productResDto));
     }
 
     public Mono<ProductResDto> update(Long id, ProductReqDto productReqDto) {
-        Mono<Product> productMono = repository
-                .findById(id)
+        // The stock is set absolutely, so what a hot product holds in memory is handed back first or it would be sold
+        // on top of the new stock. An allotment taken again before the save bumps the version, and the retry hands it
+        // back too.
+        Mono<Product> productMono = Mono.defer(() -> hotInventoryService.isHot(id) ? hotInventoryService.returnAllotment(id) : Mono.empty())
+                .then(repository.findById(id))
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
 
         return productMono
                 .flatMap(product -> {
+                    // The stock is set absolutely, so it may not drop below what orders already hold. A reservation
+                    // made after the read bumps the version, and the save is retried against the new reserved quantity.
+                    if (productReqDto.getStockQuantity() < Objects.requireNonNullElse(product.getReservedQuantity(), 0)) {
+                        return Mono.error(new ResourceInsufficientException("product", "quantity"));
+                    }
                     product.setName(productReqDto.getName());
                     product.setPrice(productReqDto.getPrice());
                     product.setCategory(productReqDto.getCategory());
@@ -59,36 +124,141 @@ public class ProductService {
                     }
                     return repository.save(product);
                 })
+                // A concurrent write bumped the version since the read, so the product is read and changed again
+                .transform(conflictRetry::retry)
+                .flatMap(product -> invalidateAfterCommit(List.of(id)).thenReturn(product))
                 .map(product -> mapToResDto(product));
     }
 
     public Mono<ProductResDto> updateQuantity(Long id, QuantityUpdateReqDto quantityUpdateReqDto) {
-        Mono<Product> productMono = repository
-                .findById(id)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
+        Mono<Product> productMono;
+        if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.DEDUCT.toString()) && hotInventoryService.isHot(id)) {
+            return deductHotStockQuantity(id, quantityUpdateReqDto.getStockQuantity());
+        } else if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.DEDUCT.toString()) && deductionCoalescingService.isEnabled()) {
+            productMono = deductionCoalescingService.deduct(id, quantityUpdateReqDto.getStockQuantity());
+        } else if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.DEDUCT.toString())) {
+            productMono = repository
+                    .deductStockQuantity(id, quantityUpdateReqDto.getStockQuantity())
+                    .switchIfEmpty(Mono.defer(() -> insufficientQuantityOrNotFound(id)));
+        } else if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.ADD.toString())) {
+            productMono = repository
+                    .addStockQuantity(id, quantityUpdateReqDto.getStockQuantity())
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
+        } else {
+            productMono = repository
+                    .findById(id)
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
+        }
 
         return productMono
-                .flatMap(product -> {
-                    if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.DEDUCT.toString())) {
-                        if (product.getStockQuantity() >= quantityUpdateReqDto.getStockQuantity()) {
-                            product.setStockQuantity(product.getStockQuantity() - quantityUpdateReqDto.getStockQuantity());
-                        } else {
-                            return Mono.error(new ResourceInsufficientException("product", "quantity"));
+                .flatMap(product -> invalidateAfterCommit(List.of(id)).thenReturn(product))
+                .map(product -> mapToResDto(product));
+    }
+
+    // Each attempt runs in a transaction of its own, and runs once more after hot products handed back their memory
+    public Flux<ProductResDto> updateQuantities(BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto) {
+        Flux<Long> ids = Flux.fromIterable(bulkQuantityUpdateReqDto.getProducts()).map(ProductQuantityUpdateReqDto::getProductId).distinct();
+        return hotInventoryService.withHotStock(ids, () -> transactionalOperator.transactional(updateQuantitiesInCurrentTransaction(bulkQuantityUpdateReqDto)));
+    }
+
+    // For callers that write more in the same transaction, and wrap it in HotInventoryService.withHotStock themselves
+    public Flux<ProductResDto> updateQuantitiesInCurrentTransaction(BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto) {
+        // Several entries for the same product are merged so each product is updated once
+        Map<Long, Integer> stockQuantityDeltas = new LinkedHashMap<>();
+        bulkQuantityUpdateReqDto.getProducts().forEach(productQuantityUpdateReqDto -> stockQuantityDeltas.merge(
+                productQuantityUpdateReqDto.getProductId(),
+                toStockQuantityDelta(productQuantityUpdateReqDto),
+                Integer::sum
+        ));
+
+        return invalidateAfterCommit(List.copyOf(stockQuantityDeltas.keySet()))
+                .thenMany(repository.updateStockQuantities(stockQuantityDeltas))
+                .collectMap(Product::getId, Function.identity())
+                .flatMapMany(updatedProducts -> {
+                    // Any product left out fails the whole batch, which rolls back the products already updated
+                    for (Long id : stockQuantityDeltas.keySet()) {
+                        if (!updatedProducts.containsKey(id)) {
+                            return insufficientQuantityOrNotFound(id);
                         }
-                    } else if (quantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.ADD.toString())) {
-                        product.setStockQuantity(product.getStockQuantity() + quantityUpdateReqDto.getStockQuantity());
                     }
-                    return repository.save(product);
+                    return Flux.fromIterable(stockQuantityDeltas.keySet()).map(updatedProducts::get);
                 })
                 .map(product -> mapToResDto(product));
     }
 
+    // Written products are dropped from the cache once the surrounding transaction ended, or right away outside one.
+    // Putting them instead could cache a value that is rolled back, or let two writers leave theirs in the wrong order.
+    private Mono<Void> invalidateAfterCommit(Collection<Long> ids) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(synchronizationManager -> synchronizationManager.isSynchronizationActive())
+                .doOnNext(synchronizationManager -> synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public Mono<Void> afterCompletion(int status) {
+                        return Mono.fromRunnable(() -> ids.forEach(cache::invalidate));
+                    }
+                }))
+                .onErrorResume(NoTransactionException.class, error -> Mono.empty())
+                .switchIfEmpty(Mono.fromRunnable(() -> ids.forEach(cache::invalidate)))
+                .then();
+    }
+
+    private Mono<ProductResDto> deductHotStockQuantity(Long id, Integer quantity) {
+        return hotInventoryService.deduct(id, quantity)
+                .flatMap(deducted -> deducted ? getById(id) : insufficientQuantityOrNotFound(id).map(product -> mapToResDto(product)));
+    }
+
+    // A hot product shows the stock left in the database plus what this instance still holds in memory. The cached
+    // value stays the database one, and a copy is returned.
+    private ProductResDto withAllottedQuantity(ProductResDto productResDto) {
+        int allottedQuantity = (int) hotInventoryService.allottedQuantity(productResDto.getId());
+        if (allottedQuantity == 0) {
+            return productResDto;
+        }
+
+        return ProductResDto.builder()
+                .id(productResDto.getId())
+                .name(productResDto.getName())
+                .price(productResDto.getPrice())
+                .category(productResDto.getCategory())
+                .stockQuantity(productResDto.getStockQuantity() + allottedQuantity)
+                .availableQuantity(productResDto.getAvailableQuantity() + allottedQuantity)
+                .description(productResDto.getDescription())
+                .imageUrl(productResDto.getImageUrl())
+                .createdAt(productResDto.getCreatedAt())
+                .updatedAt(productResDto.getUpdatedAt())
+                .build();
+    }
+
     public Mono<Void> delete(Long id) {
         Mono<Product> productMono = repository
                 .findById(id)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id))));
 
-        return productMono.flatMap(product -> repository.deleteById(id));
+        return productMono.flatMap(product -> repository.deleteById(id)).doOnSuccess(deleted -> cache.invalidate(id));
+    }
+
+    // A deduction that left this product out either found too little stock or no product, checking that it exists tells which
+    private Mono<Product> insufficientQuantityOrNotFound(Long id) {
+        return repository.existsById(id).flatMap(exists -> {
+            if (exists) {
+                return Mono.error(new ResourceInsufficientException("product", "quantity"));
+            }
+            return Mono.error(new ResourceNotFoundException("product", "id", Long.toString(id)));
+        });
+    }
+
+    private Integer toStockQuantityDelta(ProductQuantityUpdateReqDto productQuantityUpdateReqDto) {
+        if (productQuantityUpdateReqDto.getAction().toUpperCase().equals(QuantityUpdateAction.DEDUCT.toString())) {
+            return -productQuantityUpdateReqDto.getStockQuantity();
+        }
+        return productQuantityUpdateReqDto.getStockQuantity();
+    }
+
+    private Integer availableQuantity(Product product) {
+        if (product.getStockQuantity() == null) {
+            return null;
+        }
+        return product.getStockQuantity() - Objects.requireNonNullElse(product.getReservedQuantity(), 0);
     }
 
     private ProductResDto mapToResDto(Product product) {
@@ -98,6 +268,7 @@ public class ProductService {
         productResDto.setPrice(product.getPrice());
         productResDto.setCategory(product.getCategory());
         productResDto.setStockQuantity(product.getStockQuantity());
+        productResDto.setAvailableQuantity(availableQuantity(product));
         productResDto.setDescription(product.getDescription());
         productResDto.setImageUrl(product.getImageUrl());
         productResDto.setCreatedAt(product.getCreatedAt());
@@ -0,0 +1,70 @@
+package com.nadiannis.product_service.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// Gives the stock held by reservations past their TTL back, so an order whose saga died midway does not keep it
+@Service
+public class ReservationReaperService implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(ReservationReaperService.class);
+
+    private ReservationService reservationService;
+
+    private int batchSize;
+
+    private Duration interval;
+
+    private Disposable reaper;
+
+    @Autowired
+    public ReservationReaperService(
+            ReservationService reservationService,
+            @Value("${product.reservation.reaper.batch-size:500}") int batchSize,
+            @Value("${product.reservation.reaper.interval:10s}") Duration interval
+    ) {
+        this.reservationService = reservationService;
+        this.batchSize = batchSize;
+        this.interval = interval;
+    }
+
+    // Keeps sweeping while batches come back full, each batch in its own short transaction
+    public Mono<Integer> reapExpired() {
+        return reservationService.expireBatch(batchSize)
+                .expand(read -> read == batchSize ? reservationService.expireBatch(batchSize) : Mono.empty())
+                .reduce(0, Integer::sum);
+    }
+
+    @Override
+    public void start() {
+        reaper = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> reapExpired().onErrorResume(error -> {
+                    logger.error("Failed to expire stock reservations", error);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        if (reaper != null) {
+            reaper.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return reaper != null && !reaper.isDisposed();
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.dto.reservation.ReservationReqDto;
+import com.nadiannis.common.dto.reservation.ReservationResDto;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.utils.ReservationStatus;
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.entity.StockReservation;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockReservationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Holds stock for an order until its payment settles. Reserved quantities stay in the stock and only leave the
+// available stock, so a rejected payment or an abandoned saga gives them back without touching stock_quantity.
+@Service
+public class ReservationService {
+
+    private StockReservationRepository repository;
+
+    private ProductRepository productRepository;
+
+    private ProductCache cache;
+
+    private HotInventoryService hotInventoryService;
+
+    private TransactionalOperator transactionalOperator;
+
+    private Duration ttl;
+
+    @Autowired
+    public ReservationService(
+            StockReservationRepository repository,
+            ProductRepository productRepository,
+            ProductCache cache,
+            HotInventoryService hotInventoryService,
+            TransactionalOperator transactionalOperator,
+            @Value("${product.reservation.ttl:15m}") Duration ttl
+    ) {
+        this.repository = repository;
+        this.productRepository = productRepository;
+        this.cache = cache;
+        this.hotInventoryService = hotInventoryService;
+        this.transactionalOperator = transactionalOperator;
+        this.ttl = ttl;
+    }
+
+    public Flux<ReservationResDto> getByOrderId(Long orderId) {
+        return repository.findByOrderId(orderId).map(reservation -> mapToResDto(reservation));
+    }
+
+    // Replays for an order that already holds reservations return those reservations and leave the stock untouched
+    public Flux<ReservationResDto> reserve(ReservationReqDto reservationReqDto) {
+        Long orderId = reservationReqDto.getOrderId();
+
+        // Several entries for the same product are merged so each product is reserved once
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        reservationReqDto.getProducts().forEach(reservationItemReqDto -> quantities.merge(
+                reservationItemReqDto.getProductId(),
+                reservationItemReqDto.getQuantity(),
+                Integer::sum
+        ));
+
+        return repository.findByOrderId(orderId)
+                .collectList()
+                .flatMapMany(reservations -> reservations.isEmpty()
+                        ? hotInventoryService.withHotStock(Flux.fromIterable(quantities.keySet()), () -> transactionalOperator.transactional(holdAndSave(orderId, quantities)))
+                        : Flux.fromIterable(reservations))
+                // A concurrent request for the same order won the unique (order_id, product_id), and the quantities
+                // held by this one were rolled back with its insert
+                .onErrorResume(DuplicateKeyException.class, error -> repository.findByOrderId(orderId))
+                .map(reservation -> mapToResDto(reservation));
+    }
+
+    // Confirming again is a no-op. A reservation the reaper already expired is deducted from the available stock
+    // instead, so a slow payment still goes through while the stock lasts.
+    public Flux<ReservationResDto> confirm(Long orderId) {
+        Flux<StockReservation> confirmed = findByOrderIdOrError(orderId).flatMapMany(reservations -> {
+            List<StockReservation> reserved = withStatus(reservations, ReservationStatus.RESERVED);
+
+            return settle(reserved, ReservationStatus.RESERVED, ReservationStatus.CONFIRMED, productRepository::confirmReservedQuantities)
+                    .collect(Collectors.toSet())
+                    .flatMapMany(confirmedIds -> {
+                        // Reservations expired before this call, or by the reaper while it ran
+                        List<StockReservation> expired = reservations.stream()
+                                .filter(reservation -> reservation.getStatus().equals(ReservationStatus.EXPIRED.toString())
+                                        || reservation.getStatus().equals(ReservationStatus.RESERVED.toString()) && !confirmedIds.contains(reservation.getId()))
+                                .collect(Collectors.toList());
+                        return settle(expired, ReservationStatus.EXPIRED, ReservationStatus.CONFIRMED, this::deductAvailableQuantities);
+                    })
+                    .thenMany(repository.findByOrderId(orderId))
+                    .collectList()
+                    .flatMapMany(settled -> expectStatus(settled, ReservationStatus.CONFIRMED));
+        });
+
+        Flux<Long> productIds = repository.findByOrderId(orderId).map(StockReservation::getProductId);
+        return hotInventoryService.withHotStock(productIds, () -> transactionalOperator.transactional(confirmed)).map(reservation -> mapToResDto(reservation));
+    }
+
+    // Releasing again, or releasing reservations the reaper already expired, is a no-op
+    public Flux<ReservationResDto> release(Long orderId) {
+        Flux<StockReservation> released = repository.findByOrderId(orderId).collectList().flatMapMany(reservations -> {
+            for (StockReservation reservation : reservations) {
+                if (reservation.getStatus().equals(ReservationStatus.CONFIRMED.toString())) {
+                    return Flux.error(new InvalidStatusTransitionException("reservation", reservation.getStatus(), ReservationStatus.RELEASED.toString()));
+                }
+            }
+
+            List<StockReservation> reserved = withStatus(reservations, ReservationStatus.RESERVED);
+            return settle(reserved, ReservationStatus.RESERVED, ReservationStatus.RELEASED, productRepository::releaseReservedQuantities)
+                    .thenMany(repository.findByOrderId(orderId));
+        });
+
+        return transactionalOperator.transactional(released).map(reservation -> mapToResDto(reservation));
+    }
+
+    // Expires one batch of reservations past their TTL and gives their quantities back, returning how many were read
+    public Mono<Integer> expireBatch(int batchSize) {
+        Mono<Integer> expired = repository.findExpired(LocalDateTime.now(), batchSize)
+                .collectList()
+                .flatMap(reservations -> settle(reservations, ReservationStatus.RESERVED, ReservationStatus.EXPIRED, productRepository::releaseReservedQuantities)
+                        .then(Mono.just(reservations.size())));
+
+        return transactionalOperator.transactional(expired);
+    }
+
+    private Flux<StockReservation> holdAndSave(Long orderId, Map<Long, Integer> quantities) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+
+        return productRepository.reserveStockQuantities(quantities)
+                .collect(Collectors.toSet())
+                .flatMapMany(reservedIds -> {
+                    // Any product left out fails the whole order, which rolls back the quantities already held
+                    for (Long productId : quantities.keySet()) {
+                        if (!reservedIds.contains(productId)) {
+                            return insufficientQuantityOrNotFound(productId);
+                        }
+                    }
+
+                    List<StockReservation> reservations = quantities.entrySet().stream()
+                            .map(quantity -> StockReservation.builder()
+                                    .orderId(orderId)
+                                    .productId(quantity.getKey())
+                                    .quantity(quantity.getValue())
+                                    .status(ReservationStatus.RESERVED.toString())
+                                    .expiresAt(expiresAt)
+                                    .build())
+                            .collect(Collectors.toList());
+                    return repository.saveAll(reservations);
+                })
+                .doOnComplete(() -> quantities.keySet().forEach(cache::invalidate));
+    }
+
+    // Moves the reservations still in fromStatus and applies the quantities of the ones that moved to their products,
+    // emitting the moved reservation ids. A reservation settled concurrently is left out, so its quantity is applied once.
+    private Flux<Long> settle(List<StockReservation> reservations, ReservationStatus fromStatus, ReservationStatus toStatus, Function<Map<Long, Integer>, Flux<?>> applyQuantities) {
+        if (reservations.isEmpty()) {
+            return Flux.empty();
+        }
+
+        Map<Long, StockReservation> reservationsById = reservations.stream()
+                .collect(Collectors.toMap(StockReservation::getId, Function.identity()));
+
+        return repository.updateStatuses(List.copyOf(reservationsById.keySet()), fromStatus.toString(), toStatus.toString())
+                .collectList()
+                .flatMapMany(movedIds -> {
+                    Map<Long, Integer> quantities = new LinkedHashMap<>();
+                    movedIds.forEach(id -> quantities.merge(reservationsById.get(id).getProductId(), reservationsById.get(id).getQuantity(), Integer::sum));
+
+                    return applyQuantities.apply(quantities)
+                            .thenMany(Flux.fromIterable(movedIds))
+                            .doOnComplete(() -> quantities.keySet().forEach(cache::invalidate));
+                });
+    }
+
+    private Flux<Product> deductAvailableQuantities(Map<Long, Integer> quantities) {
+        Map<Long, Integer> stockQuantityDeltas = new LinkedHashMap<>();
+        quantities.forEach((productId, quantity) -> stockQuantityDeltas.put(productId, -quantity));
+
+        return productRepository.updateStockQuantities(stockQuantityDeltas)
+                .map(Product::getId)
+                .collect(Collectors.toSet())
+                .flatMapMany(updatedIds -> {
+                    for (Long productId : quantities.keySet()) {
+                        if (!updatedIds.contains(productId)) {
+                            return insufficientQuantityOrNotFound(productId);
+                        }
+                    }
+                    return Flux.empty();
+                });
+    }
+
+    private Mono<List<StockReservation>> findByOrderIdOrError(Long orderId) {
+        return repository.findByOrderId(orderId)
+                .collectList()
+                .filter(reservations -> !reservations.isEmpty())
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("reservation", "order_id", Long.toString(orderId))));
+    }
+
+    // A reservation released concurrently fails the whole call, which rolls back the reservations it settled
+    private Flux<StockReservation> expectStatus(List<StockReservation> reservations, ReservationStatus status) {
+        for (StockReservation reservation : reservations) {
+            if (!reservation.getStatus().equals(status.toString())) {
+                return Flux.error(new InvalidStatusTransitionException("reservation", reservation.getStatus(), status.toString()));
+            }
+        }
+        return Flux.fromIterable(reservations);
+    }
+
+    private List<StockReservation> withStatus(List<StockReservation> reservations, ReservationStatus status) {
+        return reservations.stream()
+                .filter(reservation -> reservation.getStatus().equals(status.toString()))
+                .collect(Collectors.toList());
+    }
+
+    // A product the batched reserve or deduct left out had too little available stock, unless it does not exist at all
+    private <T> Flux<T> insufficientQuantityOrNotFound(Long productId) {
+        return productRepository.existsById(productId).flatMapMany(exists -> {
+            if (exists) {
+                return Flux.error(new ResourceInsufficientException("product", "quantity"));
+            }
+            return Flux.error(new ResourceNotFoundException("product", "id", Long.toString(productId)));
+        });
+    }
+
+    private ReservationResDto mapToResDto(StockReservation reservation) {
+        ReservationResDto reservationResDto = new ReservationResDto();
+        reservationResDto.setId(reservation.getId());
+        reservationResDto.setOrderId(reservation.getOrderId());
+        reservationResDto.setProductId(reservation.getProductId());
+        reservationResDto.setQuantity(reservation.getQuantity());
+        reservationResDto.setStatus(reservation.getStatus());
+        reservationResDto.setExpiresAt(reservation.getExpiresAt());
+        return reservationResDto;
+    }
+
+}
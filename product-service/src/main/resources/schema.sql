@@ -4,8 +4,54 @@ CREATE TABLE IF NOT EXISTS products (
     price FLOAT8 NOT NULL,
     category VARCHAR(255) NOT NULL,
     stock_quantity INTEGER NOT NULL DEFAULT 0,
+    reserved_quantity INTEGER NOT NULL DEFAULT 0,
     description TEXT,
     image_url TEXT,
+    version BIGINT NOT NULL DEFAULT 0,
     created_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW(),
     updated_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
-);
\ No newline at end of file
+);
+
+-- Tables created before reservations existed get the column too, every product starting with nothing reserved
+ALTER TABLE products ADD COLUMN IF NOT EXISTS reserved_quantity INTEGER NOT NULL DEFAULT 0;
+
+-- Tables created before optimistic locking get the column too, every existing row starting at version 0
+ALTER TABLE products ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS stock_reservations (
+    id BIGSERIAL PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    product_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    expires_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL,
+    created_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW(),
+    updated_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS stock_reservations_order_id_product_id_key ON stock_reservations (order_id, product_id);
+
+-- The reaper only reads the reservations still held, oldest expiry first
+CREATE INDEX IF NOT EXISTS stock_reservations_status_expires_at_idx ON stock_reservations (status, expires_at);
+
+-- Stock handed to the in-memory counters of one product-service instance, already deducted from stock_quantity
+CREATE TABLE IF NOT EXISTS stock_allotments (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    owner VARCHAR(255) NOT NULL,
+    quantity INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS stock_allotments_owner_product_id_key ON stock_allotments (owner, product_id);
+
+-- The stock updates of the choreographed saga already applied, one row per order and action, written in the
+-- transaction of the update so a redelivered message does not apply it again
+CREATE TABLE IF NOT EXISTS processed_saga_steps (
+    id BIGSERIAL PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    action VARCHAR(50) NOT NULL,
+    processed_at TIMESTAMP(6) WITHOUT TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS processed_saga_steps_order_id_action_key ON processed_saga_steps (order_id, action);
@@ -0,0 +1,57 @@
+package com.nadiannis.product_service.cache;
+
+import com.nadiannis.common.dto.product.ProductResDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class ProductCacheTests {
+
+    private ProductCache productCache;
+
+    private SimpleMeterRegistry registry;
+
+    private ProductResDto productResDto;
+
+    @BeforeEach
+    void setUp() {
+        productCache = new ProductCache(1000, Duration.ofMinutes(1));
+        registry = new SimpleMeterRegistry();
+        productCache.bindTo(registry);
+        productResDto = ProductResDto.builder().id(1L).name("product 1").stockQuantity(100).build();
+    }
+
+    @Test
+    public void ProductCache_Get_RecordHitsAndMisses() {
+        productCache.get(1L);
+        productCache.putIfAbsent(productResDto);
+        productCache.get(1L);
+        productCache.get(1L);
+
+        Assertions.assertThat(registry.get("cache.gets").tag("cache", "products").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        Assertions.assertThat(registry.get("cache.gets").tag("cache", "products").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void ProductCache_PutIfAbsent_KeepCachedValue() {
+        ProductResDto staleProductResDto = ProductResDto.builder().id(1L).name("product 1").stockQuantity(50).build();
+        productCache.putIfAbsent(productResDto);
+
+        productCache.putIfAbsent(staleProductResDto);
+
+        Assertions.assertThat(productCache.get(1L)).contains(productResDto);
+    }
+
+    @Test
+    public void ProductCache_Invalidate_RemoveProductResDto() {
+        productCache.putIfAbsent(productResDto);
+
+        productCache.invalidate(1L);
+
+        Assertions.assertThat(productCache.get(1L)).isEmpty();
+    }
+
+}
@@ -1,8 +1,12 @@
 package com.nadiannis.product_service.controller.v1;
 
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductBatchResDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
 import com.nadiannis.common.dto.product.ProductResDto;
 import com.nadiannis.common.dto.product.QuantityUpdateReqDto;
 import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.product_service.dto.ProductIdsReqDto;
 import com.nadiannis.product_service.dto.ProductReqDto;
 import com.nadiannis.product_service.service.ProductService;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,6 +23,8 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 import static org.mockito.Mockito.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -97,6 +103,45 @@ public class ProductControllerTests {
         verify(productService, times(1)).getAll();
     }
 
+    @Test
+    public void ProductController_GetAllByIds_ReturnProductResDtosAndMissingIds() {
+        ProductBatchResDto productBatchResDto = new ProductBatchResDto(List.of(productResDto1, productResDto2), List.of(3L));
+        when(productService.getBatchByIds(List.of(1L, 2L, 3L))).thenReturn(Mono.just(productBatchResDto));
+
+        webTestClient.get().uri("/api/v1/products?ids=1,2,3")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.message").isEqualTo("products retrieved successfully")
+                .jsonPath("$.data.products.length()").isEqualTo(2)
+                .jsonPath("$.data.missing_ids[0]").isEqualTo(3);
+
+        verify(productService, times(1)).getBatchByIds(List.of(1L, 2L, 3L));
+        verify(productService, never()).getAll();
+    }
+
+    // @PostMapping("/batch")
+    // public Mono<ResponseEntity<?>> getBatch(@Valid @RequestBody ProductIdsReqDto body)
+    @Test
+    public void ProductController_GetBatch_ReturnProductResDtosAndMissingIds() {
+        ProductBatchResDto productBatchResDto = new ProductBatchResDto(List.of(productResDto1), List.of(2L));
+        when(productService.getBatchByIds(List.of(1L, 2L))).thenReturn(Mono.just(productBatchResDto));
+
+        webTestClient.post().uri("/api/v1/products/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(ProductIdsReqDto.builder().ids(List.of(1L, 2L)).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.data.products.length()").isEqualTo(1)
+                .jsonPath("$.data.missing_ids[0]").isEqualTo(2);
+
+        verify(productService, times(1)).getBatchByIds(List.of(1L, 2L));
+    }
+
     // @PostMapping
     // public Mono<ResponseEntity<?>> add(@Valid @RequestBody ProductReqDto body)
     @Test
@@ -213,6 +258,46 @@ public class ProductControllerTests {
         verify(productService, times(1)).updateQuantity(anyLong(), any(QuantityUpdateReqDto.class));
     }
 
+    // @PatchMapping("/quantities")
+    // public Mono<ResponseEntity<?>> updateQuantities(@Valid @RequestBody BulkQuantityUpdateReqDto body)
+    @Test
+    public void ProductController_UpdateQuantities_ReturnProductResDtos() {
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(
+                        ProductQuantityUpdateReqDto.builder().productId(1L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(2L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build()
+                ))
+                .build();
+        productResDto1.setStockQuantity(90);
+        productResDto2.setStockQuantity(190);
+        when(productService.updateQuantities(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.just(productResDto1, productResDto2));
+
+        webTestClient.patch().uri("/api/v1/products/quantities")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(bulkQuantityUpdateReqDto)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.message").isEqualTo("product quantities updated successfully")
+                .jsonPath("$.data.length()").isEqualTo(2)
+                .jsonPath("$.data[0].stock_quantity").isEqualTo(90)
+                .jsonPath("$.data[1].stock_quantity").isEqualTo(190);
+
+        verify(productService, times(1)).updateQuantities(any(BulkQuantityUpdateReqDto.class));
+    }
+
+    @Test
+    public void ProductController_UpdateQuantities_ReturnBadRequestWhenProductsIsEmpty() {
+        webTestClient.patch().uri("/api/v1/products/quantities")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(BulkQuantityUpdateReqDto.builder().products(List.of()).build())
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(productService, never()).updateQuantities(any(BulkQuantityUpdateReqDto.class));
+    }
+
     // @DeleteMapping("/{id}")
     // public Mono<ResponseEntity<?>> delete(@PathVariable Long id)
     @Test
@@ -0,0 +1,133 @@
+package com.nadiannis.product_service.controller.v1;
+
+import com.nadiannis.common.dto.reservation.ReservationItemReqDto;
+import com.nadiannis.common.dto.reservation.ReservationReqDto;
+import com.nadiannis.common.dto.reservation.ReservationResDto;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
+import com.nadiannis.common.utils.ReservationStatus;
+import com.nadiannis.product_service.service.ReservationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ReservationControllerTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReservationService reservationService;
+
+    private ReservationReqDto reservationReqDto;
+    private ReservationResDto reservationResDto;
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = WebTestClient.bindToServer().baseUrl("http://localhost:" + port).build();
+
+        reservationReqDto = ReservationReqDto.builder()
+                .orderId(1L)
+                .products(List.of(ReservationItemReqDto.builder().productId(1L).quantity(10).build()))
+                .build();
+        reservationResDto = ReservationResDto.builder()
+                .id(1L)
+                .orderId(1L)
+                .productId(1L)
+                .quantity(10)
+                .status(ReservationStatus.RESERVED.toString())
+                .expiresAt(LocalDateTime.now().plusMinutes(15))
+                .build();
+    }
+
+    // @PostMapping
+    // public Mono<ResponseEntity<?>> reserve(@Valid @RequestBody ReservationReqDto body)
+    @Test
+    public void ReservationController_Reserve_ReturnReservationResDtos() {
+        when(reservationService.reserve(any(ReservationReqDto.class))).thenReturn(Flux.just(reservationResDto));
+
+        webTestClient.post().uri("/api/v1/reservations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(reservationReqDto)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("success")
+                .jsonPath("$.message").isEqualTo("products reserved successfully")
+                .jsonPath("$.data[0].order_id").isEqualTo(1)
+                .jsonPath("$.data[0].product_id").isEqualTo(1)
+                .jsonPath("$.data[0].status").isEqualTo(ReservationStatus.RESERVED.toString());
+
+        verify(reservationService, times(1)).reserve(reservationReqDto);
+    }
+
+    @Test
+    public void ReservationController_Reserve_ReturnBadRequestForNonPositiveQuantity() {
+        reservationReqDto.getProducts().get(0).setQuantity(0);
+
+        webTestClient.post().uri("/api/v1/reservations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(reservationReqDto)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(reservationService, never()).reserve(any(ReservationReqDto.class));
+    }
+
+    // @PostMapping("/{orderId}/confirm")
+    // public Mono<ResponseEntity<?>> confirm(@PathVariable Long orderId)
+    @Test
+    public void ReservationController_Confirm_ReturnConfirmedReservationResDtos() {
+        reservationResDto.setStatus(ReservationStatus.CONFIRMED.toString());
+        when(reservationService.confirm(1L)).thenReturn(Flux.just(reservationResDto));
+
+        webTestClient.post().uri("/api/v1/reservations/1/confirm")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("reservations confirmed successfully")
+                .jsonPath("$.data[0].status").isEqualTo(ReservationStatus.CONFIRMED.toString());
+    }
+
+    @Test
+    public void ReservationController_Confirm_ReturnConflictForReleasedReservation() {
+        when(reservationService.confirm(1L)).thenReturn(Flux.error(new InvalidStatusTransitionException(
+                "reservation", ReservationStatus.RELEASED.toString(), ReservationStatus.CONFIRMED.toString())));
+
+        webTestClient.post().uri("/api/v1/reservations/1/confirm")
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("reservation status cannot change from RELEASED to CONFIRMED");
+    }
+
+    // @PostMapping("/{orderId}/release")
+    // public Mono<ResponseEntity<?>> release(@PathVariable Long orderId)
+    @Test
+    public void ReservationController_Release_ReturnReleasedReservationResDtos() {
+        reservationResDto.setStatus(ReservationStatus.RELEASED.toString());
+        when(reservationService.release(1L)).thenReturn(Flux.just(reservationResDto));
+
+        webTestClient.post().uri("/api/v1/reservations/1/release")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("reservations released successfully")
+                .jsonPath("$.data[0].status").isEqualTo(ReservationStatus.RELEASED.toString());
+    }
+
+}
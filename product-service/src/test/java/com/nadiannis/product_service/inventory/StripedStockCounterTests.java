@@ -0,0 +1,78 @@
+package com.nadiannis.product_service.inventory;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class StripedStockCounterTests {
+
+    // boolean tryDeduct(quantity)
+    @Test
+    public void StripedStockCounter_TryDeduct_NeverDeductMoreThanWasAddedUnderContention() throws Exception {
+        StripedStockCounter counter = new StripedStockCounter(8);
+        counter.add(10000);
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> deductedQuantities = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int quantity = i % 3 + 1;
+            deductedQuantities.add(executor.submit(() -> {
+                start.await();
+                int deducted = 0;
+                while (counter.tryDeduct(quantity)) {
+                    deducted += quantity;
+                }
+                return deducted;
+            }));
+        }
+        start.countDown();
+
+        int deducted = 0;
+        for (Future<Integer> deductedQuantity : deductedQuantities) {
+            deducted += deductedQuantity.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Assertions.assertThat(counter.sum()).isGreaterThanOrEqualTo(0);
+        Assertions.assertThat(deducted + counter.sum()).isEqualTo(10000);
+    }
+
+    @Test
+    public void StripedStockCounter_TryDeduct_GatherQuantityNoStripeHoldsAlone() {
+        StripedStockCounter counter = new StripedStockCounter(4);
+        counter.add(10);
+
+        Assertions.assertThat(counter.tryDeduct(9)).isTrue();
+        Assertions.assertThat(counter.sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void StripedStockCounter_TryDeduct_GiveGatheredQuantityBackWhenShort() {
+        StripedStockCounter counter = new StripedStockCounter(4);
+        counter.add(10);
+
+        Assertions.assertThat(counter.tryDeduct(11)).isFalse();
+        Assertions.assertThat(counter.sum()).isEqualTo(10);
+    }
+
+    // long drain()
+    @Test
+    public void StripedStockCounter_Drain_ReturnAndEmptyEveryStripe() {
+        StripedStockCounter counter = new StripedStockCounter(4);
+        counter.add(10);
+        counter.tryDeduct(3);
+
+        Assertions.assertThat(counter.drain()).isEqualTo(7);
+        Assertions.assertThat(counter.sum()).isEqualTo(0);
+    }
+
+}
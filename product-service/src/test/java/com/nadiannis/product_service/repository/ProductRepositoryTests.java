@@ -6,11 +6,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @DataR2dbcTest
 public class ProductRepositoryTests {
@@ -93,4 +97,145 @@ public class ProductRepositoryTests {
                 .verifyComplete();
     }
 
+    // Mono<Product> deductStockQuantity(id, quantity)
+    @Test
+    public void ProductRepository_DeductStockQuantity_ReturnProductWithDeductedStock() {
+        repository.save(product1).block();
+
+        Mono<Product> productMono = repository.deductStockQuantity(product1.getId(), 10);
+
+        StepVerifier.create(productMono)
+                .expectNextMatches(product -> product != null && product.getStockQuantity().equals(90))
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductRepository_DeductStockQuantity_ReturnEmptyWhenStockIsInsufficient() {
+        repository.save(product1).block();
+
+        Mono<Product> productMono = repository.deductStockQuantity(product1.getId(), 101);
+
+        StepVerifier.create(productMono.then(repository.findById(product1.getId())))
+                .expectNextMatches(product -> product.getStockQuantity().equals(100))
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductRepository_DeductStockQuantityConcurrently_NeverOversell() {
+        repository.save(product1).block();
+        int deductions = 5000;
+        AtomicInteger succeeded = new AtomicInteger();
+
+        Flux<Product> deductionsFlux = Flux.range(0, deductions)
+                .flatMap(i -> repository.deductStockQuantity(product1.getId(), 1)
+                        .doOnNext(product -> succeeded.incrementAndGet()), 256);
+
+        StepVerifier.create(deductionsFlux.then(repository.findById(product1.getId())))
+                .assertNext(product -> {
+                    Assertions.assertThat(succeeded.get()).isEqualTo(100);
+                    Assertions.assertThat(product.getStockQuantity()).isEqualTo(0);
+                })
+                .verifyComplete();
+    }
+
+    // Mono<Product> addStockQuantity(id, quantity)
+    @Test
+    public void ProductRepository_AddStockQuantity_ReturnProductWithAddedStock() {
+        repository.save(product1).block();
+
+        Mono<Product> productMono = repository.addStockQuantity(product1.getId(), 10);
+
+        StepVerifier.create(productMono)
+                .expectNextMatches(product -> product != null && product.getStockQuantity().equals(110))
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductRepository_AddStockQuantity_ReturnEmptyWhenProductDoesNotExist() {
+        Mono<Product> productMono = repository.addStockQuantity(Long.MAX_VALUE, 10);
+
+        StepVerifier.create(productMono)
+                .expectNextCount(0L)
+                .verifyComplete();
+    }
+
+    // Flux<Product> updateStockQuantities(stockQuantityDeltas)
+    @Test
+    public void ProductRepository_UpdateStockQuantities_ReturnUpdatedProducts() {
+        repository.saveAll(Flux.just(product1, product2)).blockLast();
+        Map<Long, Integer> stockQuantityDeltas = new LinkedHashMap<>();
+        stockQuantityDeltas.put(product1.getId(), -10);
+        stockQuantityDeltas.put(product2.getId(), 20);
+
+        Mono<List<Product>> productListMono = repository.updateStockQuantities(stockQuantityDeltas).collectList();
+
+        StepVerifier.create(productListMono)
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList.size()).isEqualTo(2);
+                    Assertions.assertThat(productList).anyMatch(product -> product.getId().equals(product1.getId()) && product.getStockQuantity().equals(90));
+                    Assertions.assertThat(productList).anyMatch(product -> product.getId().equals(product2.getId()) && product.getStockQuantity().equals(220));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductRepository_UpdateStockQuantities_SkipProductsWithInsufficientStock() {
+        repository.saveAll(Flux.just(product1, product2)).blockLast();
+        Map<Long, Integer> stockQuantityDeltas = new LinkedHashMap<>();
+        stockQuantityDeltas.put(product1.getId(), -101);
+        stockQuantityDeltas.put(product2.getId(), -10);
+
+        Mono<List<Product>> productListMono = repository.updateStockQuantities(stockQuantityDeltas).collectList();
+
+        StepVerifier.create(productListMono)
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList.size()).isEqualTo(1);
+                    Assertions.assertThat(productList.get(0).getId()).isEqualTo(product2.getId());
+                    Assertions.assertThat(productList.get(0).getStockQuantity()).isEqualTo(190);
+                })
+                .verifyComplete();
+    }
+
+    // Mono<Product> save(product) with @Version
+    @Test
+    public void ProductRepository_Save_ThrowOptimisticLockingFailureExceptionForStaleProduct() {
+        Product savedProduct = repository.save(product1).block();
+        Product staleProduct = repository.findById(savedProduct.getId()).block();
+        repository.deductStockQuantity(savedProduct.getId(), 10).block();
+
+        staleProduct.setName("product 1 renamed");
+
+        StepVerifier.create(repository.save(staleProduct))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        Assertions.assertThat(repository.findById(savedProduct.getId()).block().getStockQuantity()).isEqualTo(90);
+    }
+
+    @Test
+    public void ProductRepository_Save_IncrementVersion() {
+        Product savedProduct = repository.save(product1).block();
+        Long version = savedProduct.getVersion();
+
+        savedProduct.setName("product 1 renamed");
+        Product updatedProduct = repository.save(savedProduct).block();
+
+        Assertions.assertThat(updatedProduct.getVersion()).isEqualTo(version + 1);
+        Assertions.assertThat(repository.findById(savedProduct.getId()).block().getVersion()).isEqualTo(version + 1);
+    }
+
+    // Flux<Product> findAllByIdIn(ids)
+    @Test
+    public void ProductRepository_FindAllByIdIn_ReturnExistingProducts() {
+        repository.saveAll(Flux.just(product1, product2)).blockLast();
+
+        Mono<List<Product>> productListMono = repository.findAllByIdIn(new Long[]{product1.getId(), product2.getId(), Long.MAX_VALUE}).collectList();
+
+        StepVerifier.create(productListMono)
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList.size()).isEqualTo(2);
+                    Assertions.assertThat(productList).extracting(Product::getId).containsExactlyInAnyOrder(product1.getId(), product2.getId());
+                })
+                .verifyComplete();
+    }
+
 }
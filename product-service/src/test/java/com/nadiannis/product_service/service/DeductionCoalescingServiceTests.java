@@ -0,0 +1,142 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.repository.ProductRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@DataR2dbcTest
+public class DeductionCoalescingServiceTests {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    private ProductRepository repository;
+
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        productRepository.deleteAll().block();
+        // Passes every call through to the database, only to count the statements
+        repository = Mockito.mock(ProductRepository.class, AdditionalAnswers.delegatesTo(productRepository));
+
+        product = productRepository.save(Product.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(1000)
+                .build()).block();
+    }
+
+    // Mono<Product> deduct(Long id, int quantity)
+    @Test
+    public void DeductionCoalescingService_Deduct_ApplyConcurrentDeductionsAsOneUpdate() {
+        DeductionCoalescingService service = new DeductionCoalescingService(repository, transactionalOperator, Duration.ofMillis(100), 1000);
+
+        List<Integer> stockQuantities = Flux.range(0, 64)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> service.deduct(product.getId(), 1))
+                .sequential()
+                .map(Product::getStockQuantity)
+                .collectList()
+                .block();
+
+        // Every deduction sees the stock as it was right after its own, as if they had run one by one
+        Assertions.assertThat(stockQuantities).hasSize(64).doesNotHaveDuplicates().allMatch(quantity -> quantity >= 936 && quantity < 1000);
+        Assertions.assertThat(findStockQuantity()).isEqualTo(936);
+        verify(repository, atMost(4)).deductStockQuantity(eq(product.getId()), anyInt());
+    }
+
+    @Test
+    public void DeductionCoalescingService_Deduct_RejectDeductionsThatNoLongerFitInArrivalOrder() {
+        product.setStockQuantity(5);
+        product = productRepository.save(product).block();
+        DeductionCoalescingService service = new DeductionCoalescingService(repository, transactionalOperator, Duration.ofMillis(100), 1000);
+
+        List<String> outcomes = Flux.mergeSequential(
+                deductOutcome(service, 3),
+                deductOutcome(service, 3),
+                deductOutcome(service, 2)
+        ).collectList().block();
+
+        Assertions.assertThat(outcomes).containsExactly("deducted, 2 left", "insufficient", "deducted, 0 left");
+        Assertions.assertThat(findStockQuantity()).isEqualTo(0);
+        // One statement for the whole group, then the locked read and one statement for the deductions that fit
+        verify(repository, times(2)).deductStockQuantity(eq(product.getId()), anyInt());
+        verify(repository, times(1)).findByIdForUpdate(product.getId());
+    }
+
+    @Test
+    public void DeductionCoalescingService_Deduct_ApplyFullBatchBeforeWindowEnds() {
+        DeductionCoalescingService service = new DeductionCoalescingService(repository, transactionalOperator, Duration.ofHours(1), 3);
+
+        StepVerifier.create(Flux.merge(
+                        service.deduct(product.getId(), 1),
+                        service.deduct(product.getId(), 1),
+                        service.deduct(product.getId(), 1)
+                ).count())
+                .expectNext(3L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(997);
+        verify(repository, times(1)).deductStockQuantity(product.getId(), 3);
+    }
+
+    @Test
+    public void DeductionCoalescingService_Deduct_LeaveOutDeductionsCancelledBeforeTheGroupIsApplied() {
+        DeductionCoalescingService service = new DeductionCoalescingService(repository, transactionalOperator, Duration.ofMillis(200), 1000);
+
+        service.deduct(product.getId(), 5).subscribe().dispose();
+
+        StepVerifier.create(service.deduct(product.getId(), 1))
+                .expectNextMatches(deductedProduct -> deductedProduct.getStockQuantity() == 999)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(999);
+        verify(repository, times(1)).deductStockQuantity(product.getId(), 1);
+    }
+
+    @Test
+    public void DeductionCoalescingService_Deduct_ThrowResourceNotFoundException() {
+        DeductionCoalescingService service = new DeductionCoalescingService(repository, transactionalOperator, Duration.ofMillis(10), 1000);
+
+        StepVerifier.create(service.deduct(product.getId() + 1, 1))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    private Mono<String> deductOutcome(DeductionCoalescingService service, int quantity) {
+        return service.deduct(product.getId(), quantity)
+                .map(deductedProduct -> "deducted, " + deductedProduct.getStockQuantity() + " left")
+                .onErrorResume(ResourceInsufficientException.class, error -> Mono.just("insufficient"));
+    }
+
+    private int findStockQuantity() {
+        return productRepository.findById(product.getId()).block().getStockQuantity();
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockAllotmentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Contended deductions of one product, 16 at a time, through the guarded UPDATE against the in-memory hot inventory.
+// Launched by HotInventoryServiceBenchmarkTests, which hands over its test context.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class HotInventoryServiceBenchmark {
+
+    private static final int STOCK_QUANTITY = 1_000_000_000;
+
+    static ApplicationContext applicationContext;
+
+    private ProductRepository productRepository;
+
+    private StockAllotmentRepository allotmentRepository;
+
+    private Product product;
+
+    private HotInventoryService service;
+
+    private final LongAdder deducted = new LongAdder();
+
+    @Setup
+    public void setUp() {
+        productRepository = applicationContext.getBean(ProductRepository.class);
+        allotmentRepository = applicationContext.getBean(StockAllotmentRepository.class);
+        allotmentRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+
+        product = productRepository.save(Product.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(STOCK_QUANTITY)
+                .build()).block();
+
+        service = new HotInventoryService(
+                productRepository,
+                allotmentRepository,
+                new ProductCache(1000, Duration.ofMinutes(1)),
+                applicationContext.getBean(TransactionalOperator.class),
+                List.of(product.getId()),
+                "benchmark",
+                1000,
+                0,
+                Duration.ofMillis(200)
+        );
+        service.start();
+    }
+
+    // Every deduction that succeeded is in stock_quantity once the allotments are returned, so none was lost or oversold
+    @TearDown
+    public void tearDown() {
+        service.stop();
+
+        long stockQuantity = productRepository.findById(product.getId()).block().getStockQuantity();
+        if (stockQuantity != STOCK_QUANTITY - deducted.sum()) {
+            throw new IllegalStateException("stock quantity " + stockQuantity + " after " + deducted.sum() + " deductions");
+        }
+    }
+
+    @Benchmark
+    public boolean rowLocked() {
+        return count(productRepository.deductStockQuantity(product.getId(), 1).hasElement().block());
+    }
+
+    @Benchmark
+    public boolean hotInventory() {
+        return count(service.deduct(product.getId(), 1).block());
+    }
+
+    private boolean count(boolean succeeded) {
+        if (succeeded) {
+            deducted.increment();
+        }
+        return succeeded;
+    }
+
+}
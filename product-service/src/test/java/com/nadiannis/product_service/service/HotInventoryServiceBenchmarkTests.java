@@ -0,0 +1,46 @@
+package com.nadiannis.product_service.service;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Collection;
+
+// Runs HotInventoryServiceBenchmark against the test database, with mvn test -Pbenchmark
+@DataR2dbcTest
+@Tag("benchmark")
+public class HotInventoryServiceBenchmarkTests {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Test
+    public void HotInventoryService_Deduct_BenchmarkAgainstRowLockedDeduction() throws RunnerException {
+        HotInventoryServiceBenchmark.applicationContext = applicationContext;
+        Options options = new OptionsBuilder()
+                .include(HotInventoryServiceBenchmark.class.getName())
+                // In this JVM, so the benchmark deducts through the repositories of this test context
+                .forks(0)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(1))
+                // A trial that lost or oversold stock fails in its teardown
+                .shouldFailOnError(true)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        Assertions.assertThat(results).hasSize(2);
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.entity.StockAllotment;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockAllotmentRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@DataR2dbcTest
+public class HotInventoryServiceTests {
+
+    private static final int STOCK_QUANTITY = 1000;
+    private static final int ALLOTMENT_SIZE = 100;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockAllotmentRepository allotmentRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    private Product product;
+
+    private List<HotInventoryService> startedServices;
+
+    @BeforeEach
+    void setUp() {
+        allotmentRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+        startedServices = new ArrayList<>();
+
+        product = productRepository.save(Product.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(STOCK_QUANTITY)
+                .build()).block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        startedServices.stream().filter(HotInventoryService::isRunning).forEach(HotInventoryService::stop);
+    }
+
+    // Mono<Boolean> deduct(id, quantity)
+    @Test
+    public void HotInventoryService_Deduct_ServeDeductionsFromOneAllotment() {
+        HotInventoryService service = startService("instance-1");
+
+        Flux.range(0, 50).concatMap(i -> service.deduct(product.getId(), 1)).blockLast();
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(STOCK_QUANTITY - ALLOTMENT_SIZE);
+        Assertions.assertThat(service.allottedQuantity(product.getId())).isEqualTo(50);
+
+        service.flush().block();
+        Assertions.assertThat(findAllottedQuantity("instance-1")).isEqualTo(50);
+    }
+
+    @Test
+    public void HotInventoryService_Deduct_EmitFalseOnceStockRunsOut() {
+        HotInventoryService service = startService("instance-1");
+
+        int sold = 0;
+        while (service.deduct(product.getId(), 7).block()) {
+            sold += 7;
+        }
+
+        Assertions.assertThat(sold).isEqualTo(STOCK_QUANTITY / 7 * 7);
+        Assertions.assertThat(findStockQuantity()).isEqualTo(0);
+    }
+
+    // void stop()
+    @Test
+    public void HotInventoryService_Stop_ReturnUnsoldStockToDatabase() {
+        HotInventoryService service = startService("instance-1");
+        Flux.range(0, 30).concatMap(i -> service.deduct(product.getId(), 1)).blockLast();
+
+        service.stop();
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(STOCK_QUANTITY - 30);
+        Assertions.assertThat(findAllottedQuantity("instance-1")).isEqualTo(0);
+    }
+
+    @Test
+    public void HotInventoryService_Deduct_DeductInDatabaseOnceStopped() {
+        HotInventoryService service = startService("instance-1");
+        Flux.range(0, 30).concatMap(i -> service.deduct(product.getId(), 1)).blockLast();
+        service.stop();
+
+        // A deduction that passed isHot just before the stop no longer takes an allotment
+        StepVerifier.create(service.deduct(product.getId(), 5))
+                .expectNext(true)
+                .verifyComplete();
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(STOCK_QUANTITY - 35);
+        Assertions.assertThat(service.allottedQuantity(product.getId())).isEqualTo(0);
+        Assertions.assertThat(findAllottedQuantity("instance-1")).isEqualTo(0);
+    }
+
+    // Mono<Long> returnAllotment(Long id)
+    @Test
+    public void HotInventoryService_ReturnAllotment_GiveUnsoldStockBackToDatabase() {
+        HotInventoryService service = startService("instance-1");
+        Flux.range(0, 30).concatMap(i -> service.deduct(product.getId(), 1)).blockLast();
+
+        StepVerifier.create(service.returnAllotment(product.getId()))
+                .expectNext(70L)
+                .verifyComplete();
+
+        Assertions.assertThat(findStockQuantity()).isEqualTo(STOCK_QUANTITY - 30);
+        Assertions.assertThat(service.allottedQuantity(product.getId())).isEqualTo(0);
+        // The 30 sold are written off the allotment row by the next flush
+        Assertions.assertThat(findAllottedQuantity("instance-1")).isEqualTo(30);
+    }
+
+    // HotInventoryService(..., hotProductIds, owner, ...)
+    @Test
+    public void HotInventoryService_Constructor_RequireOwnerForHotProducts() {
+        Assertions.assertThatThrownBy(() -> startService(""))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("product.inventory.owner");
+    }
+
+    // Mono<Void> reconcile()
+    @Test
+    public void HotInventoryService_Reconcile_NeverOversellAfterCrash() {
+        HotInventoryService crashed = startService("instance-1");
+        int soldBeforeCrash = deductConcurrently(crashed, 250);
+        crashed.flush().block();
+        Flux.range(0, 20).concatMap(i -> crashed.deduct(product.getId(), 1)).blockLast();
+        soldBeforeCrash += 20;
+        // The process dies here: neither the last deductions are flushed nor the unsold stock is returned
+
+        HotInventoryService restarted = startService("instance-1");
+        int soldAfterRestart = deductConcurrently(restarted, STOCK_QUANTITY);
+
+        Assertions.assertThat(soldBeforeCrash + soldAfterRestart).isLessThanOrEqualTo(STOCK_QUANTITY);
+        // At most the allotment held in memory at the crash goes unsold
+        Assertions.assertThat(soldBeforeCrash + soldAfterRestart).isGreaterThanOrEqualTo(STOCK_QUANTITY - ALLOTMENT_SIZE);
+        Assertions.assertThat(findStockQuantity()).isEqualTo(0);
+        StepVerifier.create(restarted.deduct(product.getId(), 1))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    private int deductConcurrently(HotInventoryService service, int deductions) {
+        return Flux.range(0, deductions)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> service.deduct(product.getId(), 1))
+                .sequential()
+                .filter(deducted -> deducted)
+                .count()
+                .block()
+                .intValue();
+    }
+
+    private HotInventoryService startService(String owner) {
+        HotInventoryService service = new HotInventoryService(
+                productRepository,
+                allotmentRepository,
+                new ProductCache(1000, Duration.ofMinutes(1)),
+                transactionalOperator,
+                List.of(product.getId()),
+                owner,
+                ALLOTMENT_SIZE,
+                4,
+                Duration.ofHours(1)
+        );
+        service.start();
+        startedServices.add(service);
+        return service;
+    }
+
+    private int findStockQuantity() {
+        return productRepository.findById(product.getId()).block().getStockQuantity();
+    }
+
+    private int findAllottedQuantity(String owner) {
+        return allotmentRepository.findByOwner(owner).map(StockAllotment::getQuantity).reduce(0, Integer::sum).block();
+    }
+
+}
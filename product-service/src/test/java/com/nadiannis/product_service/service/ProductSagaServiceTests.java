@@ -0,0 +1,164 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.dto.MessageDto;
+import com.nadiannis.common.dto.order.OrderItemResDto;
+import com.nadiannis.common.dto.order.OrderResDto;
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductResDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.product_service.entity.ProcessedSagaStep;
+import com.nadiannis.product_service.repository.ProcessedSagaStepRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductSagaServiceTests {
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private HotInventoryService hotInventoryService;
+
+    @Mock
+    private ProcessedSagaStepRepository processedSagaStepRepository;
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private ProductSagaService productSagaService;
+
+    private MessageDto messageDto;
+
+    @BeforeEach
+    void setUp() {
+        productSagaService = new ProductSagaService(productService, hotInventoryService, processedSagaStepRepository, kafkaTemplate, transactionalOperator);
+        lenient().when(hotInventoryService.withHotStock(any(), any())).thenAnswer(invocation -> ((Supplier<Flux<?>>) invocation.getArgument(1)).get());
+        lenient().when(processedSagaStepRepository.save(any(ProcessedSagaStep.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        OrderResDto orderResDto = OrderResDto.builder()
+                .id(7L)
+                .customerId(1L)
+                .totalAmount(300000.0)
+                .paymentMethod("BANK_TRANSFER")
+                .orderItems(List.of(
+                        OrderItemResDto.builder().orderId(7L).productId(1L).price(100000.0).quantity(1).build(),
+                        OrderItemResDto.builder().orderId(7L).productId(2L).price(200000.0).quantity(1).build()
+                ))
+                .build();
+        messageDto = MessageDto.builder().status("ORDER_CREATED").payload(orderResDto).build();
+    }
+
+    // Mono<Void> deductProducts(MessageDto messageDto)
+
+    @Test
+    public void ProductSagaService_DeductProducts_SendProductDeductedToPaymentKeyedByOrderId() {
+        when(productService.updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.just(new ProductResDto(), new ProductResDto()));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(productSagaService.deductProducts(messageDto)).verifyComplete();
+
+        ArgumentCaptor<BulkQuantityUpdateReqDto> bulkCaptor = ArgumentCaptor.forClass(BulkQuantityUpdateReqDto.class);
+        verify(productService).updateQuantitiesInCurrentTransaction(bulkCaptor.capture());
+        Assertions.assertThat(bulkCaptor.getValue().getProducts()).hasSize(2)
+                .allMatch(product -> product.getAction().equals(QuantityUpdateAction.DEDUCT.toString()));
+
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("payment"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PRODUCT_DEDUCTED");
+    }
+
+    @Test
+    public void ProductSagaService_DeductProducts_SendProductDeductFailedToOrderWhenStockIsInsufficient() {
+        when(productService.updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.error(new ResourceInsufficientException("product", "quantity")));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(productSagaService.deductProducts(messageDto)).verifyComplete();
+
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("order"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PRODUCT_DEDUCT_FAILED");
+        verify(kafkaTemplate, never()).send(eq("payment"), anyString(), any());
+    }
+
+    @Test
+    public void ProductSagaService_DeductProducts_PropagateTransientErrorWithoutSending() {
+        when(productService.updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.error(new TransientDataAccessResourceException("connection lost")));
+
+        StepVerifier.create(productSagaService.deductProducts(messageDto))
+                .expectError(TransientDataAccessResourceException.class)
+                .verify();
+
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    public void ProductSagaService_DeductProducts_OnlySendAgainWhenRedelivered() {
+        when(processedSagaStepRepository.save(any(ProcessedSagaStep.class))).thenReturn(Mono.error(new DuplicateKeyException("order_id, action")));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(productSagaService.deductProducts(messageDto)).verifyComplete();
+
+        verify(productService, never()).updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class));
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("payment"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PRODUCT_DEDUCTED");
+    }
+
+    // Mono<Void> addProducts(MessageDto messageDto)
+
+    @Test
+    public void ProductSagaService_AddProducts_AddStockBackAndSendPaymentRejectedToOrder() {
+        when(productService.updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.just(new ProductResDto(), new ProductResDto()));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(productSagaService.addProducts(messageDto)).verifyComplete();
+
+        ArgumentCaptor<BulkQuantityUpdateReqDto> bulkCaptor = ArgumentCaptor.forClass(BulkQuantityUpdateReqDto.class);
+        verify(productService).updateQuantitiesInCurrentTransaction(bulkCaptor.capture());
+        Assertions.assertThat(bulkCaptor.getValue().getProducts())
+                .allMatch(product -> product.getAction().equals(QuantityUpdateAction.ADD.toString()));
+
+        ArgumentCaptor<Object> messageCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("order"), eq("7"), messageCaptor.capture());
+        Assertions.assertThat(((MessageDto) messageCaptor.getValue()).getStatus()).isEqualTo("PAYMENT_REJECTED");
+    }
+
+    @Test
+    public void ProductSagaService_AddProducts_RecordStepPerOrderAndAction() {
+        when(productService.updateQuantitiesInCurrentTransaction(any(BulkQuantityUpdateReqDto.class))).thenReturn(Flux.just(new ProductResDto(), new ProductResDto()));
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StepVerifier.create(productSagaService.addProducts(messageDto)).verifyComplete();
+
+        ArgumentCaptor<ProcessedSagaStep> stepCaptor = ArgumentCaptor.forClass(ProcessedSagaStep.class);
+        verify(processedSagaStepRepository).save(stepCaptor.capture());
+        Assertions.assertThat(stepCaptor.getValue().getOrderId()).isEqualTo(7L);
+        Assertions.assertThat(stepCaptor.getValue().getAction()).isEqualTo(QuantityUpdateAction.ADD.toString());
+    }
+
+}
@@ -1,8 +1,15 @@
 package com.nadiannis.product_service.service;
 
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductBatchResDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
 import com.nadiannis.common.dto.product.ProductResDto;
 import com.nadiannis.common.dto.product.QuantityUpdateReqDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.retry.ConflictRetry;
 import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.product_service.cache.ProductCache;
 import com.nadiannis.product_service.dto.ProductReqDto;
 import com.nadiannis.product_service.entity.Product;
 import com.nadiannis.product_service.repository.ProductRepository;
@@ -12,12 +19,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.mockito.Mockito.*;
 
@@ -27,6 +41,21 @@ public class ProductServiceTests {
     @Mock
     private ProductRepository productRepository;
 
+    @Spy
+    private ProductCache productCache = new ProductCache(1000, Duration.ofMinutes(1));
+
+    @Mock
+    private HotInventoryService hotInventoryService;
+
+    @Mock
+    private DeductionCoalescingService deductionCoalescingService;
+
+    @Spy
+    private ConflictRetry conflictRetry = new ConflictRetry("product", 3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
     @InjectMocks
     private ProductService productService;
 
@@ -37,7 +66,11 @@ public class ProductServiceTests {
     private QuantityUpdateReqDto quantityUpdateReqDto2;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
+        lenient().when(hotInventoryService.withHotStock(any(), any())).thenAnswer(invocation -> ((Supplier<Flux<?>>) invocation.getArgument(1)).get());
+        lenient().when(transactionalOperator.transactional(any(Flux.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
         product1 = Product.builder()
                 .id(1L)
                 .name("product 1")
@@ -91,6 +124,23 @@ public class ProductServiceTests {
         verify(productRepository, times(1)).findAll();
     }
 
+    // Mono<ProductBatchResDto> getBatchByIds(List<Long> ids)
+    @Test
+    public void ProductService_GetBatchByIds_ReturnProductResDtosAndMissingIds() {
+        when(productRepository.findAllByIdIn(any(Long[].class))).thenReturn(Flux.just(product1, product2));
+
+        Mono<ProductBatchResDto> productBatchMono = productService.getBatchByIds(List.of(1L, 2L, 3L, 1L));
+
+        StepVerifier.create(productBatchMono)
+                .assertNext(productBatch -> {
+                    Assertions.assertThat(productBatch.getProducts().size()).isEqualTo(2);
+                    Assertions.assertThat(productBatch.getMissingIds()).containsExactly(3L);
+                })
+                .verifyComplete();
+
+        verify(productRepository, times(1)).findAllByIdIn(new Long[]{1L, 2L, 3L});
+    }
+
     // Mono<ProductResDto> add(ProductReqDto productReqDto)
     @Test
     public void ProductService_Add_SaveAndReturnProductResDto() {
@@ -120,6 +170,49 @@ public class ProductServiceTests {
         verify(productRepository, times(1)).findById(anyLong());
     }
 
+    @Test
+    public void ProductService_GetById_ReturnCachedProductResDtoOnSecondRead() {
+        Long productId = product1.getId();
+        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product1));
+
+        productService.getById(productId).block();
+        Mono<ProductResDto> productMono = productService.getById(productId);
+
+        StepVerifier.create(productMono)
+                .expectNextMatches(product -> product.getId().equals(productId))
+                .verifyComplete();
+
+        verify(productRepository, times(1)).findById(anyLong());
+    }
+
+    @Test
+    public void ProductService_UpdateQuantity_InvalidateCachedProductResDto() {
+        Long productId = product1.getId();
+        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product1));
+        productService.getById(productId).block();
+
+        Product deductedProduct = Product.builder().id(productId).name(product1.getName()).stockQuantity(90).build();
+        when(productRepository.deductStockQuantity(productId, 10)).thenReturn(Mono.just(deductedProduct));
+        productService.updateQuantity(productId, quantityUpdateReqDto1).block();
+
+        // The next read goes to the database instead of the response of the write
+        Assertions.assertThat(productCache.get(productId)).isEmpty();
+        productService.getById(productId).block();
+        verify(productRepository, times(2)).findById(anyLong());
+    }
+
+    @Test
+    public void ProductService_Delete_InvalidateCachedProductResDto() {
+        Long productId = product1.getId();
+        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product1));
+        when(productRepository.deleteById(anyLong())).thenReturn(Mono.empty());
+        productService.getById(productId).block();
+
+        productService.delete(productId).block();
+
+        Assertions.assertThat(productCache.get(productId)).isEmpty();
+    }
+
     // Mono<ProductResDto> update(Long id, ProductReqDto productReqDto)
     @Test
     public void ProductService_Update_UpdateAndReturnProductResDto() {
@@ -147,13 +240,48 @@ public class ProductServiceTests {
         verify(productRepository, times(1)).save(any(Product.class));
     }
 
+    @Test
+    public void ProductService_Update_ReadAndSaveAgainAfterConflict() {
+        Long productId = product2.getId();
+        product1.setId(productId);
+        AtomicInteger reads = new AtomicInteger();
+        when(productRepository.findById(anyLong())).thenReturn(Mono.fromSupplier(() -> {
+            reads.incrementAndGet();
+            return product2;
+        }));
+        when(productRepository.save(any(Product.class)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("version changed")))
+                .thenReturn(Mono.just(product1));
+
+        StepVerifier.create(productService.update(productId, productReqDto))
+                .expectNextMatches(updatedProduct -> updatedProduct.getName().equals(productReqDto.getName()))
+                .verifyComplete();
+
+        // The retry subscribes to the read again, so the second save applies the request to a fresh copy
+        Assertions.assertThat(reads.get()).isEqualTo(2);
+        verify(productRepository, times(2)).save(any(Product.class));
+    }
+
+    @Test
+    public void ProductService_Update_ThrowResourceInsufficientExceptionBelowReservedQuantity() {
+        Long productId = product2.getId();
+        product2.setReservedQuantity(productReqDto.getStockQuantity() + 1);
+        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product2));
+
+        StepVerifier.create(productService.update(productId, productReqDto))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
     // Mono<ProductResDto> updateQuantity(Long id, QuantityUpdateReqDto quantityUpdateReqDto)
     @Test
     public void ProductService_DeductQuantity_DeductStockQuantityAndReturnProductResDto() {
         Long productId = product1.getId();
         Integer updatedStockQuantity = product1.getStockQuantity() - quantityUpdateReqDto1.getStockQuantity();
-        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product1));
-        when(productRepository.save(any(Product.class))).thenReturn(Mono.just(product1));
+        product1.setStockQuantity(updatedStockQuantity);
+        when(productRepository.deductStockQuantity(anyLong(), anyInt())).thenReturn(Mono.just(product1));
 
         Mono<ProductResDto> updatedProductMono = productService.updateQuantity(productId, quantityUpdateReqDto1);
 
@@ -161,16 +289,96 @@ public class ProductServiceTests {
                 .expectNextMatches(updatedProduct -> updatedProduct != null && updatedProduct.getStockQuantity().equals(updatedStockQuantity))
                 .verifyComplete();
 
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).save(any(Product.class));
+        verify(productRepository, times(1)).deductStockQuantity(productId, quantityUpdateReqDto1.getStockQuantity());
+        verify(productRepository, never()).findById(anyLong());
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    @Test
+    public void ProductService_DeductQuantity_DeductHotProductInMemory() {
+        Long productId = product1.getId();
+        when(hotInventoryService.isHot(productId)).thenReturn(true);
+        when(hotInventoryService.deduct(productId, quantityUpdateReqDto1.getStockQuantity())).thenReturn(Mono.just(true));
+        when(hotInventoryService.allottedQuantity(productId)).thenReturn(40L);
+        when(productRepository.findById(productId)).thenReturn(Mono.just(product1));
+
+        Mono<ProductResDto> updatedProductMono = productService.updateQuantity(productId, quantityUpdateReqDto1);
+
+        // The stock left in the database plus what is still held in memory
+        StepVerifier.create(updatedProductMono)
+                .expectNextMatches(updatedProduct -> updatedProduct.getStockQuantity().equals(product1.getStockQuantity() + 40))
+                .verifyComplete();
+
+        verify(productRepository, never()).deductStockQuantity(anyLong(), anyInt());
+    }
+
+    @Test
+    public void ProductService_DeductQuantity_DeductThroughCoalescingService() {
+        Long productId = product1.getId();
+        Integer updatedStockQuantity = product1.getStockQuantity() - quantityUpdateReqDto1.getStockQuantity();
+        product1.setStockQuantity(updatedStockQuantity);
+        when(deductionCoalescingService.isEnabled()).thenReturn(true);
+        when(deductionCoalescingService.deduct(productId, quantityUpdateReqDto1.getStockQuantity())).thenReturn(Mono.just(product1));
+
+        StepVerifier.create(productService.updateQuantity(productId, quantityUpdateReqDto1))
+                .expectNextMatches(updatedProduct -> updatedProduct.getStockQuantity().equals(updatedStockQuantity))
+                .verifyComplete();
+
+        verify(productRepository, never()).deductStockQuantity(anyLong(), anyInt());
+    }
+
+    @Test
+    public void ProductService_DeductQuantity_ThrowResourceInsufficientExceptionForSoldOutHotProduct() {
+        Long productId = product1.getId();
+        when(hotInventoryService.isHot(productId)).thenReturn(true);
+        when(hotInventoryService.deduct(productId, quantityUpdateReqDto1.getStockQuantity())).thenReturn(Mono.just(false));
+        when(productRepository.existsById(productId)).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productService.updateQuantity(productId, quantityUpdateReqDto1))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        verify(productRepository, never()).deductStockQuantity(anyLong(), anyInt());
+    }
+
+    @Test
+    public void ProductService_DeductQuantity_ThrowResourceInsufficientException() {
+        Long productId = product1.getId();
+        when(productRepository.deductStockQuantity(anyLong(), anyInt())).thenReturn(Mono.empty());
+        when(productRepository.existsById(anyLong())).thenReturn(Mono.just(true));
+
+        Mono<ProductResDto> updatedProductMono = productService.updateQuantity(productId, quantityUpdateReqDto1);
+
+        StepVerifier.create(updatedProductMono)
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        verify(productRepository, times(1)).deductStockQuantity(productId, quantityUpdateReqDto1.getStockQuantity());
+        verify(productRepository, times(1)).existsById(productId);
+    }
+
+    @Test
+    public void ProductService_DeductQuantity_ThrowResourceNotFoundException() {
+        Long productId = product1.getId();
+        when(productRepository.deductStockQuantity(anyLong(), anyInt())).thenReturn(Mono.empty());
+        when(productRepository.existsById(anyLong())).thenReturn(Mono.just(false));
+
+        Mono<ProductResDto> updatedProductMono = productService.updateQuantity(productId, quantityUpdateReqDto1);
+
+        StepVerifier.create(updatedProductMono)
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+
+        verify(productRepository, times(1)).deductStockQuantity(productId, quantityUpdateReqDto1.getStockQuantity());
+        verify(productRepository, times(1)).existsById(productId);
     }
 
     @Test
     public void ProductService_AddQuantity_AddStockQuantityAndReturnProductResDto() {
         Long productId = product1.getId();
         Integer updatedStockQuantity = product1.getStockQuantity() + quantityUpdateReqDto2.getStockQuantity();
-        when(productRepository.findById(anyLong())).thenReturn(Mono.just(product1));
-        when(productRepository.save(any(Product.class))).thenReturn(Mono.just(product1));
+        product1.setStockQuantity(updatedStockQuantity);
+        when(productRepository.addStockQuantity(anyLong(), anyInt())).thenReturn(Mono.just(product1));
 
         Mono<ProductResDto> updatedProductMono = productService.updateQuantity(productId, quantityUpdateReqDto2);
 
@@ -178,8 +386,54 @@ public class ProductServiceTests {
                 .expectNextMatches(updatedProduct -> updatedProduct != null && updatedProduct.getStockQuantity().equals(updatedStockQuantity))
                 .verifyComplete();
 
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).save(any(Product.class));
+        verify(productRepository, times(1)).addStockQuantity(productId, quantityUpdateReqDto2.getStockQuantity());
+        verify(productRepository, never()).findById(anyLong());
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    // Flux<ProductResDto> updateQuantities(BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto)
+    @Test
+    public void ProductService_UpdateQuantities_MergeEntriesAndReturnProductResDtos() {
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(
+                        ProductQuantityUpdateReqDto.builder().productId(1L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(2L).action(QuantityUpdateAction.ADD.toString()).stockQuantity(5).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(1L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(5).build()
+                ))
+                .build();
+        when(productRepository.updateStockQuantities(anyMap())).thenReturn(Flux.just(product1, product2));
+
+        Mono<List<ProductResDto>> productListMono = productService.updateQuantities(bulkQuantityUpdateReqDto).collectList();
+
+        StepVerifier.create(productListMono)
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList.size()).isEqualTo(2);
+                    Assertions.assertThat(productList.get(0).getId()).isEqualTo(product1.getId());
+                    Assertions.assertThat(productList.get(1).getId()).isEqualTo(product2.getId());
+                })
+                .verifyComplete();
+
+        verify(productRepository, times(1)).updateStockQuantities(Map.of(1L, -15, 2L, 5));
+    }
+
+    @Test
+    public void ProductService_UpdateQuantities_ThrowResourceInsufficientException() {
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(
+                        ProductQuantityUpdateReqDto.builder().productId(1L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(2L).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(1000).build()
+                ))
+                .build();
+        when(productRepository.updateStockQuantities(anyMap())).thenReturn(Flux.just(product1));
+        when(productRepository.existsById(anyLong())).thenReturn(Mono.just(true));
+
+        Flux<ProductResDto> productFlux = productService.updateQuantities(bulkQuantityUpdateReqDto);
+
+        StepVerifier.create(productFlux)
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        verify(productRepository, times(1)).existsById(2L);
     }
 
     // Mono<Void> delete(Long id)
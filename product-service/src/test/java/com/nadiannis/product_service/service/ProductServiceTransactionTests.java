@@ -0,0 +1,225 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.retry.ConflictRetry;
+import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.config.ConflictRetryConfig;
+import com.nadiannis.product_service.dto.ProductReqDto;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockAllotmentRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@DataR2dbcTest
+@Import({ProductService.class, HotInventoryService.class, DeductionCoalescingService.class, ProductCache.class, ConflictRetryConfig.class})
+public class ProductServiceTransactionTests {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private StockAllotmentRepository allotmentRepository;
+
+    @Autowired
+    private DeductionCoalescingService deductionCoalescingService;
+
+    @Autowired
+    private ConflictRetry conflictRetry;
+
+    private Product product1;
+    private Product product2;
+
+    private List<HotInventoryService> startedHotInventoryServices;
+
+    @BeforeEach
+    void setUp() {
+        allotmentRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+        startedHotInventoryServices = new ArrayList<>();
+
+        product1 = productRepository.save(Product.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(100)
+                .build()).block();
+        product2 = productRepository.save(Product.builder()
+                .name("product 2")
+                .price(200000.0)
+                .category("category 2")
+                .stockQuantity(5)
+                .build()).block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        startedHotInventoryServices.stream().filter(HotInventoryService::isRunning).forEach(HotInventoryService::stop);
+    }
+
+    // Mono<ProductResDto> getById(Long id)
+    @Test
+    public void ProductService_GetById_AddStockHeldInMemoryForHotProduct() {
+        HotInventoryService hotInventoryService = startHotInventoryService(product1.getId());
+        ProductService hotProductService = createProductService(hotInventoryService);
+        // Takes an allotment of 10, of which 9 stay in memory
+        hotInventoryService.deduct(product1.getId(), 1).block();
+
+        StepVerifier.create(hotProductService.getById(product1.getId()))
+                .expectNextMatches(product -> product.getStockQuantity().equals(99) && product.getAvailableQuantity().equals(99))
+                .verifyComplete();
+        // The cache keeps the database value, so the memory is not counted twice on the next read
+        StepVerifier.create(hotProductService.getById(product1.getId()))
+                .expectNextMatches(product -> product.getStockQuantity().equals(99))
+                .verifyComplete();
+    }
+
+    // Mono<ProductResDto> update(Long id, ProductReqDto productReqDto)
+    @Test
+    public void ProductService_Update_HandBackHotStockBeforeSettingStockQuantity() {
+        HotInventoryService hotInventoryService = startHotInventoryService(product1.getId());
+        ProductService hotProductService = createProductService(hotInventoryService);
+        // Takes an allotment of 10, of which 9 stay in memory
+        hotInventoryService.deduct(product1.getId(), 1).block();
+        ProductReqDto productReqDto = ProductReqDto.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(50)
+                .build();
+
+        StepVerifier.create(hotProductService.update(product1.getId(), productReqDto))
+                .expectNextMatches(product -> product.getStockQuantity().equals(50))
+                .verifyComplete();
+
+        Assertions.assertThat(hotInventoryService.allottedQuantity(product1.getId())).isEqualTo(0);
+        // Only the stock set by the update is sold, nothing held in memory before it comes on top
+        long sold = Flux.range(0, 100).concatMap(i -> hotInventoryService.deduct(product1.getId(), 1)).filter(deducted -> deducted).count().block();
+        Assertions.assertThat(sold).isEqualTo(50);
+    }
+
+    @Test
+    public void ProductService_UpdateQuantities_RollBackEveryProductWhenOneIsInsufficient() {
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(
+                        ProductQuantityUpdateReqDto.builder().productId(product1.getId()).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(product2.getId()).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build()
+                ))
+                .build();
+
+        StepVerifier.create(productService.updateQuantities(bulkQuantityUpdateReqDto))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        StepVerifier.create(productRepository.findAllById(Flux.just(product1.getId(), product2.getId())).collectList())
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList).anyMatch(product -> product.getId().equals(product1.getId()) && product.getStockQuantity().equals(100));
+                    Assertions.assertThat(productList).anyMatch(product -> product.getId().equals(product2.getId()) && product.getStockQuantity().equals(5));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductService_UpdateQuantities_InvalidateCachedProductsOnceCommitted() {
+        productService.getById(product1.getId()).block();
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(ProductQuantityUpdateReqDto.builder().productId(product1.getId()).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build()))
+                .build();
+
+        // Inside the transaction the cache keeps the committed value, the uncommitted one never reaches it
+        Mono<Boolean> cachedBeforeCommit = transactionalOperator.transactional(productService.updateQuantities(bulkQuantityUpdateReqDto)
+                .then(Mono.fromSupplier(() -> productCache.get(product1.getId()).map(product -> product.getStockQuantity() == 100).orElse(false))));
+
+        StepVerifier.create(cachedBeforeCommit)
+                .expectNext(true)
+                .verifyComplete();
+
+        Assertions.assertThat(productCache.get(product1.getId())).isEmpty();
+        StepVerifier.create(productService.getById(product1.getId()))
+                .expectNextMatches(product -> product.getStockQuantity().equals(90))
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductService_UpdateQuantities_ApplyEveryProduct() {
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(
+                        ProductQuantityUpdateReqDto.builder().productId(product1.getId()).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(10).build(),
+                        ProductQuantityUpdateReqDto.builder().productId(product2.getId()).action(QuantityUpdateAction.ADD.toString()).stockQuantity(10).build()
+                ))
+                .build();
+
+        StepVerifier.create(productService.updateQuantities(bulkQuantityUpdateReqDto).collectList())
+                .assertNext(productList -> {
+                    Assertions.assertThat(productList.size()).isEqualTo(2);
+                    Assertions.assertThat(productList.get(0).getStockQuantity()).isEqualTo(90);
+                    Assertions.assertThat(productList.get(1).getStockQuantity()).isEqualTo(15);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void ProductService_UpdateQuantities_DeductStockHeldInMemoryForHotProduct() {
+        HotInventoryService hotInventoryService = startHotInventoryService(product1.getId());
+        ProductService hotProductService = createProductService(hotInventoryService);
+        // Takes an allotment of 10, so the database has 90 left and memory 9
+        hotInventoryService.deduct(product1.getId(), 1).block();
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = BulkQuantityUpdateReqDto.builder()
+                .products(List.of(ProductQuantityUpdateReqDto.builder().productId(product1.getId()).action(QuantityUpdateAction.DEDUCT.toString()).stockQuantity(95).build()))
+                .build();
+
+        StepVerifier.create(hotProductService.updateQuantities(bulkQuantityUpdateReqDto))
+                .expectNextMatches(product -> product.getStockQuantity().equals(4))
+                .verifyComplete();
+
+        Assertions.assertThat(hotInventoryService.allottedQuantity(product1.getId())).isEqualTo(0);
+        Assertions.assertThat(productRepository.findById(product1.getId()).block().getStockQuantity()).isEqualTo(4);
+    }
+
+    private HotInventoryService startHotInventoryService(Long hotProductId) {
+        HotInventoryService hotInventoryService = new HotInventoryService(
+                productRepository,
+                allotmentRepository,
+                productCache,
+                transactionalOperator,
+                List.of(hotProductId),
+                "instance-1",
+                10,
+                4,
+                Duration.ofHours(1)
+        );
+        hotInventoryService.start();
+        startedHotInventoryServices.add(hotInventoryService);
+        return hotInventoryService;
+    }
+
+    private ProductService createProductService(HotInventoryService hotInventoryService) {
+        return new ProductService(productRepository, productCache, hotInventoryService, deductionCoalescingService, conflictRetry, transactionalOperator);
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.nadiannis.product_service.service;
+
+import com.nadiannis.common.dto.product.BulkQuantityUpdateReqDto;
+import com.nadiannis.common.dto.product.ProductQuantityUpdateReqDto;
+import com.nadiannis.common.dto.reservation.ReservationItemReqDto;
+import com.nadiannis.common.dto.reservation.ReservationReqDto;
+import com.nadiannis.common.dto.reservation.ReservationResDto;
+import com.nadiannis.common.exception.InvalidStatusTransitionException;
+import com.nadiannis.common.exception.ResourceInsufficientException;
+import com.nadiannis.common.exception.ResourceNotFoundException;
+import com.nadiannis.common.utils.QuantityUpdateAction;
+import com.nadiannis.common.utils.ReservationStatus;
+import com.nadiannis.product_service.cache.ProductCache;
+import com.nadiannis.product_service.config.ConflictRetryConfig;
+import com.nadiannis.product_service.entity.Product;
+import com.nadiannis.product_service.repository.ProductRepository;
+import com.nadiannis.product_service.repository.StockAllotmentRepository;
+import com.nadiannis.product_service.repository.StockReservationRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@DataR2dbcTest
+@Import({ReservationService.class, ProductService.class, HotInventoryService.class, DeductionCoalescingService.class, ProductCache.class, ConflictRetryConfig.class})
+public class ReservationServiceTests {
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockReservationRepository reservationRepository;
+
+    @Autowired
+    private StockAllotmentRepository allotmentRepository;
+
+    @Autowired
+    private ProductCache cache;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    private Product product1;
+    private Product product2;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository.deleteAll().block();
+        allotmentRepository.deleteAll().block();
+        productRepository.deleteAll().block();
+
+        product1 = productRepository.save(Product.builder()
+                .name("product 1")
+                .price(100000.0)
+                .category("category 1")
+                .stockQuantity(100)
+                .build()).block();
+        product2 = productRepository.save(Product.builder()
+                .name("product 2")
+                .price(200000.0)
+                .category("category 2")
+                .stockQuantity(5)
+                .build()).block();
+    }
+
+    // Flux<ReservationResDto> reserve(reservationReqDto)
+    @Test
+    public void ReservationService_Reserve_HoldQuantitiesWithoutDeductingStock() {
+        ReservationReqDto reservationReqDto = createReservationReqDto(1L,
+                new ReservationItemReqDto(product1.getId(), 10),
+                new ReservationItemReqDto(product2.getId(), 3),
+                new ReservationItemReqDto(product1.getId(), 5));
+
+        StepVerifier.create(reservationService.reserve(reservationReqDto).collectList())
+                .assertNext(reservations -> {
+                    Assertions.assertThat(reservations).extracting(ReservationResDto::getProductId).containsExactly(product1.getId(), product2.getId());
+                    Assertions.assertThat(reservations).extracting(ReservationResDto::getQuantity).containsExactly(15, 3);
+                    Assertions.assertThat(reservations).extracting(ReservationResDto::getStatus).containsOnly(ReservationStatus.RESERVED.toString());
+                    Assertions.assertThat(reservations).allMatch(reservation -> reservation.getExpiresAt().isAfter(LocalDateTime.now()));
+                })
+                .verifyComplete();
+
+        assertQuantities(product1.getId(), 100, 15);
+        assertQuantities(product2.getId(), 5, 3);
+        Assertions.assertThat(productService.getById(product1.getId()).block().getAvailableQuantity()).isEqualTo(85);
+    }
+
+    @Test
+    public void ReservationService_Reserve_RollBackEveryProductWhenOneIsInsufficient() {
+        ReservationReqDto reservationReqDto = createReservationReqDto(1L,
+                new ReservationItemReqDto(product1.getId(), 10),
+                new ReservationItemReqDto(product2.getId(), 10));
+
+        StepVerifier.create(reservationService.reserve(reservationReqDto))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        assertQuantities(product1.getId(), 100, 0);
+        assertQuantities(product2.getId(), 5, 0);
+        Assertions.assertThat(reservationRepository.count().block()).isEqualTo(0L);
+    }
+
+    @Test
+    public void ReservationService_Reserve_ReturnResourceNotFoundExceptionForMissingProduct() {
+        StepVerifier.create(reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(-1L, 1))))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    public void ReservationService_Reserve_CountActiveReservationsAgainstAvailableStock() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product2.getId(), 3))).blockLast();
+
+        StepVerifier.create(reservationService.reserve(createReservationReqDto(2L, new ReservationItemReqDto(product2.getId(), 3))))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        // Direct deductions only take from the available stock as well
+        BulkQuantityUpdateReqDto bulkQuantityUpdateReqDto = new BulkQuantityUpdateReqDto(List.of(
+                new ProductQuantityUpdateReqDto(product2.getId(), QuantityUpdateAction.DEDUCT.toString(), 3)));
+        StepVerifier.create(productService.updateQuantities(bulkQuantityUpdateReqDto))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        assertQuantities(product2.getId(), 5, 3);
+    }
+
+    @Test
+    public void ReservationService_Reserve_HandHotStockBackWhenDatabaseRunsShort() {
+        HotInventoryService hotInventoryService = new HotInventoryService(productRepository, allotmentRepository, cache, transactionalOperator,
+                List.of(product1.getId()), "instance-1", 50, 4, Duration.ofHours(1));
+        hotInventoryService.start();
+        try {
+            // 50 move into memory, 40 of them are sold
+            Flux.range(0, 40).concatMap(i -> hotInventoryService.deduct(product1.getId(), 1)).blockLast();
+            assertQuantities(product1.getId(), 50, 0);
+            ReservationService service = new ReservationService(reservationRepository, productRepository, cache, hotInventoryService, transactionalOperator, Duration.ofMinutes(15));
+
+            StepVerifier.create(service.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product1.getId(), 55))))
+                    .expectNextMatches(reservation -> reservation.getQuantity() == 55)
+                    .verifyComplete();
+
+            assertQuantities(product1.getId(), 60, 55);
+            Assertions.assertThat(hotInventoryService.allottedQuantity(product1.getId())).isEqualTo(0);
+        } finally {
+            hotInventoryService.stop();
+        }
+    }
+
+    @Test
+    public void ReservationService_Reserve_ReturnExistingReservationsForReplayedOrder() {
+        ReservationReqDto reservationReqDto = createReservationReqDto(1L, new ReservationItemReqDto(product1.getId(), 10));
+        List<ReservationResDto> reservations = reservationService.reserve(reservationReqDto).collectList().block();
+
+        StepVerifier.create(reservationService.reserve(reservationReqDto).map(ReservationResDto::getId).collectList())
+                .expectNext(reservations.stream().map(ReservationResDto::getId).toList())
+                .verifyComplete();
+
+        assertQuantities(product1.getId(), 100, 10);
+    }
+
+    // Flux<ReservationResDto> confirm(orderId)
+    @Test
+    public void ReservationService_Confirm_DeductReservedQuantitiesFromStock() {
+        reservationService.reserve(createReservationReqDto(1L,
+                new ReservationItemReqDto(product1.getId(), 10),
+                new ReservationItemReqDto(product2.getId(), 5))).blockLast();
+
+        StepVerifier.create(reservationService.confirm(1L).collectList())
+                .assertNext(reservations -> Assertions.assertThat(reservations)
+                        .extracting(ReservationResDto::getStatus)
+                        .containsOnly(ReservationStatus.CONFIRMED.toString()))
+                .verifyComplete();
+
+        // Confirming again leaves the stock as it is
+        reservationService.confirm(1L).blockLast();
+
+        assertQuantities(product1.getId(), 90, 0);
+        assertQuantities(product2.getId(), 0, 0);
+    }
+
+    @Test
+    public void ReservationService_Confirm_DeductAvailableStockForExpiredReservation() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product1.getId(), 10))).blockLast();
+        expireReservations(1L);
+        createReaper(10).reapExpired().block();
+        assertQuantities(product1.getId(), 100, 0);
+
+        StepVerifier.create(reservationService.confirm(1L).collectList())
+                .assertNext(reservations -> Assertions.assertThat(reservations)
+                        .extracting(ReservationResDto::getStatus)
+                        .containsOnly(ReservationStatus.CONFIRMED.toString()))
+                .verifyComplete();
+
+        assertQuantities(product1.getId(), 90, 0);
+    }
+
+    @Test
+    public void ReservationService_Confirm_ReturnResourceInsufficientExceptionWhenExpiredStockIsGone() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product2.getId(), 5))).blockLast();
+        expireReservations(1L);
+        createReaper(10).reapExpired().block();
+        reservationService.reserve(createReservationReqDto(2L, new ReservationItemReqDto(product2.getId(), 5))).blockLast();
+
+        StepVerifier.create(reservationService.confirm(1L))
+                .expectError(ResourceInsufficientException.class)
+                .verify();
+
+        assertQuantities(product2.getId(), 5, 5);
+        Assertions.assertThat(reservationRepository.findByOrderId(1L).blockFirst().getStatus()).isEqualTo(ReservationStatus.EXPIRED.toString());
+    }
+
+    @Test
+    public void ReservationService_Confirm_ReturnInvalidStatusTransitionExceptionForReleasedReservation() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product1.getId(), 10))).blockLast();
+        reservationService.release(1L).blockLast();
+
+        StepVerifier.create(reservationService.confirm(1L))
+                .expectError(InvalidStatusTransitionException.class)
+                .verify();
+
+        assertQuantities(product1.getId(), 100, 0);
+    }
+
+    @Test
+    public void ReservationService_Confirm_ReturnResourceNotFoundExceptionWithoutReservations() {
+        StepVerifier.create(reservationService.confirm(1L))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    // Flux<ReservationResDto> release(orderId)
+    @Test
+    public void ReservationService_Release_GiveReservedQuantitiesBack() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product2.getId(), 5))).blockLast();
+
+        StepVerifier.create(reservationService.release(1L).collectList())
+                .assertNext(reservations -> Assertions.assertThat(reservations)
+                        .extracting(ReservationResDto::getStatus)
+                        .containsOnly(ReservationStatus.RELEASED.toString()))
+                .verifyComplete();
+
+        // Releasing again gives nothing back twice
+        reservationService.release(1L).blockLast();
+
+        assertQuantities(product2.getId(), 5, 0);
+        StepVerifier.create(reservationService.reserve(createReservationReqDto(2L, new ReservationItemReqDto(product2.getId(), 5))))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    public void ReservationService_Release_ReturnInvalidStatusTransitionExceptionForConfirmedReservation() {
+        reservationService.reserve(createReservationReqDto(1L, new ReservationItemReqDto(product1.getId(), 10))).blockLast();
+        reservationService.confirm(1L).blockLast();
+
+        StepVerifier.create(reservationService.release(1L))
+                .expectError(InvalidStatusTransitionException.class)
+                .verify();
+
+        assertQuantities(product1.getId(), 90, 0);
+    }
+
+    // Mono<Integer> reapExpired()
+    @Test
+    public void ReservationReaperService_ReapExpired_ReleaseExpiredReservationsInBatches() {
+        Flux.range(1, 7)
+                .concatMap(orderId -> reservationService.reserve(createReservationReqDto((long) orderId, new ReservationItemReqDto(product1.getId(), 2))))
+                .blockLast();
+        for (long orderId = 1; orderId <= 5; orderId++) {
+            expireReservations(orderId);
+        }
+
+        StepVerifier.create(createReaper(2).reapExpired())
+                .expectNext(5)
+                .verifyComplete();
+
+        // Only the two reservations still within their TTL keep their stock
+        assertQuantities(product1.getId(), 100, 4);
+        StepVerifier.create(createReaper(2).reapExpired())
+                .expectNext(0)
+                .verifyComplete();
+        Assertions.assertThat(reservationRepository.findAll().filter(reservation -> reservation.getStatus().equals(ReservationStatus.EXPIRED.toString())).count().block())
+                .isEqualTo(5L);
+    }
+
+    private ReservationReaperService createReaper(int batchSize) {
+        return new ReservationReaperService(reservationService, batchSize, Duration.ofSeconds(10));
+    }
+
+    private void expireReservations(Long orderId) {
+        reservationRepository.findByOrderId(orderId)
+                .flatMap(reservation -> {
+                    reservation.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+                    return reservationRepository.save(reservation);
+                })
+                .blockLast();
+    }
+
+    private void assertQuantities(Long productId, int stockQuantity, int reservedQuantity) {
+        Product product = productRepository.findById(productId).block();
+        Assertions.assertThat(product.getStockQuantity()).isEqualTo(stockQuantity);
+        Assertions.assertThat(product.getReservedQuantity()).isEqualTo(reservedQuantity);
+    }
+
+    private ReservationReqDto createReservationReqDto(Long orderId, ReservationItemReqDto... products) {
+        return new ReservationReqDto(orderId, List.of(products));
+    }
+
+}